@@ -0,0 +1,77 @@
+package org.dainst.arachne;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the date and size conversions of the file information setters.
+ * 
+ * Results are calls per second.
+ *
+ * @author Reimar Grabowski
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ArchivedFileInfoBenchmark {
+
+    private static final int VALUES = 1024;
+
+    /**
+     * The date layouts accepted by the catalog parser.
+     */
+    @Param({"dd.MM.yyyy HH:mm:ss", "yyyy-MM-dd HH:mm:ss", "MM/dd/yyyy HH:mm:ss", "dd.MM.yyyy"})
+    public String dateLayout;
+
+    private final ArchivedFileInfo fileInfo = new ArchivedFileInfo("benchmark", false);
+
+    private final String[] dates = new String[VALUES];
+    private final LocalDateTime[] dateTimes = new LocalDateTime[VALUES];
+    private final String[] sizes = new String[VALUES];
+
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void createValues() {
+        final SyntheticCatalog catalog = new SyntheticCatalog(42);
+        final DateTimeFormatter formatter = DateTimeFormatter.ofPattern(dateLayout);
+        final Random random = new Random(42);
+        for (int i = 0; i < VALUES; i++) {
+            dateTimes[i] = LocalDateTime.of(1995, 1, 1, 0, 0).plusSeconds(random.nextInt(Integer.MAX_VALUE) / 3);
+            dates[i] = dateTimes[i].format(formatter);
+            sizes[i] = catalog.formatSize((long) Math.exp(random.nextGaussian() * 2.5 + 12));
+        }
+    }
+
+    @Benchmark
+    public ArchivedFileInfo setCreatedFromString() {
+        return fileInfo.setCreated(dates[next++ & (VALUES - 1)]);
+    }
+
+    @Benchmark
+    public ArchivedFileInfo setCreatedFromDateTime() {
+        return fileInfo.setCreated(dateTimes[next++ & (VALUES - 1)]);
+    }
+
+    @Benchmark
+    public ArchivedFileInfo setSizeFromString() {
+        return fileInfo.setSize(sizes[next++ & (VALUES - 1)]);
+    }
+}
@@ -0,0 +1,48 @@
+package org.dainst.arachne;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Helpers shared by the benchmarks.
+ *
+ * @author Reimar Grabowski
+ */
+final class Benchmarks {
+
+    private static final PrintStream NULL_STREAM = new PrintStream(new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    });
+
+    private Benchmarks() {
+    }
+
+    /**
+     * @return a service discarding all documents
+     */
+    static ESService createNullService() {
+        final AtomicLong actions = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        return new OfflineESService("benchmark", listener -> new NullSink(listener, actions, bytes), null);
+    }
+
+    /**
+     * Runs the given setup code with standard out discarded, the classes under test report progress on it.
+     */
+    static void quietly(final Runnable setup) {
+        final PrintStream out = System.out;
+        System.setOut(NULL_STREAM);
+        try {
+            setup.run();
+        } finally {
+            System.setOut(out);
+        }
+    }
+}
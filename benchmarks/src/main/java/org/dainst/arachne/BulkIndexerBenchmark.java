@@ -0,0 +1,62 @@
+package org.dainst.arachne;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the JSON serialization of file information when adding it to the bulk indexer.
+ * 
+ * The documents are discarded by a null sink, so only serialization and bulk bookkeeping are measured. Results are 
+ * documents per second.
+ *
+ * @author Reimar Grabowski
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BulkIndexerBenchmark {
+
+    private static final int DOCUMENTS = 1024;
+
+    private final ArchivedFileInfo[] fileInfos = new ArchivedFileInfo[DOCUMENTS];
+
+    private BulkIndexer bulkIndexer;
+
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void createFileInfos() {
+        final SyntheticCatalog catalog = new SyntheticCatalog(42);
+        for (int i = 0; i < DOCUMENTS; i++) {
+            final String[] record = catalog.nextRecord();
+            fileInfos[i] = new ArchivedFileInfo(null, false)
+                    .setName(record[0])
+                    .setPath(record[1])
+                    .setSize(record[2])
+                    .setCreated(record[3])
+                    .setLastChanged(record[4])
+                    .setResourceType(record[5])
+                    .setCatalog(record[6])
+                    .setVolume(record[7]);
+        }
+        bulkIndexer = new BulkIndexer(Benchmarks.createNullService(), false);
+    }
+
+    @Benchmark
+    public void add() {
+        bulkIndexer.add(fileInfos[next++ & (DOCUMENTS - 1)]);
+    }
+}
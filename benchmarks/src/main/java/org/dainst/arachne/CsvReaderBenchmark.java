@@ -0,0 +1,93 @@
+package org.dainst.arachne;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks tokenizing catalog lines and converting them to file information.
+ * 
+ * Results are lines per second.
+ *
+ * @author Reimar Grabowski
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(CsvReaderBenchmark.LINES)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvReaderBenchmark {
+
+    static final int LINES = 10000;
+
+    private static final Set<String> NO_IGNORED_FIELDS = Collections.emptySet();
+
+    private final ESService esService = Benchmarks.createNullService();
+
+    private String[] lines;
+    private String[][] tokenizedLines;
+
+    private CsvReader reader;
+
+    @Setup(Level.Trial)
+    public void createLines() {
+        final SyntheticCatalog catalog = new SyntheticCatalog(42);
+        lines = new String[LINES];
+        tokenizedLines = new String[LINES][];
+        for (int i = 0; i < LINES; i++) {
+            lines[i] = catalog.nextLine();
+            tokenizedLines[i] = lines[i].split("\t", -1);
+        }
+    }
+
+    // the reader remembers all paths to detect duplicates, every batch needs a fresh one
+    @Setup(Level.Invocation)
+    public void createReader() {
+        Benchmarks.quietly(() -> {
+            reader = new CsvReader(esService, false, new ProgressReport(0));
+            try {
+                reader.mapHeader(SyntheticCatalog.GERMAN_HEADER, false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @Benchmark
+    public void tokenize(final Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(line.split("\t", -1));
+        }
+    }
+
+    @Benchmark
+    public void countTabs(final Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(CsvReader.getTabs(line));
+        }
+    }
+
+    @Benchmark
+    public void lineAsFileInfo(final Blackhole blackhole) {
+        for (int i = 0; i < LINES; i++) {
+            blackhole.consume(reader.getLineAsFileInfo(tokenizedLines[i], i + 2, false, NO_IGNORED_FIELDS));
+        }
+    }
+}
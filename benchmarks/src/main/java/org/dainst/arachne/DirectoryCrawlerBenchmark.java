@@ -0,0 +1,91 @@
+package org.dainst.arachne;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the conversion of crawled file attributes to file information.
+ * 
+ * The attributes are read once during setup, so only the conversion (and the mime type probe for -m 1) is measured,
+ * not the walk. Results are calls per second.
+ *
+ * @author Reimar Grabowski
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DirectoryCrawlerBenchmark {
+
+    private static final int FILES = 256;
+
+    /**
+     * The mime type detection (-m).
+     */
+    @Param({"0", "1"})
+    public int mimeInfo;
+
+    private Path root;
+
+    private DirectoryCrawler crawler;
+
+    private final Path[] paths = new Path[FILES];
+    private final BasicFileAttributes[] attributes = new BasicFileAttributes[FILES];
+    private final long[] sizes = new long[FILES];
+
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        root = Files.createTempDirectory("crawler-benchmark");
+        final String[] extensions = {"jpg", "tif", "pdf", "txt", "doc", "xml"};
+        final Random random = new Random(42);
+        for (int i = 0; i < FILES; i++) {
+            paths[i] = Files.write(root.resolve(String.format("IMG_%05d.%s", i, extensions[i % extensions.length]))
+                    , new byte[random.nextInt(64)]);
+            attributes[i] = Files.readAttributes(paths[i], BasicFileAttributes.class);
+            sizes[i] = (long) Math.exp(random.nextGaussian() * 2.5 + 12);
+        }
+        crawler = new DirectoryCrawler(root, new ScanOptions().setMimeInfo(mimeInfo), new LinkedBlockingQueue<>());
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String formatSize() {
+        return DirectoryCrawler.formatSize(sizes[next++ & (FILES - 1)]);
+    }
+
+    @Benchmark
+    public ArchivedFileInfo getFileInfo() throws IOException, InterruptedException {
+        final int index = next++ & (FILES - 1);
+        return crawler.getFileInfo(paths[index], attributes[index]);
+    }
+}
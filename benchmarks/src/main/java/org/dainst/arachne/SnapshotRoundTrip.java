@@ -0,0 +1,197 @@
+package org.dainst.arachne;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Command line check writing synthetic catalog records to a snapshot and comparing them with the records read back.
+ *
+ * The parsed records are mixed with the edge cases the snapshot encoding has to keep: missing names and paths,
+ * unparseable ('~') and empty dates, the first and last supported date, zero, negative and extreme sizes, missing
+ * size labels and dictionary entries, and paths and names outside the Basic Multilingual Plane, including paths that
+ * only differ in the second half of a surrogate pair. Exits with 1 if a record differs.
+ *
+ * @author Reimar Grabowski
+ */
+public class SnapshotRoundTrip {
+
+    private static final String NEWLINE = System.getProperty("line.separator");
+
+    private static final int MAX_REPORTED = 10;
+
+    public static void main(String[] args) {
+        final Options options = new Options();
+        options.addOption("h", "help", false, "print this message");
+        options.addOption(Option.builder("s")
+                .longOpt("seed")
+                .desc("the seed of the random generator (default 1)")
+                .hasArg()
+                .argName("NUMBER")
+                .build());
+        options.addOption(Option.builder("n")
+                .longOpt("count")
+                .desc("the number of parsed records, several snapshot blocks by default (default 50000)")
+                .hasArg()
+                .argName("NUMBER")
+                .build());
+
+        try {
+            final CommandLine cmd = new DefaultParser().parse(options, args);
+            if (cmd.hasOption("h") || !cmd.getArgList().isEmpty()) {
+                new HelpFormatter().printHelp("SnapshotRoundTrip [options]" + NEWLINE + "Options:", options);
+                System.exit(cmd.hasOption("h") ? 0 : 1);
+            }
+            final long seed = Long.parseLong(cmd.getOptionValue("s", "1"));
+            final int count = Integer.parseInt(cmd.getOptionValue("n", "50000"));
+
+            final List<ArchivedFileInfo> expected = createRecords(seed, count);
+            final Path file = Files.createTempFile("roundtrip", CatalogSnapshot.SUFFIX);
+            final List<ArchivedFileInfo> actual = new ArrayList<>(expected.size());
+            try {
+                try (CatalogSnapshot snapshot = CatalogSnapshot.create(file, "synthetic")) {
+                    for (ArchivedFileInfo fileInfo : expected) {
+                        snapshot.add(fileInfo);
+                    }
+                    snapshot.complete();
+                }
+                try (CatalogSnapshot.Reader reader = CatalogSnapshot.open(file)) {
+                    List<ArchivedFileInfo> block;
+                    while ((block = reader.readBlock("synthetic")) != null) {
+                        actual.addAll(block);
+                    }
+                }
+            } finally {
+                Files.deleteIfExists(file);
+            }
+
+            final int differences = compare(expected, actual);
+            if (differences > 0) {
+                System.err.println(differences + " of " + expected.size() + " records differ.");
+                System.exit(1);
+            }
+            System.out.println("All " + expected.size() + " records read back unchanged.");
+        } catch (ParseException | NumberFormatException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            System.err.println("Round trip failed. " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    // the edge cases are spread over the records, so they end up in different blocks and at block boundaries
+    private static List<ArchivedFileInfo> createRecords(final long seed, final int count) throws IOException {
+        final SyntheticCatalog catalog = new SyntheticCatalog(seed)
+                .setDateLayout(SyntheticCatalog.DateLayout.mixed)
+                .setDateOnlyRate(0.1);
+        final List<CsvReader> reader = new ArrayList<>(1);
+        Benchmarks.quietly(() -> {
+            reader.add(new CsvReader(Benchmarks.createNullService(), false, new ProgressReport(0)));
+            try {
+                reader.get(0).mapHeader(SyntheticCatalog.GERMAN_HEADER, false);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        final List<ArchivedFileInfo> records = new ArrayList<>(count + count / 100 * 20);
+        for (int i = 0; i < count; i++) {
+            final ArchivedFileInfo fileInfo = reader.get(0).getLineAsFileInfo(catalog.nextRecord(), i + 2, false
+                    , Collections.emptySet());
+            if (fileInfo == null) {
+                throw new IOException("Synthetic record " + i + " could not be parsed.");
+            }
+            records.add(fileInfo);
+            if (i % 997 == 0) {
+                addEdgeCases(records, fileInfo, i);
+            }
+        }
+        return records;
+    }
+
+    private static void addEdgeCases(final List<ArchivedFileInfo> records, final ArchivedFileInfo template
+            , final int number) {
+        final String directory = template.getPath().substring(0, template.getPath().lastIndexOf('/') + 1);
+        records.add(copy(template).setName(null));
+        records.add(copy(template).setPath(null));
+        records.add(copy(template).setPath(null).setName(null));
+        records.add(copy(template).setFormattedDates("~", "~"));
+        records.add(copy(template).setFormattedDates("", "~"));
+        records.add(copy(template).setFormattedDates(null, null));
+        records.add(copy(template).setFormattedDates("01.01.0001 00:00:00", "31.12.9999 23:59:59"));
+        records.add(copy(template).setSize("0 Bytes (0 Bytes)", 0));
+        records.add(copy(template).setSize("-1,5 KB (-1.536 Bytes)", -1536));
+        records.add(copy(template).setSize(null, -42));
+        records.add(copy(template).setSize("8 EB", Long.MAX_VALUE));
+        records.add(copy(template).setSize(null, Long.MIN_VALUE));
+        records.add(copy(template).setResourceType(null).setCatalog(null).setVolume(null));
+        records.add(copy(template).setPath(directory + "\uD83C\uDFFA Amphore " + number + ".JPG")
+                .setName("\uD83C\uDFFA Amphore " + number + ".JPG"));
+        records.add(copy(template).setPath(directory + "\uD83C\uDFFB Amphore " + number + ".JPG")
+                .setName("\uD83C\uDFFB Amphore " + number + ".JPG"));
+        records.add(copy(template).setPath(directory + "\uD83C\uDFFB Amphore " + number + ".JPG/")
+                .setName("\uD801\uDC37"));
+        records.add(copy(template).setPath(""));
+        records.add(copy(template).setPath("/"));
+    }
+
+    private static ArchivedFileInfo copy(final ArchivedFileInfo fileInfo) {
+        return new ArchivedFileInfo(fileInfo.getIndex(), false)
+                .setName(fileInfo.getName())
+                .setPath(fileInfo.getPath())
+                .setSize(fileInfo.getSize(), fileInfo.getSizeInBytes())
+                .setFormattedDates(fileInfo.getCreated(), fileInfo.getLastChanged())
+                .setResourceType(fileInfo.getResourceType())
+                .setCatalog(fileInfo.getCatalog())
+                .setVolume(fileInfo.getVolume());
+    }
+
+    private static int compare(final List<ArchivedFileInfo> expected, final List<ArchivedFileInfo> actual) {
+        if (expected.size() != actual.size()) {
+            System.err.println("Wrote " + expected.size() + " records, read " + actual.size() + ".");
+            return Math.abs(expected.size() - actual.size());
+        }
+        int differences = 0;
+        for (int i = 0; i < expected.size(); i++) {
+            final String difference = getDifference(expected.get(i), actual.get(i));
+            if (difference != null) {
+                if (++differences <= MAX_REPORTED) {
+                    System.err.println("Record " + i + ": " + difference);
+                }
+            }
+        }
+        return differences;
+    }
+
+    private static String getDifference(final ArchivedFileInfo expected, final ArchivedFileInfo actual) {
+        final String[][] fields = {
+            {"name", expected.getName(), actual.getName()},
+            {"path", expected.getPath(), actual.getPath()},
+            {"size", expected.getSize(), actual.getSize()},
+            {"sizeInBytes", Long.toString(expected.getSizeInBytes()), Long.toString(actual.getSizeInBytes())},
+            // dates are never null in the index, they are read back empty
+            {"created", Objects.toString(expected.getCreated(), ""), actual.getCreated()},
+            {"lastChanged", Objects.toString(expected.getLastChanged(), ""), actual.getLastChanged()},
+            {"resourceType", expected.getResourceType(), actual.getResourceType()},
+            {"catalog", expected.getCatalog(), actual.getCatalog()},
+            {"volume", expected.getVolume(), actual.getVolume()}
+        };
+        for (String[] field : fields) {
+            if (!Objects.equals(field[1], field[2])) {
+                return field[0] + " '" + field[1] + "' read back as '" + field[2] + "'";
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,246 @@
+package org.dainst.arachne;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates NeoFinder catalog records of realistic shape from a fixed seed.
+ * 
+ * Paths are nested folders of varying depth below a volume, sizes follow a log-normal distribution and are formatted 
+ * like NeoFinder does (for example "1,5 MB (1.572.864 Bytes)"). German or English headers and number formats, the
+ * date layouts accepted by the catalog parser and the anomalies of real exports (stray line feeds, records broken
+ * over two lines, surplus columns) can be configured.
+ *
+ * @author Reimar Grabowski
+ */
+public class SyntheticCatalog {
+
+    public static final List<String> GERMAN_HEADER = Arrays.asList("Name", "Pfad", "Größe", "Erstelldatum"
+            , "Änderungsdatum", "Art", "Katalog", "Name des Volumes");
+
+    public static final List<String> ENGLISH_HEADER = Arrays.asList("Name", "Path", "Size", "Date Created"
+            , "Date Modified", "Kind", "Catalog", "Volume");
+
+    private static final String[] FOLDERS = {"Grabung", "Fotos", "Scans", "Pläne", "Dokumentation", "Funde"
+            , "Keramik", "Architektur", "Archiv", "Negative", "Dias", "Berichte", "Rohdaten", "Export"};
+
+    private static final String[][] KINDS = {{"JPG", "JPEG-Bild"}, {"TIF", "TIFF-Bild"}, {"pdf", "PDF-Dokument"}
+            , {"NEF", "Nikon RAW-Bild"}, {"doc", "Microsoft Word-Dokument"}, {"xls", "Microsoft Excel-Tabelle"}
+            , {"dwg", "AutoCAD-Zeichnung"}, {"txt", "Textdokument"}};
+
+    private static final String[] UNITS = {"Bytes", "KB", "MB", "GB", "TB"};
+
+    /**
+     * The date layouts accepted by the catalog parser.
+     */
+    public enum DateLayout {
+        german("dd.MM.yyyy"), iso("yyyy-MM-dd"), us("MM/dd/yyyy"), mixed(null);
+
+        private final DateTimeFormatter dateFormatter;
+        private final DateTimeFormatter dateTimeFormatter;
+
+        DateLayout(final String datePattern) {
+            this.dateFormatter = datePattern != null ? DateTimeFormatter.ofPattern(datePattern) : null;
+            this.dateTimeFormatter = datePattern != null ? DateTimeFormatter.ofPattern(datePattern + " HH:mm:ss") 
+                    : null;
+        }
+    }
+
+    // NeoFinder exports records separated by carriage returns, line feeds inside fields are stray
+    private static final String RECORD_SEPARATOR = "\r";
+
+    private static final LocalDateTime EPOCH = LocalDateTime.of(1995, 1, 1, 0, 0);
+
+    private final Random random;
+
+    private final String catalog;
+    private final String volume;
+
+    private NumberFormat unitFormat;
+    private NumberFormat byteFormat;
+
+    private boolean english = false;
+    private DateLayout dateLayout = DateLayout.german;
+    private double dateOnlyRate = 0;
+    private double strayLineFeedRate = 0;
+    private double brokenRecordRate = 0;
+    private double surplusColumnRate = 0;
+
+    private String directory;
+    private int filesLeftInDirectory = 0;
+
+    private long records = 0;
+
+    public SyntheticCatalog(final long seed) {
+        this.random = new Random(seed);
+        this.catalog = "Katalog_" + seed;
+        this.volume = "ARCHIV_" + String.format("%02d", seed % 100);
+        setNumberFormats(Locale.GERMAN);
+    }
+
+    /**
+     * @param english if headers and number formats are English instead of German
+     * @return this
+     */
+    public SyntheticCatalog setEnglish(final boolean english) {
+        this.english = english;
+        setNumberFormats(english ? Locale.US : Locale.GERMAN);
+        return this;
+    }
+
+    /**
+     * @param dateLayout the layout of the date columns (mixed picks one of the others for every record)
+     * @return this
+     */
+    public SyntheticCatalog setDateLayout(final DateLayout dateLayout) {
+        this.dateLayout = dateLayout;
+        return this;
+    }
+
+    /**
+     * @param dateOnlyRate the fraction of dates without time
+     * @return this
+     */
+    public SyntheticCatalog setDateOnlyRate(final double dateOnlyRate) {
+        this.dateOnlyRate = dateOnlyRate;
+        return this;
+    }
+
+    /**
+     * @param strayLineFeedRate the fraction of records with a line feed inside the name and path
+     * @return this
+     */
+    public SyntheticCatalog setStrayLineFeedRate(final double strayLineFeedRate) {
+        this.strayLineFeedRate = strayLineFeedRate;
+        return this;
+    }
+
+    /**
+     * @param brokenRecordRate the fraction of records broken over two lines inside a field (fixed by -A)
+     * @return this
+     */
+    public SyntheticCatalog setBrokenRecordRate(final double brokenRecordRate) {
+        this.brokenRecordRate = brokenRecordRate;
+        return this;
+    }
+
+    /**
+     * @param surplusColumnRate the fraction of records with a tab inside the name (more columns than the header)
+     * @return this
+     */
+    public SyntheticCatalog setSurplusColumnRate(final double surplusColumnRate) {
+        this.surplusColumnRate = surplusColumnRate;
+        return this;
+    }
+
+    public List<String> getHeader() {
+        return english ? ENGLISH_HEADER : GERMAN_HEADER;
+    }
+
+    /**
+     * Writes a catalog with header.
+     * 
+     * @param writer the writer to write to
+     * @param records the number of records
+     * @throws IOException if writing fails
+     */
+    public void write(final Writer writer, final long records) throws IOException {
+        writer.write(String.join("\t", getHeader()));
+        writer.write(RECORD_SEPARATOR);
+        for (long i = 0; i < records; i++) {
+            final String[] record = nextRecord();
+            if (chance(strayLineFeedRate)) {
+                // the same position in name and path keeps the name at the end of the path
+                final int position = random.nextInt(record[0].length());
+                record[1] = record[1].substring(0, record[1].length() - record[0].length()) 
+                        + insert(record[0], position, '\n');
+                record[0] = insert(record[0], position, '\n');
+            }
+            if (chance(surplusColumnRate)) {
+                record[0] = insert(record[0], random.nextInt(record[0].length()), '\t');
+            }
+            if (chance(brokenRecordRate)) {
+                final int field = 1 + random.nextInt(record.length - 2);
+                record[field] = insert(record[field], random.nextInt(record[field].length()), '\r');
+            }
+            writer.write(String.join("\t", record));
+            writer.write(RECORD_SEPARATOR);
+        }
+    }
+
+    /**
+     * @return the fields of the next record in the order of the headers
+     */
+    public String[] nextRecord() {
+        if (filesLeftInDirectory == 0) {
+            directory = nextDirectory();
+            filesLeftInDirectory = 1 + random.nextInt(200);
+        }
+        filesLeftInDirectory--;
+        records++;
+
+        final String[] kind = KINDS[random.nextInt(KINDS.length)];
+        final String name = String.format("IMG_%07d.%s", records, kind[0]);
+        final long size = (long) Math.exp(random.nextGaussian() * 2.5 + 12);
+        final LocalDateTime created = EPOCH.plusSeconds((long) (random.nextDouble() * 25 * 365 * 86400));
+        final LocalDateTime modified = created.plusSeconds(random.nextInt(365 * 86400));
+        DateLayout layout = dateLayout;
+        if (layout == DateLayout.mixed) {
+            layout = DateLayout.values()[random.nextInt(DateLayout.values().length - 1)];
+        }
+        final DateTimeFormatter formatter = chance(dateOnlyRate) ? layout.dateFormatter : layout.dateTimeFormatter;
+        return new String[]{name, directory + name, formatSize(size), created.format(formatter)
+                , modified.format(formatter), kind[1], catalog, volume};
+    }
+
+    /**
+     * @return the next record as tab separated catalog line
+     */
+    public String nextLine() {
+        return String.join("\t", nextRecord());
+    }
+
+    /**
+     * @param size the size in bytes
+     * @return the size formatted the way NeoFinder exports it
+     */
+    public String formatSize(final long size) {
+        int unit = size < 1024 ? 0 : (63 - Long.numberOfLeadingZeros(size)) / 10;
+        final String bytes = byteFormat.format(size) + " Bytes";
+        if (unit == 0) {
+            return bytes;
+        }
+        return unitFormat.format((double) size / (1L << (unit * 10))) + " " + UNITS[unit] + " (" + bytes + ")";
+    }
+
+    private void setNumberFormats(final Locale locale) {
+        unitFormat = new DecimalFormat("#,##0.0", DecimalFormatSymbols.getInstance(locale));
+        byteFormat = NumberFormat.getIntegerInstance(locale);
+    }
+
+    private boolean chance(final double probability) {
+        return probability > 0 && random.nextDouble() < probability;
+    }
+
+    private static String insert(final String string, final int position, final char character) {
+        return string.substring(0, position) + character + string.substring(position);
+    }
+
+    private String nextDirectory() {
+        final StringBuilder path = new StringBuilder("/Volumes/").append(volume).append('/');
+        final int depth = 1 + random.nextInt(8);
+        for (int i = 0; i < depth; i++) {
+            path.append(FOLDERS[random.nextInt(FOLDERS.length)]).append('_').append(random.nextInt(100)).append('/');
+        }
+        return path.toString();
+    }
+}
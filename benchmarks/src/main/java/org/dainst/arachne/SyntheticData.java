@@ -0,0 +1,160 @@
+package org.dainst.arachne;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+/**
+ * Command line tool generating synthetic catalogs and directory trees for scale and regression tests.
+ * 
+ * The same seed and options always produce the same output.
+ *
+ * @author Reimar Grabowski
+ */
+public class SyntheticData {
+
+    private static final String NEWLINE = System.getProperty("line.separator");
+
+    public static void main(String[] args) {
+        final Options options = new Options();
+        options.addOption("h", "help", false, "print this message");
+        options.addOption(Option.builder("s")
+                .longOpt("seed")
+                .desc("the seed of the random generator (default 1)")
+                .hasArg()
+                .argName("NUMBER")
+                .build());
+        options.addOption(Option.builder("n")
+                .longOpt("count")
+                .desc("the number of records or files to generate (default 1000)")
+                .hasArg()
+                .argName("NUMBER")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("english")
+                .desc("English headers and number formats instead of German ones" + NEWLINE
+                        + "(catalogs only)")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("dates")
+                .desc("the date layout: german, iso, us or mixed (default german)" + NEWLINE
+                        + "(catalogs only)")
+                .hasArg()
+                .argName("LAYOUT")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("dateonly")
+                .desc("the fraction of dates without time (default 0)" + NEWLINE
+                        + "(catalogs only)")
+                .hasArg()
+                .argName("RATE")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("straylf")
+                .desc("the fraction of records with a stray line feed in name and path (default 0)" + NEWLINE
+                        + "(catalogs only)")
+                .hasArg()
+                .argName("RATE")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("broken")
+                .desc("the fraction of records broken over two lines (default 0, needs -A to import)" + NEWLINE
+                        + "(catalogs only)")
+                .hasArg()
+                .argName("RATE")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("surplus")
+                .desc("the fraction of records with more columns than the header (default 0, the import asks "
+                        + "for confirmation with -A)" + NEWLINE
+                        + "(catalogs only)")
+                .hasArg()
+                .argName("RATE")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("depth")
+                .desc("the depth of the directory tree (default 5)" + NEWLINE
+                        + "(trees only)")
+                .hasArg()
+                .argName("NUMBER")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("fanout")
+                .desc("the number of subdirectories per directory (default 4)" + NEWLINE
+                        + "(trees only)")
+                .hasArg()
+                .argName("NUMBER")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("sparse")
+                .desc("give files realistic sizes as sparse files instead of leaving them empty" + NEWLINE
+                        + "(trees only)")
+                .build());
+
+        try {
+            final CommandLine cmd = new DefaultParser().parse(options, args);
+            final List<String> argList = cmd.getArgList();
+            if (cmd.hasOption("h") || argList.size() != 2
+                    || !("catalog".equals(argList.get(0)) || "tree".equals(argList.get(0)))) {
+                new HelpFormatter().printHelp("SyntheticData [options] catalog FILE | tree DIRECTORY" + NEWLINE
+                        + "catalog FILE: writes a NeoFinder catalog (gzip compressed if FILE ends in '.gz')" + NEWLINE
+                        + "tree DIRECTORY: creates a directory tree" + NEWLINE
+                        + "Options:", options);
+                System.exit(cmd.hasOption("h") ? 0 : 1);
+            }
+            final long seed = Long.parseLong(cmd.getOptionValue("s", "1"));
+            final long count = Long.parseLong(cmd.getOptionValue("n", "1000"));
+            final Path target = Paths.get(argList.get(1));
+            final long startTime = System.currentTimeMillis();
+
+            if ("catalog".equals(argList.get(0))) {
+                final SyntheticCatalog catalog = new SyntheticCatalog(seed)
+                        .setEnglish(cmd.hasOption("english"))
+                        .setDateLayout(SyntheticCatalog.DateLayout.valueOf(cmd.getOptionValue("dates", "german")))
+                        .setDateOnlyRate(Double.parseDouble(cmd.getOptionValue("dateonly", "0")))
+                        .setStrayLineFeedRate(Double.parseDouble(cmd.getOptionValue("straylf", "0")))
+                        .setBrokenRecordRate(Double.parseDouble(cmd.getOptionValue("broken", "0")))
+                        .setSurplusColumnRate(Double.parseDouble(cmd.getOptionValue("surplus", "0")));
+                OutputStream outputStream = Files.newOutputStream(target);
+                if (target.toString().endsWith(".gz")) {
+                    outputStream = new GZIPOutputStream(outputStream, 1 << 16);
+                }
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)
+                        , 1 << 16)) {
+                    catalog.write(writer, count);
+                }
+                System.out.println("Wrote " + count + " records to " + target);
+            } else {
+                final SyntheticTree tree = new SyntheticTree(seed)
+                        .setFiles(count)
+                        .setDepth(Integer.parseInt(cmd.getOptionValue("depth", "5")))
+                        .setFanout(Integer.parseInt(cmd.getOptionValue("fanout", "4")))
+                        .setSparseSizes(cmd.hasOption("sparse"));
+                final long files = tree.create(target);
+                System.out.println("Created " + files + " files in " + tree.getDirectoriesCreated() 
+                        + " directories below " + target);
+            }
+            System.out.println("Elapsed time: " + (System.currentTimeMillis() - startTime) + " ms");
+        } catch (ParseException | IllegalArgumentException ex) {
+            System.out.println("Failed to parse command line options.\n" + ex.getMessage());
+            System.exit(2);
+        } catch (IOException ex) {
+            System.out.println("Could not write synthetic data. " + ex.getMessage());
+            System.exit(3);
+        }
+    }
+}
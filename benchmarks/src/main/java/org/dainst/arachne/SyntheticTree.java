@@ -0,0 +1,129 @@
+package org.dainst.arachne;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Creates directory trees of configurable size and shape from a fixed seed.
+ * 
+ * The files are empty unless sparse sizes are requested, then they get log-normally distributed sizes without 
+ * using the disk space.
+ *
+ * @author Reimar Grabowski
+ */
+public class SyntheticTree {
+
+    // ASCII only, file names with umlauts cannot be created when the JVM runs with a non UTF-8 file name encoding
+    private static final String[] FOLDERS = {"Grabung", "Fotos", "Scans", "Plaene", "Dokumentation", "Funde"
+            , "Keramik", "Architektur", "Archiv", "Negative", "Dias", "Berichte", "Rohdaten", "Export"};
+
+    private static final String[] EXTENSIONS = {"JPG", "TIF", "pdf", "NEF", "doc", "xls", "dwg", "txt"};
+
+    private final Random random;
+
+    private long files = 1000;
+    private int depth = 5;
+    private int fanout = 4;
+    private boolean sparseSizes = false;
+
+    private long filesPerDirectory;
+    private long filesCreated = 0;
+    private long directoriesCreated = 0;
+
+    public SyntheticTree(final long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * @param files the number of files to create
+     * @return this
+     */
+    public SyntheticTree setFiles(final long files) {
+        this.files = files;
+        return this;
+    }
+
+    /**
+     * @param depth the depth of the tree
+     * @return this
+     */
+    public SyntheticTree setDepth(final int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    /**
+     * @param fanout the number of subdirectories per directory
+     * @return this
+     */
+    public SyntheticTree setFanout(final int fanout) {
+        this.fanout = fanout;
+        return this;
+    }
+
+    /**
+     * @param sparseSizes if files get realistic sizes as sparse files
+     * @return this
+     */
+    public SyntheticTree setSparseSizes(final boolean sparseSizes) {
+        this.sparseSizes = sparseSizes;
+        return this;
+    }
+
+    /**
+     * Creates the tree.
+     * 
+     * @param root the directory to create the tree in (created if missing)
+     * @return the number of files created
+     * @throws IOException if a file or directory could not be created
+     */
+    public long create(final Path root) throws IOException {
+        long directories = 0;
+        long levelSize = 1;
+        for (int level = 0; level <= depth && directories < files; level++) {
+            directories += levelSize;
+            levelSize *= fanout;
+        }
+        filesPerDirectory = Math.max(1, files / Math.max(1, directories));
+        filesCreated = 0;
+        directoriesCreated = 0;
+        Files.createDirectories(root);
+        createDirectory(root, 0);
+        // the tree may run out of directories before all files are created
+        while (filesCreated < files) {
+            createDirectory(root.resolve(String.format("Nachtrag_%d", directoriesCreated)), depth);
+        }
+        return filesCreated;
+    }
+
+    public long getDirectoriesCreated() {
+        return directoriesCreated;
+    }
+
+    private void createDirectory(final Path directory, final int level) throws IOException {
+        Files.createDirectories(directory);
+        directoriesCreated++;
+        // vary the number of files between none and twice the average
+        final long count = Math.min(files - filesCreated, (long) (random.nextDouble() * 2 * filesPerDirectory) + 1);
+        for (long i = 0; i < count; i++) {
+            filesCreated++;
+            final Path file = directory.resolve(String.format("IMG_%07d.%s", filesCreated
+                    , EXTENSIONS[random.nextInt(EXTENSIONS.length)]));
+            if (sparseSizes) {
+                try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+                    randomAccessFile.setLength((long) Math.exp(random.nextGaussian() * 2.5 + 12));
+                }
+            } else {
+                Files.createFile(file);
+            }
+        }
+        if (level < depth) {
+            for (int i = 0; i < fanout && filesCreated < files; i++) {
+                createDirectory(directory.resolve(FOLDERS[random.nextInt(FOLDERS.length)] + '_' + i), level + 1);
+            }
+        }
+    }
+}
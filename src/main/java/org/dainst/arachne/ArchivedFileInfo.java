@@ -101,6 +101,19 @@ public class ArchivedFileInfo {
         return this;
     }
 
+    /**
+     * Sets size and size in bytes without parsing the size string.
+     * 
+     * @param size the formatted size
+     * @param sizeInBytes the size in bytes
+     * @return this
+     */
+    public ArchivedFileInfo setSize(final String size, final long sizeInBytes) {
+        this.size = size;
+        this.sizeInBytes = sizeInBytes;
+        return this;
+    }
+
     public String getCreated() {
         return created;
     }
@@ -129,6 +142,17 @@ public class ArchivedFileInfo {
         return this;
     }
 
+    /**
+     * Sets the creation date without going through the string parser.
+     * 
+     * @param created the creation date
+     * @return this
+     */
+    public ArchivedFileInfo setCreated(final LocalDateTime created) {
+        this.created = created.format(OUTPUT_FORMATTER);
+        return this;
+    }
+
     public String getLastChanged() {
         return lastChanged;
     }
@@ -157,6 +181,30 @@ public class ArchivedFileInfo {
         return this;
     }
 
+    /**
+     * Sets the modification date without going through the string parser.
+     * 
+     * @param lastChanged the modification date
+     * @return this
+     */
+    public ArchivedFileInfo setLastChanged(final LocalDateTime lastChanged) {
+        this.lastChanged = lastChanged.format(OUTPUT_FORMATTER);
+        return this;
+    }
+
+    /**
+     * Sets both dates as formatted before, without parsing them again.
+     * 
+     * @param created the formatted creation date
+     * @param lastChanged the formatted modification date
+     * @return this
+     */
+    ArchivedFileInfo setFormattedDates(final String created, final String lastChanged) {
+        this.created = created;
+        this.lastChanged = lastChanged;
+        return this;
+    }
+
     public String getResourceType() {
         return resourceType;
     }
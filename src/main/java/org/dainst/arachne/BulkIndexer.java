@@ -2,11 +2,13 @@ package org.dainst.arachne;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import org.elasticsearch.action.bulk.BulkProcessor;
-import org.elasticsearch.action.bulk.BulkRequest;
-import org.elasticsearch.action.bulk.BulkResponse;
-import org.elasticsearch.common.unit.ByteSizeUnit;
-import org.elasticsearch.common.unit.ByteSizeValue;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
 
 /**
  *
@@ -18,41 +20,102 @@ public class BulkIndexer {
 
     private final BulkProcessorListener listener = new BulkProcessorListener();
 
-    private final BulkProcessor bulkProcessor;
+    private final BulkSink bulkSink;
 
     final ObjectMapper mapper = new ObjectMapper();
     
-    private int filesIndexed = 0;
+    // updated by the bulk listener, read by the shutdown coordinator
+    private volatile int filesIndexed = 0;
+    private volatile int filesFailed = 0;
     
-    private int filesSubmitted = 0;
+    // add() may be called from multiple threads
+    private final AtomicInteger filesSubmitted = new AtomicInteger();
     
     private int filesRead = 0;
     
     private boolean verbose;
+
+    private volatile LongConsumer ackListener = null;
     
     public BulkIndexer(final ESService esService, final boolean verbose) {
         this.esService = esService;
         this.verbose = verbose;
 
-        bulkProcessor = BulkProcessor.builder(esService.getClient(), listener)
-                .setBulkActions(100000)
-                .setBulkSize(new ByteSizeValue(10, ByteSizeUnit.MB))
-                .build();
+        bulkSink = esService.createBulkSink(listener);
     }
 
     void add(final ArchivedFileInfo fileInfo) {
         fileInfo.setIndex(esService.getIndexName());
 
         try {
+            final long start = System.nanoTime();
             final byte[] jsonAsBytes = mapper.writeValueAsBytes(fileInfo);
-            bulkProcessor.add(esService.getClient().prepareIndex(esService.getIndexName(), "entity", fileInfo.getPath())
-                    .setSource(jsonAsBytes).request());
-            filesSubmitted++;
+            Metrics.SERIALIZE.record(1, jsonAsBytes.length, System.nanoTime() - start);
+            bulkSink.index(fileInfo.getPath(), jsonAsBytes);
+            filesSubmitted.incrementAndGet();
         } catch (JsonProcessingException ex) {
+            Metrics.SERIALIZE.recordErrors(1);
             System.err.println("Could not map file info to JSON. Cause: " + ex);
         }
     }
     
+    /**
+     * Removes the file information with the given id (path) from the index.
+     * 
+     * @param id the id of the document to delete
+     */
+    void delete(final String id) {
+        bulkSink.delete(id);
+    }
+
+    /**
+     * Sends all buffered requests without waiting for the bulk size to be reached.
+     */
+    void flush() {
+        bulkSink.flush();
+    }
+
+    /**
+     * Sets the listener notified whenever the number of acknowledged documents grows.
+     * 
+     * Documents count as acknowledged if they and all documents added before them were indexed without failure, so
+     * the count stops at the first rejected document or failed bulk request. Only meaningful if documents are added 
+     * from a single thread.
+     * 
+     * @param ackListener the listener called with the number of acknowledged documents
+     */
+    void setAckListener(final LongConsumer ackListener) {
+        this.ackListener = ackListener;
+    }
+
+    /**
+     * @return the number of documents acknowledged (see {@link #setAckListener(LongConsumer)})
+     */
+    long getAcknowledged() {
+        return listener.getAcknowledged();
+    }
+
+    /**
+     * @return the number of documents added
+     */
+    long getSubmitted() {
+        return filesSubmitted.get();
+    }
+
+    /**
+     * @return the number of documents indexed
+     */
+    long getIndexed() {
+        return filesIndexed;
+    }
+
+    /**
+     * @return the number of documents rejected or lost in failed bulk requests
+     */
+    long getFailed() {
+        return filesFailed;
+    }
+
     void add(final ArchivedFileInfo fileInfo, final int filesRead) {
         this.filesRead = filesRead;
         add(fileInfo);
@@ -60,35 +123,39 @@ public class BulkIndexer {
 
     void close(final int filesRead) {
         this.filesRead = filesRead;
-        while (filesRead > filesSubmitted) {            
+        while (filesRead > filesSubmitted.get()) {            
             try {
                 Thread.sleep(1000);
             } catch (InterruptedException ex) {
                 Thread.currentThread().interrupt();
             }
         }
-        bulkProcessor.close();
-        // wait a little bit to let the bulk request finish as bulkprocessoor.close() is non-blocking
-        int retries = 0;
-        while (listener.getOpenRequests() > 0 && !listener.hasFailed() && retries < 60) {
-            try {
-                Thread.sleep(1000);
-            } catch (InterruptedException ex) {
-                Thread.currentThread().interrupt();
-            }
-            retries++;
+        // wait a little bit to let the last bulk request finish
+        boolean finished = false;
+        try {
+            finished = bulkSink.awaitClose(60, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
-        if (retries > 59) {
+        if (!finished && !listener.hasFailed()) {
             throw new RuntimeException("Bulk request did not finish in 1 minute.");
         }
     }
 
-    class BulkProcessorListener implements BulkProcessor.Listener {
+    class BulkProcessorListener implements BulkSink.Listener {
 
         // used to check if last bulk request has finished
         private int openRequests = 0;
         private boolean error = false;
 
+        // start times of the running bulk requests by execution id
+        private final Map<Long, Long> startTimes = new ConcurrentHashMap<>();
+
+        // bulk requests in the order they were started, responses may arrive in any order
+        private final Deque<PendingBulk> pendingBulks = new ArrayDeque<>();
+        private long acknowledged = 0;
+        private boolean ackStopped = false;
+
         public int getOpenRequests() {
             return openRequests;
         }
@@ -97,32 +164,96 @@ public class BulkIndexer {
             return error;
         }
 
+        synchronized long getAcknowledged() {
+            return acknowledged;
+        }
+
+        private void acknowledge(final long executionId, final boolean failed) {
+            final long acked;
+            synchronized (this) {
+                for (PendingBulk bulk : pendingBulks) {
+                    if (bulk.executionId == executionId) {
+                        bulk.done = true;
+                        bulk.failed = failed;
+                        break;
+                    }
+                }
+                final long before = acknowledged;
+                while (!ackStopped && !pendingBulks.isEmpty() && pendingBulks.peekFirst().done) {
+                    final PendingBulk bulk = pendingBulks.pollFirst();
+                    if (bulk.failed) {
+                        ackStopped = true;
+                    } else {
+                        acknowledged += bulk.actions;
+                    }
+                }
+                if (acknowledged == before) {
+                    return;
+                }
+                acked = acknowledged;
+            }
+            final LongConsumer consumer = ackListener;
+            if (consumer != null) {
+                consumer.accept(acked);
+            }
+        }
+
         @Override
-        public void beforeBulk(long executionId, BulkRequest request) {
+        public void beforeBulk(long executionId, int actions) {
+            startTimes.put(executionId, System.nanoTime());
+            synchronized (this) {
+                if (!ackStopped) {
+                    pendingBulks.addLast(new PendingBulk(executionId, actions));
+                }
+            }
             openRequests++;
         }
 
         @Override
-        public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
-            filesIndexed += request.numberOfActions();
+        public void afterBulk(long executionId, int actions, int failedActions) {
+            final Long start = startTimes.remove(executionId);
+            Metrics.BULK.record(actions - failedActions, 0, start != null ? System.nanoTime() - start : -1);
+            Metrics.BULK.recordErrors(failedActions);
+            acknowledge(executionId, failedActions > 0);
+            filesIndexed += actions - failedActions;
+            filesFailed += failedActions;
             if (filesRead > 0) {
                 System.out.print("\rImported file information: " + filesIndexed + "/" + filesRead);
             } else {
                 System.out.print("\rImported file information: " + filesIndexed + "/?");
             }
             if (verbose) {
-                System.out.println(" [executionId " + executionId + ": " + request.numberOfActions() + " documents]");
-            } else { 
-                System.out.println("");
+                System.out.print(" [executionId " + executionId + ": " + actions + " documents]");
             }
+            if (failedActions > 0) {
+                System.out.print(" (" + failedActions + " rejected)");
+            }
+            System.out.println("");
             openRequests--;
         }
 
         @Override
-        public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+        public void afterBulk(long executionId, int actions, Throwable failure) {
+            startTimes.remove(executionId);
+            Metrics.BULK.recordErrors(actions);
+            acknowledge(executionId, true);
+            filesFailed += actions;
             System.err.println(String.format("Error executing bulk id: %s", executionId) + failure);
             openRequests--;
             error = true;
         }
     }
+
+    private static class PendingBulk {
+
+        private final long executionId;
+        private final int actions;
+        private boolean done = false;
+        private boolean failed = false;
+
+        PendingBulk(final long executionId, final int actions) {
+            this.executionId = executionId;
+            this.actions = actions;
+        }
+    }
 }
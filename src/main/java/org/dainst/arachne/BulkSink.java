@@ -0,0 +1,80 @@
+package org.dainst.arachne;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Interface for the destination of the documents collected by a <code>BulkIndexer</code>.
+ * 
+ * Implementations buffer the actions and send them in bulks. At most one bulk is in flight at any time, so bulks 
+ * are acknowledged in the order their actions were added.
+ *
+ * @author Reimar Grabowski
+ */
+public interface BulkSink {
+
+    /**
+     * The number of actions after which a bulk is sent.
+     */
+    int BULK_ACTIONS = 100000;
+
+    /**
+     * The size in bytes after which a bulk is sent.
+     */
+    long BULK_SIZE = 10 * 1024 * 1024;
+
+    /**
+     * Adds (or replaces) a document.
+     * 
+     * @param id the document id
+     * @param source the document as JSON
+     */
+    void index(String id, byte[] source);
+
+    /**
+     * Removes a document.
+     * 
+     * @param id the document id
+     */
+    void delete(String id);
+
+    /**
+     * Sends all buffered actions without waiting for the bulk size to be reached.
+     */
+    void flush();
+
+    /**
+     * Sends all buffered actions and waits for all outstanding bulks to finish.
+     * 
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return <code>true</code> if all bulks finished in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitClose(long timeout, TimeUnit unit) throws InterruptedException;
+
+    /**
+     * Listener notified about the bulks of a sink.
+     */
+    interface Listener {
+
+        void beforeBulk(long executionId, int actions);
+
+        /**
+         * Called after a bulk has been processed.
+         * 
+         * @param executionId the bulk id
+         * @param actions the number of actions in the bulk
+         * @param failedActions the number of actions that were rejected
+         */
+        void afterBulk(long executionId, int actions, int failedActions);
+
+        /**
+         * Called if a whole bulk failed.
+         * 
+         * @param executionId the bulk id
+         * @param actions the number of actions in the bulk
+         * @param failure the cause
+         */
+        void afterBulk(long executionId, int actions, Throwable failure);
+    }
+}
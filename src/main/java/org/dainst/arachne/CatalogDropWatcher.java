@@ -0,0 +1,187 @@
+package org.dainst.arachne;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class to import catalog files dropped into a folder.
+ * 
+ * The folder is watched for new or changed '.csv' and '.txt' files (compressed or in zip archives, see 
+ * {@link CatalogSource}). A file is imported once its size and modification time did not change for the settle 
+ * time, so files still being copied are left alone. Imports run on a small worker pool sharing the elasticsearch 
+ * client of the running process. Afterwards the file is moved to the subfolder 'imported' or 'failed'. Files already 
+ * in the folder at startup are imported as well.
+ *
+ * @author Reimar Grabowski
+ */
+public class CatalogDropWatcher implements Runnable {
+
+    private static final String IMPORTED_FOLDER = "imported";
+    private static final String FAILED_FOLDER = "failed";
+
+    private final Path folder;
+
+    private final ESService esService;
+
+    private final ProgressReport progressIndicator;
+
+    private final boolean verbose;
+    private final boolean autoCorrect;
+    private final Set<String> ignoreFields;
+    private final boolean minimal;
+
+    private final long settleMillis;
+
+    private RepairPolicy malformedPolicy = RepairPolicy.reject;
+    private RepairPolicy duplicatePolicy = RepairPolicy.reject;
+
+    private final ExecutorService workers;
+
+    // candidate -> last seen size and modification time, and when they were first seen unchanged
+    private final Map<Path, long[]> candidates = new HashMap<>();
+
+    public CatalogDropWatcher(final Path folder, final ESService esService, final ProgressReport progressIndicator
+            , final boolean verbose, final boolean autoCorrect, final Set<String> ignoreFields, final boolean minimal
+            , final long settleMillis, final int workers) {
+        this.folder = folder;
+        this.esService = esService;
+        this.progressIndicator = progressIndicator;
+        this.verbose = verbose;
+        this.autoCorrect = autoCorrect;
+        this.ignoreFields = ignoreFields;
+        this.minimal = minimal;
+        this.settleMillis = settleMillis;
+        this.workers = Executors.newFixedThreadPool(workers > 0 ? workers : 1);
+    }
+
+    @Override
+    public void run() {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            Files.createDirectories(folder.resolve(IMPORTED_FOLDER));
+            Files.createDirectories(folder.resolve(FAILED_FOLDER));
+            folder.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            System.out.println("\rWatching " + folder + " for catalog files...");
+
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+                for (Path file : files) {
+                    addCandidate(file);
+                }
+            }
+
+            while (!Thread.currentThread().isInterrupted()) {
+                final WatchKey key = watchService.poll(Math.max(100, settleMillis / 2), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+                                for (Path file : files) {
+                                    addCandidate(file);
+                                }
+                            }
+                        } else {
+                            addCandidate(folder.resolve((Path) event.context()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        System.err.println("\rFolder " + folder + " is no longer accessible.");
+                        break;
+                    }
+                }
+                submitSettledCandidates();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Could not watch '" + folder + "'. Cause: " + e.getMessage());
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private void addCandidate(final Path file) {
+        final String name = file.getFileName().toString();
+        if (CatalogSource.isCatalog(name) && !candidates.containsKey(file)) {
+            candidates.put(file, new long[]{-1, -1, 0});
+        }
+    }
+
+    private void submitSettledCandidates() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<Path, long[]>> iterator = candidates.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<Path, long[]> candidate = iterator.next();
+            final Path file = candidate.getKey();
+            final long[] state = candidate.getValue();
+            try {
+                final BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class
+                        , LinkOption.NOFOLLOW_LINKS);
+                if (!attributes.isRegularFile()) {
+                    iterator.remove();
+                    continue;
+                }
+                final long size = attributes.size();
+                final long modified = attributes.lastModifiedTime().toMillis();
+                if (size != state[0] || modified != state[1]) {
+                    state[0] = size;
+                    state[1] = modified;
+                    state[2] = now;
+                } else if (now - state[2] >= settleMillis && size > 0) {
+                    iterator.remove();
+                    workers.submit(() -> importCatalog(file));
+                }
+            } catch (IOException e) {
+                // deleted or moved away before it settled
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * @param malformedPolicy the policy for malformed lines
+     * @param duplicatePolicy the policy for duplicate paths
+     * @return this
+     * @see CsvReader#setRepairPolicies(RepairPolicy, RepairPolicy)
+     */
+    public CatalogDropWatcher setRepairPolicies(final RepairPolicy malformedPolicy
+            , final RepairPolicy duplicatePolicy) {
+        this.malformedPolicy = malformedPolicy;
+        this.duplicatePolicy = duplicatePolicy;
+        return this;
+    }
+
+    private void importCatalog(final Path file) {
+        boolean imported = false;
+        try {
+            imported = new CsvReader(esService, verbose, progressIndicator)
+                    .setRepairPolicies(malformedPolicy, duplicatePolicy)
+                    .read(file.toString(), autoCorrect, ignoreFields, minimal);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("\rFailed to import '" + file + "'. Cause: " + e.getMessage());
+        }
+        final Path target = folder.resolve(imported ? IMPORTED_FOLDER : FAILED_FOLDER).resolve(file.getFileName());
+        try {
+            Files.move(file, target, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("\rCatalog " + file.getFileName() + (imported ? " imported." : " failed.")
+                    + " Moved to " + target.getParent());
+        } catch (IOException e) {
+            System.err.println("Could not move '" + file + "' to '" + target + "'. Cause: " + e.getMessage());
+        }
+    }
+}
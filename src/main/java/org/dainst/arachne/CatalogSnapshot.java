@@ -0,0 +1,554 @@
+package org.dainst.arachne;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary snapshot of the parsed and validated records of a catalog, so an index can be rebuilt without
+ * parsing the catalog again.
+ *
+ * The records are stored in blocks of up to <code>BLOCK_SIZE</code> records, column by column. Every block can be
+ * decoded on its own, only the dictionary grows from block to block:
+ * <ul>
+ * <li>paths are front coded (the length of the prefix shared with the previous path and the rest)</li>
+ * <li>names are left out if they are the last element of the path</li>
+ * <li>sizes in bytes and dates (seconds, delta coded) are variable length longs</li>
+ * <li>catalog, volume, type and the size labels ('23,7 KB') are numbers of dictionary entries, the entries new in a
+ * block are written before its columns</li>
+ * </ul>
+ * Snapshots are written to a temporary file that replaces the snapshot when it is complete.
+ *
+ * @author Reimar Grabowski
+ */
+public class CatalogSnapshot implements Closeable {
+
+    /**
+     * The directory snapshots are written to by default.
+     */
+    public static final Path DEFAULT_DIRECTORY = Paths.get(System.getProperty("user.home"), ".neofindertoes"
+            , "snapshots");
+
+    /**
+     * The suffix of snapshot files.
+     */
+    public static final String SUFFIX = ".snapshot";
+
+    private static final int MAGIC = 0x4e465453;
+
+    private static final int VERSION = 1;
+
+    private static final int BLOCK_SIZE = 1 << 14;
+
+    // date codes, real dates are stored as delta + DATE_OFFSET
+    private static final int DATE_EMPTY = 0;
+    private static final int DATE_UNPARSEABLE = 1;
+    private static final int DATE_OFFSET = 2;
+
+    // name codes
+    private static final int NAME_FROM_PATH = 0;
+    private static final int NAME_STORED = 1;
+    private static final int NAME_NULL = 2;
+
+    private final Path file;
+    private final Path tmpFile;
+    private final DataOutputStream out;
+
+    // dictionary entry 0 is null
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    private final List<ArchivedFileInfo> block = new ArrayList<>(BLOCK_SIZE);
+    private long records = 0;
+    private boolean completed = false;
+
+    private CatalogSnapshot(final Path file, final String source) throws IOException {
+        this.file = file;
+        this.tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        writeString(out, source);
+    }
+
+    /**
+     * Starts writing a snapshot.
+     *
+     * @param file the snapshot file, replaced when the snapshot is complete
+     * @param source the absolute path of the catalog the records were parsed from
+     * @return the snapshot to add the records to
+     * @throws IOException if the snapshot could not be created
+     */
+    public static CatalogSnapshot create(final Path file, final String source) throws IOException {
+        return new CatalogSnapshot(file, source);
+    }
+
+    /**
+     * The snapshot file is named after the catalog and a hash of its absolute path, so catalogs with the same name in
+     * different directories or archives get different snapshots.
+     *
+     * @param directory the directory of the snapshots
+     * @param catalog the catalog, may be an entry of an archive
+     * @return the snapshot file of the catalog
+     */
+    public static Path getFile(final Path directory, final Path catalog) {
+        final Path absolute = catalog.toAbsolutePath();
+        final String catalogName = absolute.getFileName().toString();
+        final int dot = catalogName.lastIndexOf('.');
+        return directory.resolve((dot > 0 ? catalogName.substring(0, dot) : catalogName) + "-"
+                + ImportCheckpoint.hash(absolute.toString()) + SUFFIX);
+    }
+
+    /**
+     * Opens a snapshot for reading.
+     *
+     * @param file the snapshot file
+     * @return the reader
+     * @throws IOException if the file could not be read or is no snapshot
+     */
+    public static Reader open(final Path file) throws IOException {
+        return new Reader(file);
+    }
+
+    /**
+     * Adds a record.
+     *
+     * @param fileInfo the record
+     * @throws IOException if the snapshot could not be written
+     */
+    public void add(final ArchivedFileInfo fileInfo) throws IOException {
+        block.add(fileInfo);
+        if (block.size() == BLOCK_SIZE) {
+            writeBlock();
+        }
+    }
+
+    /**
+     * Completes the snapshot, it replaces an existing snapshot of the catalog.
+     *
+     * @throws IOException if the snapshot could not be written
+     */
+    public void complete() throws IOException {
+        if (!block.isEmpty()) {
+            writeBlock();
+        }
+        writeVarLong(out, 0);
+        writeVarLong(out, records);
+        out.close();
+        try {
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        completed = true;
+    }
+
+    /**
+     * @return the number of records written
+     */
+    public long getRecords() {
+        return records + block.size();
+    }
+
+    /**
+     * Discards the snapshot if it was not completed.
+     *
+     * @throws IOException if the temporary file could not be removed
+     */
+    @Override
+    public void close() throws IOException {
+        if (!completed) {
+            out.close();
+            Files.deleteIfExists(tmpFile);
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        final int size = block.size();
+        writeVarLong(out, size);
+
+        // dictionary entries first, the columns refer to them
+        final int[] sizeLabels = new int[size];
+        final int[] catalogs = new int[size];
+        final int[] volumes = new int[size];
+        final int[] types = new int[size];
+        final List<String> newEntries = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            final ArchivedFileInfo fileInfo = block.get(i);
+            sizeLabels[i] = encodeSize(fileInfo.getSize(), fileInfo.getSizeInBytes(), newEntries);
+            catalogs[i] = lookup(fileInfo.getCatalog(), newEntries);
+            volumes[i] = lookup(fileInfo.getVolume(), newEntries);
+            types[i] = lookup(fileInfo.getResourceType(), newEntries);
+        }
+        writeVarLong(out, newEntries.size());
+        for (String entry : newEntries) {
+            writeString(out, entry);
+        }
+
+        String previous = "";
+        for (ArchivedFileInfo fileInfo : block) {
+            final String path = fileInfo.getPath();
+            if (path == null) {
+                writeVarLong(out, 0);
+                continue;
+            }
+            int prefix = 0;
+            final int max = Math.min(previous.length(), path.length());
+            while (prefix < max && previous.charAt(prefix) == path.charAt(prefix)) {
+                prefix++;
+            }
+            // never split a surrogate pair
+            if (prefix > 0 && Character.isHighSurrogate(path.charAt(prefix - 1))) {
+                prefix--;
+            }
+            writeVarLong(out, prefix + 1);
+            writeString(out, path.substring(prefix));
+            previous = path;
+        }
+        for (ArchivedFileInfo fileInfo : block) {
+            final String name = fileInfo.getName();
+            if (name == null) {
+                writeVarLong(out, NAME_NULL);
+            } else if (fileInfo.getPath() != null && name.equals(getNameFromPath(fileInfo.getPath()))) {
+                writeVarLong(out, NAME_FROM_PATH);
+            } else {
+                writeVarLong(out, NAME_STORED);
+                writeString(out, name);
+            }
+        }
+        for (ArchivedFileInfo fileInfo : block) {
+            writeVarLong(out, zigZag(fileInfo.getSizeInBytes()));
+        }
+        writeInts(sizeLabels);
+        writeDates(block, true);
+        writeDates(block, false);
+        writeInts(types);
+        writeInts(catalogs);
+        writeInts(volumes);
+
+        records += size;
+        block.clear();
+    }
+
+    private void writeInts(final int[] values) throws IOException {
+        for (int value : values) {
+            writeVarLong(out, value);
+        }
+    }
+
+    private void writeDates(final List<ArchivedFileInfo> fileInfos, final boolean created) throws IOException {
+        long previous = 0;
+        for (ArchivedFileInfo fileInfo : fileInfos) {
+            final String date = created ? fileInfo.getCreated() : fileInfo.getLastChanged();
+            if (date == null || date.isEmpty()) {
+                writeVarLong(out, DATE_EMPTY);
+            } else if ("~".equals(date)) {
+                writeVarLong(out, DATE_UNPARSEABLE);
+            } else {
+                final long seconds = parseDate(date);
+                writeVarLong(out, zigZag(seconds - previous) + DATE_OFFSET);
+                previous = seconds;
+            }
+        }
+    }
+
+    // the size label is stored without the bytes part if that can be derived from the size in bytes
+    private int encodeSize(final String size, final long sizeInBytes, final List<String> newEntries) {
+        if (size == null) {
+            return 0;
+        }
+        final String bytesPart = getBytesPart(sizeInBytes);
+        if (size.endsWith(bytesPart)) {
+            return lookup(size.substring(0, size.length() - bytesPart.length()), newEntries) << 1;
+        }
+        return lookup(size, newEntries) << 1 | 1;
+    }
+
+    private int lookup(final String value, final List<String> newEntries) {
+        if (value == null) {
+            return 0;
+        }
+        Integer id = dictionary.get(value);
+        if (id == null) {
+            id = dictionary.size() + 1;
+            dictionary.put(value, id);
+            newEntries.add(value);
+        }
+        return id;
+    }
+
+    /**
+     * Reads the records of a snapshot block by block.
+     */
+    public static class Reader implements Closeable {
+
+        private final DataInputStream in;
+
+        private final String source;
+
+        private final List<String> dictionary = new ArrayList<>();
+
+        private long records = 0;
+
+        private boolean ended = false;
+
+        private Reader(final Path file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            try {
+                if (in.readInt() != MAGIC) {
+                    throw new IOException("'" + file + "' is no catalog snapshot.");
+                }
+                final int version = in.readByte();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported snapshot version " + version + " in '" + file + "'.");
+                }
+                source = readString(in);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            dictionary.add(null);
+        }
+
+        /**
+         * @return the absolute path of the catalog the snapshot was written from
+         */
+        public String getSource() {
+            return source;
+        }
+
+        /**
+         * Reads the next block.
+         *
+         * @param index the name of the index the records are meant for
+         * @return the records of the block or <code>null</code> at the end of the snapshot
+         * @throws IOException if the snapshot could not be read or is incomplete
+         */
+        public List<ArchivedFileInfo> readBlock(final String index) throws IOException {
+            if (ended) {
+                return null;
+            }
+            final int size = (int) readVarLong(in);
+            if (size == 0) {
+                final long expected = readVarLong(in);
+                if (expected != records) {
+                    throw new IOException("Snapshot has " + records + " records, expected " + expected + ".");
+                }
+                ended = true;
+                return null;
+            }
+            final long newEntries = readVarLong(in);
+            for (long i = 0; i < newEntries; i++) {
+                dictionary.add(readString(in));
+            }
+
+            final List<ArchivedFileInfo> fileInfos = new ArrayList<>(size);
+            String previous = "";
+            for (int i = 0; i < size; i++) {
+                final ArchivedFileInfo fileInfo = new ArchivedFileInfo(index, false);
+                final int prefix = (int) readVarLong(in);
+                if (prefix > 0) {
+                    previous = previous.substring(0, prefix - 1) + readString(in);
+                    fileInfo.setPath(previous);
+                }
+                fileInfos.add(fileInfo);
+            }
+            for (ArchivedFileInfo fileInfo : fileInfos) {
+                final int code = (int) readVarLong(in);
+                if (code == NAME_FROM_PATH) {
+                    fileInfo.setName(getNameFromPath(fileInfo.getPath()));
+                } else if (code == NAME_STORED) {
+                    fileInfo.setName(readString(in));
+                }
+            }
+            final long[] sizesInBytes = new long[size];
+            for (int i = 0; i < size; i++) {
+                sizesInBytes[i] = unZigZag(readVarLong(in));
+            }
+            for (int i = 0; i < size; i++) {
+                final int code = (int) readVarLong(in);
+                final String label = entry(code >>> 1);
+                if (label == null) {
+                    fileInfos.get(i).setSize(null, sizesInBytes[i]);
+                } else if ((code & 1) == 0) {
+                    fileInfos.get(i).setSize(label + getBytesPart(sizesInBytes[i]), sizesInBytes[i]);
+                } else {
+                    fileInfos.get(i).setSize(label, sizesInBytes[i]);
+                }
+            }
+            final String[] created = readDates(size);
+            final String[] lastChanged = readDates(size);
+            for (int i = 0; i < size; i++) {
+                fileInfos.get(i).setFormattedDates(created[i], lastChanged[i]);
+            }
+            for (ArchivedFileInfo fileInfo : fileInfos) {
+                fileInfo.setResourceType(entry(readVarLong(in)));
+            }
+            for (ArchivedFileInfo fileInfo : fileInfos) {
+                fileInfo.setCatalog(entry(readVarLong(in)));
+            }
+            for (ArchivedFileInfo fileInfo : fileInfos) {
+                fileInfo.setVolume(entry(readVarLong(in)));
+            }
+            records += size;
+            return fileInfos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private String[] readDates(final int size) throws IOException {
+            final String[] dates = new String[size];
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                final long code = readVarLong(in);
+                if (code == DATE_EMPTY) {
+                    dates[i] = "";
+                } else if (code == DATE_UNPARSEABLE) {
+                    dates[i] = "~";
+                } else {
+                    previous += unZigZag(code - DATE_OFFSET);
+                    dates[i] = formatDate(previous);
+                }
+            }
+            return dates;
+        }
+
+        private String entry(final long id) throws IOException {
+            if (id < 0 || id >= dictionary.size()) {
+                throw new IOException("Invalid dictionary entry " + id + ".");
+            }
+            return dictionary.get((int) id);
+        }
+    }
+
+    private static String getNameFromPath(final String path) {
+        return path.substring(path.lastIndexOf('/', path.length() - 2) + 1);
+    }
+
+    // ' (24.318 Bytes)', the bytes part of the sizes in catalogs
+    private static String getBytesPart(final long sizeInBytes) {
+        final String digits = Long.toString(Math.abs(sizeInBytes));
+        final StringBuilder builder = new StringBuilder(digits.length() + 12);
+        builder.append(" (");
+        if (sizeInBytes < 0) {
+            builder.append('-');
+        }
+        for (int i = 0; i < digits.length(); i++) {
+            if (i > 0 && (digits.length() - i) % 3 == 0) {
+                builder.append('.');
+            }
+            builder.append(digits.charAt(i));
+        }
+        return builder.append(" Bytes)").toString();
+    }
+
+    // 'dd.MM.yyyy HH:mm:ss' as written by ArchivedFileInfo (years before 1 or after 9999 are not supported)
+    private static long parseDate(final String date) throws IOException {
+        if (date.length() != 19 || date.charAt(2) != '.' || date.charAt(5) != '.' || date.charAt(10) != ' '
+                || date.charAt(13) != ':' || date.charAt(16) != ':') {
+            throw new IOException("Unexpected date '" + date + "'.");
+        }
+        try {
+            return LocalDateTime.of(digits(date, 6, 10), digits(date, 3, 5), digits(date, 0, 2)
+                    , digits(date, 11, 13), digits(date, 14, 16), digits(date, 17, 19)).toEpochSecond(ZoneOffset.UTC);
+        } catch (RuntimeException e) {
+            throw new IOException("Unexpected date '" + date + "'.", e);
+        }
+    }
+
+    private static String formatDate(final long seconds) {
+        final LocalDateTime date = LocalDateTime.ofEpochSecond(seconds, 0, ZoneOffset.UTC);
+        final char[] chars = "00.00.0000 00:00:00".toCharArray();
+        setDigits(chars, 0, 2, date.getDayOfMonth());
+        setDigits(chars, 3, 5, date.getMonthValue());
+        setDigits(chars, 6, 10, date.getYear());
+        setDigits(chars, 11, 13, date.getHour());
+        setDigits(chars, 14, 16, date.getMinute());
+        setDigits(chars, 17, 19, date.getSecond());
+        return new String(chars);
+    }
+
+    private static void setDigits(final char[] chars, final int start, final int end, int value) {
+        for (int i = end - 1; i >= start; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static int digits(final String value, final int start, final int end) {
+        int result = 0;
+        for (int i = start; i < end; i++) {
+            final char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new NumberFormatException(value);
+            }
+            result = result * 10 + c - '0';
+        }
+        return result;
+    }
+
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(final DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(final DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Snapshot is incomplete.");
+            }
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed number in snapshot.");
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final long length = readVarLong(in);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Malformed string in snapshot.");
+        }
+        final byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
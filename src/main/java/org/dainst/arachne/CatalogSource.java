@@ -0,0 +1,303 @@
+package org.dainst.arachne;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+
+/**
+ * Opens catalogs and listings that are stored compressed or in zip archives.
+ *
+ * Files ending in '.gz', '.bz2' or '.xz' are decompressed while reading. The catalogs in a zip archive are addressed
+ * as <code>archive.zip!/entry</code>, see {@link #expand(String)}. Compressed files and zip entries are decompressed
+ * by a thread of their own a few blocks ahead of the reader, so decompression and parsing overlap and nothing is
+ * extracted to disk.
+ *
+ * @author Reimar Grabowski
+ */
+public final class CatalogSource {
+
+    private static final String ENTRY_SEPARATOR = "!/";
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    // decompressed blocks buffered ahead of the reader
+    private static final int READ_AHEAD_CHUNKS = 16;
+
+    private CatalogSource() {
+    }
+
+    /**
+     * @param path the path of a file or zip entry
+     * @return <code>true</code> if the path names a (compressed) '.csv' or '.txt' file or a zip archive
+     */
+    public static boolean isCatalog(final String path) {
+        final String name = stripCompression(path);
+        return name.endsWith(".csv") || name.endsWith(".txt") || isArchive(path);
+    }
+
+    /**
+     * @param path the path of a file or zip entry
+     * @return <code>true</code> if the path names a zip archive (and not an entry of one)
+     */
+    public static boolean isArchive(final String path) {
+        return path.endsWith(".zip") && !path.contains(ENTRY_SEPARATOR);
+    }
+
+    /**
+     * Lists the catalogs in a zip archive.
+     *
+     * @param path the path of a file
+     * @return the paths of the catalogs in the archive or the path itself if it is no archive
+     * @throws IOException if the archive could not be read
+     */
+    public static List<String> expand(final String path) throws IOException {
+        if (!isArchive(path)) {
+            return Collections.singletonList(path);
+        }
+        final List<String> entries = new ArrayList<>();
+        try (ZipFile zip = new ZipFile(path)) {
+            final Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+            while (zipEntries.hasMoreElements()) {
+                final ZipEntry entry = zipEntries.nextElement();
+                final String entryPath = path + ENTRY_SEPARATOR + entry.getName();
+                if (!entry.isDirectory() && isCatalog(entryPath) && !isArchive(entry.getName())) {
+                    entries.add(entryPath);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @param path the path of a file or zip entry
+     * @return the file on disk, the archive for zip entries
+     */
+    public static Path getFile(final String path) {
+        final int separator = path.indexOf(ENTRY_SEPARATOR);
+        return Paths.get(separator < 0 ? path : path.substring(0, separator));
+    }
+
+    /**
+     * @param path the path of a file or zip entry
+     * @return the name of the file or entry without directories and compression suffix
+     */
+    public static String getName(final String path) {
+        final String name = stripCompression(path);
+        return name.substring(name.lastIndexOf('/', name.length() - 2) + 1);
+    }
+
+    /**
+     * @param path the path of a file or zip entry
+     * @return <code>true</code> if the file (or the archive) can be read
+     */
+    public static boolean isReadable(final String path) {
+        return Files.isReadable(getFile(path));
+    }
+
+    /**
+     * Opens a file or zip entry, decompressing it if needed.
+     *
+     * @param path the path of a file or zip entry
+     * @return the (decompressed) content
+     * @throws IOException if the file could not be opened or is no valid compressed file
+     */
+    public static InputStream open(final String path) throws IOException {
+        final int separator = path.indexOf(ENTRY_SEPARATOR);
+        InputStream inputStream;
+        if (separator < 0) {
+            inputStream = new FileInputStream(path);
+        } else {
+            final ZipFile zip = new ZipFile(path.substring(0, separator));
+            final ZipEntry entry = zip.getEntry(path.substring(separator + ENTRY_SEPARATOR.length()));
+            if (entry == null) {
+                zip.close();
+                throw new FileNotFoundException(path);
+            }
+            inputStream = new FilterInputStream(zip.getInputStream(entry)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        zip.close();
+                    }
+                }
+            };
+        }
+        inputStream = new BufferedInputStream(inputStream, CHUNK_SIZE);
+        try {
+            // concatenated streams (as written by pigz or pbzip2) are read completely
+            if (path.endsWith(".gz")) {
+                inputStream = new GzipCompressorInputStream(inputStream, true);
+            } else if (path.endsWith(".bz2")) {
+                inputStream = new BZip2CompressorInputStream(inputStream, true);
+            } else if (path.endsWith(".xz")) {
+                inputStream = new XZCompressorInputStream(inputStream, true);
+            } else if (separator < 0) {
+                return inputStream;
+            }
+        } catch (IOException e) {
+            inputStream.close();
+            throw new IOException("Could not decompress '" + path + "'. " + e.getMessage(), e);
+        }
+        return new ReadAheadInputStream(inputStream, getName(path));
+    }
+
+    private static String stripCompression(final String path) {
+        for (String suffix : new String[]{".gz", ".bz2", ".xz"}) {
+            if (path.endsWith(suffix)) {
+                return path.substring(0, path.length() - suffix.length());
+            }
+        }
+        return path;
+    }
+
+    /**
+     * Reads the wrapped stream on a thread of its own into a bounded queue of blocks.
+     */
+    private static class ReadAheadInputStream extends InputStream {
+
+        private static final byte[] END = new byte[0];
+
+        private final InputStream source;
+
+        private final String name;
+
+        private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(READ_AHEAD_CHUNKS);
+
+        private final Thread reader;
+
+        private volatile IOException failure = null;
+        private volatile boolean closed = false;
+
+        private byte[] chunk = END;
+        private int position = 0;
+        private boolean ended = false;
+
+        ReadAheadInputStream(final InputStream source, final String name) {
+            this.source = source;
+            this.name = name;
+            reader = new Thread(this::readAhead, "decompress-" + name);
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return chunk[position++] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            final int count = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, buffer, offset, count);
+            position += count;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return chunk.length - position;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            reader.interrupt();
+            chunks.clear();
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private boolean fill() throws IOException {
+            if (position < chunk.length) {
+                return true;
+            }
+            if (ended) {
+                return false;
+            }
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for decompressed data");
+            }
+            position = 0;
+            if (chunk == END) {
+                ended = true;
+                if (failure != null) {
+                    throw failure;
+                }
+                return false;
+            }
+            return true;
+        }
+
+        private void readAhead() {
+            try {
+                int count = 0;
+                while (!closed && count >= 0) {
+                    final byte[] buffer = new byte[CHUNK_SIZE];
+                    int length = 0;
+                    while (length < buffer.length && (count = source.read(buffer, length, buffer.length - length))
+                            >= 0) {
+                        length += count;
+                    }
+                    if (length > 0) {
+                        chunks.put(length == buffer.length ? buffer : Arrays.copyOf(buffer, length));
+                    }
+                }
+                chunks.put(END);
+            } catch (IOException e) {
+                failure = new IOException("Could not decompress '" + name + "'. " + e, e);
+                try {
+                    chunks.put(END);
+                } catch (InterruptedException ex) {
+                    // closed by the reader
+                }
+            } catch (InterruptedException e) {
+                // closed by the reader
+            } finally {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    // nothing left to read
+                }
+            }
+        }
+    }
+}
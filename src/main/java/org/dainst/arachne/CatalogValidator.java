@@ -0,0 +1,174 @@
+package org.dainst.arachne;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class to check many catalogs concurrently without importing them.
+ *
+ * Every catalog goes through the same header, field, date, size and duplicate checks as an import, but the records
+ * are not sent anywhere, so no elasticsearch cluster is needed. At the end a report with one line per catalog is
+ * printed.
+ *
+ * @author Reimar Grabowski
+ */
+public class CatalogValidator {
+
+    private final ESService esService;
+
+    private final int threads;
+
+    private boolean autoCorrect = false;
+    private Set<String> ignoreFields = Collections.emptySet();
+    private boolean minimal = false;
+    private RepairPolicy malformedPolicy = RepairPolicy.reject;
+    private RepairPolicy duplicatePolicy = RepairPolicy.reject;
+
+    /**
+     * @param esService the service providing the index name, it is not used to import anything
+     * @param threads the number of catalogs checked concurrently
+     */
+    public CatalogValidator(final ESService esService, final int threads) {
+        this.esService = esService;
+        this.threads = threads > 0 ? threads : 1;
+    }
+
+    public CatalogValidator setAutoCorrect(final boolean autoCorrect) {
+        this.autoCorrect = autoCorrect;
+        return this;
+    }
+
+    public CatalogValidator setIgnoreFields(final Set<String> ignoreFields) {
+        this.ignoreFields = ignoreFields;
+        return this;
+    }
+
+    public CatalogValidator setMinimal(final boolean minimal) {
+        this.minimal = minimal;
+        return this;
+    }
+
+    /**
+     * @param malformedPolicy the policy for malformed lines
+     * @param duplicatePolicy the policy for duplicate paths
+     * @return this
+     * @see CsvReader#setRepairPolicies(RepairPolicy, RepairPolicy)
+     */
+    public CatalogValidator setRepairPolicies(final RepairPolicy malformedPolicy
+            , final RepairPolicy duplicatePolicy) {
+        this.malformedPolicy = malformedPolicy;
+        this.duplicatePolicy = duplicatePolicy;
+        return this;
+    }
+
+    /**
+     * Checks the given catalogs (directories are checked file by file, zip archives entry by entry) and prints the 
+     * report.
+     *
+     * @param files the catalogs or directories of catalogs
+     * @return the number of catalogs that would not be imported
+     */
+    public int validate(final List<File> files) {
+        final List<File> candidates = new ArrayList<>();
+        for (File file : files) {
+            if (file.isDirectory()) {
+                final File[] children = file.listFiles();
+                if (children != null) {
+                    for (File child : children) {
+                        if (child.isFile()) {
+                            candidates.add(child);
+                        }
+                    }
+                }
+            } else {
+                candidates.add(file);
+            }
+        }
+        candidates.removeIf(candidate -> !CatalogSource.isCatalog(candidate.getName()));
+        Collections.sort(candidates);
+        final List<String> catalogs = new ArrayList<>();
+        for (File candidate : candidates) {
+            try {
+                catalogs.addAll(CatalogSource.expand(candidate.getPath()));
+            } catch (IOException e) {
+                System.err.println("\rCould not read archive '" + candidate + "'. " + e.getMessage());
+            }
+        }
+        System.out.println("\rValidating " + catalogs.size() + " catalog(s)...");
+
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(catalogs.size(), 1)));
+        final Map<String, Future<String>> results = new LinkedHashMap<>();
+        for (final String catalog : catalogs) {
+            results.put(catalog, pool.submit(() -> validate(catalog)));
+        }
+        pool.shutdown();
+
+        int failed = 0;
+        System.out.println("\rValidation report:");
+        for (Map.Entry<String, Future<String>> result : results.entrySet()) {
+            String line;
+            try {
+                line = result.getValue().get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                line = "FAILED  " + e.getCause();
+            }
+            if (!line.startsWith("OK")) {
+                failed++;
+            }
+            System.out.println("\r" + line + "  " + result.getKey());
+        }
+        pool.shutdownNow();
+        System.out.println("\r" + (catalogs.size() - failed) + " of " + catalogs.size() + " catalog(s) valid.");
+        return failed;
+    }
+
+    private String validate(final String catalog) {
+        if (!CatalogSource.isReadable(catalog)) {
+            return "FAILED  not readable";
+        }
+        final CsvReader reader = new CsvReader(esService, false, null)
+                .setValidateOnly(true)
+                .setRepairPolicies(malformedPolicy, duplicatePolicy);
+        boolean valid;
+        try {
+            valid = reader.read(catalog, autoCorrect, ignoreFields, minimal);
+        } catch (Exception e) {
+            return "FAILED  " + e.getMessage();
+        }
+        final StringBuilder line = new StringBuilder(valid ? "OK      " : "FAILED  ");
+        line.append(reader.getParsedRecords()).append(" records");
+        append(line, reader.getInvalidLines(), "invalid");
+        append(line, reader.getPotentiallyInvalidLines(), "potentially invalid");
+        append(line, reader.getMalformedLines(), "malformed");
+        append(line, reader.getDuplicateLines(), "duplicate paths");
+        if (reader.getRejectReason() != null) {
+            line.append(", rejected: ").append(reader.getRejectReason());
+        }
+        if (!reader.getProblemLines().isEmpty()) {
+            line.append(", first problems at lines ").append(reader.getProblemLines());
+        }
+        if (reader.getDiagnosticsFile() != null) {
+            line.append(", details in ").append(reader.getDiagnosticsFile());
+        }
+        return line.toString();
+    }
+
+    private static void append(final StringBuilder line, final int count, final String label) {
+        if (count > 0) {
+            line.append(", ").append(count).append(' ').append(label);
+        }
+    }
+}
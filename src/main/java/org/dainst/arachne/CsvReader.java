@@ -1,15 +1,14 @@
 package org.dainst.arachne;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -21,12 +20,10 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 /**
  *
@@ -34,7 +31,7 @@ import java.util.stream.Collectors;
  */
 public class CsvReader {
 
-    private final ProgressRotating progressIndicator;
+    private final ProgressReport progressIndicator;
 
     private final ESService esService;
 
@@ -52,25 +49,210 @@ public class CsvReader {
 
     private final Set<String> parsedIds = new HashSet<>();
 
-    private Path tmpFile;
+    /**
+     * The directory the quarantine files are written to by default.
+     */
+    public static final Path DEFAULT_QUARANTINE_DIRECTORY = Paths.get(System.getProperty("user.home")
+            , ".neofindertoes", "quarantine");
 
-    public CsvReader(final ESService esService, final boolean verbose, final ProgressRotating progressIndicator) {
+    // returned for records that are not imported because of the duplicate policy
+    private static final ArchivedFileInfo SKIPPED = new ArchivedFileInfo(null, false);
+
+    private RepairPolicy malformedPolicy = RepairPolicy.reject;
+    private RepairPolicy duplicatePolicy = RepairPolicy.reject;
+    private Path quarantineDirectory = DEFAULT_QUARANTINE_DIRECTORY;
+
+    private String header;
+    private String catalogName;
+    private BufferedWriter quarantineWriter = null;
+    private boolean rejected = false;
+    private String rejectReason;
+    private int skippedLines = 0;
+    private int quarantinedLines = 0;
+    private int malformedLines = 0;
+    private int duplicateLines = 0;
+    private int parsedRecords = 0;
+
+    private boolean validateOnly = false;
+
+    private Path diagnosticsDirectory = Diagnostics.DEFAULT_DIRECTORY;
+    private Diagnostics diagnostics;
+
+    // the first lines with problems, for validation reports
+    private static final int MAX_PROBLEM_LINES = 10;
+    private final List<Integer> problemLines = new ArrayList<>();
+
+    private Path checkpointDirectory = null;
+    private boolean resume = false;
+
+    private Path snapshotDirectory = null;
+
+    // line number of the last line of every parsed record and the offset after it, used for checkpoints
+    private int[] recordLines = new int[1024];
+    private long[] recordEnds = new long[1024];
+    private int recordCount = 0;
+
+    private CatalogLineReader lineReader;
+
+    // set on shutdown, stops parsing and sending the records
+    private volatile boolean stopped = false;
+    private volatile long produced = 0;
+
+    public CsvReader(final ESService esService, final boolean verbose, final ProgressReport progressIndicator) {
         this.esService = esService;
         this.verbose = verbose;
         this.progressIndicator = progressIndicator;
         bulkIndexer = new BulkIndexer(esService, verbose);
+        diagnostics = new Diagnostics("catalog", "catalog", diagnosticsDirectory, true, verbose);
+    }
+
+    /**
+     * Enables checkpoints, so an interrupted import can be resumed.
+     * 
+     * @param checkpointDirectory the directory to store the checkpoints in (<code>null</code> disables checkpoints)
+     * @param resume if an existing checkpoint of the catalog should be used to continue the import
+     * @return this
+     */
+    public CsvReader setCheckpoints(final Path checkpointDirectory, final boolean resume) {
+        this.checkpointDirectory = checkpointDirectory;
+        this.resume = resume;
+        return this;
+    }
+
+    /**
+     * Sets what to do with records that cannot be imported as they are, instead of asking.
+     * 
+     * @param malformedPolicy the policy for lines with more columns than the header and for broken lines that could 
+     * not be repaired (with auto correction only)
+     * @param duplicatePolicy the policy for records with a path already imported
+     * @return this
+     */
+    public CsvReader setRepairPolicies(final RepairPolicy malformedPolicy, final RepairPolicy duplicatePolicy) {
+        this.malformedPolicy = malformedPolicy;
+        this.duplicatePolicy = duplicatePolicy;
+        return this;
     }
 
-    public boolean read(String path, final boolean autoCorrect, final Set<String> ignoreFields, final boolean minimal) throws IOException {
+    /**
+     * @param quarantineDirectory the directory to write the quarantine files to
+     * @return this
+     */
+    public CsvReader setQuarantineDirectory(final Path quarantineDirectory) {
+        this.quarantineDirectory = quarantineDirectory;
+        return this;
+    }
 
-        if (!(path.endsWith(".csv") || path.endsWith(".txt"))) {
-            System.out.println("\rSkipping " + path + " (no csv or txt)");
+    /**
+     * @param validateOnly if the catalogs should only be parsed and checked without importing them, messages and 
+     * per line diagnostics are left out then, the results are available from the getters
+     * @return this
+     */
+    public CsvReader setValidateOnly(final boolean validateOnly) {
+        this.validateOnly = validateOnly;
+        return this;
+    }
+
+    /**
+     * @param diagnosticsDirectory the directory to write the lists of all problems found in the catalogs to
+     * @return this
+     */
+    public CsvReader setDiagnosticsDirectory(final Path diagnosticsDirectory) {
+        this.diagnosticsDirectory = diagnosticsDirectory;
+        return this;
+    }
+
+    /**
+     * Enables snapshots of the validated records, they can be imported again without parsing the catalog (see 
+     * {@link SnapshotReader}).
+     * 
+     * @param snapshotDirectory the directory to write the snapshots to (<code>null</code> disables snapshots)
+     * @return this
+     */
+    public CsvReader setSnapshotDirectory(final Path snapshotDirectory) {
+        this.snapshotDirectory = snapshotDirectory;
+        return this;
+    }
+
+    /**
+     * @return the file listing all problems found in the last catalog or <code>null</code> if there were none
+     */
+    public Path getDiagnosticsFile() {
+        return diagnostics.getSideFile();
+    }
+
+    public int getParsedRecords() {
+        return parsedRecords;
+    }
+
+    public int getInvalidLines() {
+        return invalidDataLines;
+    }
+
+    public int getPotentiallyInvalidLines() {
+        return potentiallyInvalidDataLines;
+    }
+
+    public int getMalformedLines() {
+        return malformedLines;
+    }
+
+    public int getDuplicateLines() {
+        return duplicateLines;
+    }
+
+    /**
+     * @return the reason the catalog was rejected by a repair policy or <code>null</code>
+     */
+    public String getRejectReason() {
+        return rejected ? rejectReason : null;
+    }
+
+    /**
+     * @return the numbers of the first lines with problems
+     */
+    public List<Integer> getProblemLines() {
+        return problemLines;
+    }
+
+    public boolean read(final String path, final boolean autoCorrect, final Set<String> ignoreFields
+            , final boolean minimal) throws IOException {
+        if (CatalogSource.isArchive(path)) {
+            // every catalog in the archive is imported on its own, by a reader of its own
+            final List<String> entries = CatalogSource.expand(path);
+            if (entries.isEmpty()) {
+                info("\rSkipping " + path + " (no csv or txt in archive)");
+                return false;
+            }
+            boolean success = true;
+            for (String entry : entries) {
+                if (ShutdownCoordinator.isShuttingDown()) {
+                    return false;
+                }
+                success &= copySettings().read(entry, autoCorrect, ignoreFields, minimal);
+            }
+            return success;
+        }
+        final ShutdownCoordinator.Drain drain = ShutdownCoordinator.begin(path, bulkIndexer, () -> produced
+                , () -> stopped = true);
+        try {
+            return readCatalog(path, autoCorrect, ignoreFields, minimal);
+        } finally {
+            drain.finish();
+        }
+    }
+
+    private boolean readCatalog(String path, final boolean autoCorrect, final Set<String> ignoreFields
+            , final boolean minimal) throws IOException {
+
+        if (!CatalogSource.isCatalog(path)) {
+            info("\rSkipping " + path + " (no csv or txt)");
             return false;
         }
 
-        System.out.println("\rCatalog file: " + path);
-        Path file = Paths.get(path);
-        if (!Files.isReadable(file)) {
+        info("\rCatalog file: " + path);
+        final Path file = CatalogSource.getFile(path);
+        catalogName = CatalogSource.getName(path);
+        if (!CatalogSource.isReadable(path)) {
             System.err.println("Unable to read file: " + path);
             return false;
         }
@@ -78,41 +260,202 @@ public class CsvReader {
         parsingErrors = false;
         potentiallyInvalidDataLines = 0;
         invalidDataLines = 0;
+        recordCount = 0;
+
+        ImportCheckpoint checkpoint = null;
+        long resumeLine = 0;
+        long resumeOffset = 0;
+        if (checkpointDirectory != null) {
+            checkpoint = new ImportCheckpoint(checkpointDirectory, Paths.get(path), file);
+            if (resume && checkpoint.load()) {
+                resumeLine = checkpoint.getLine();
+                resumeOffset = checkpoint.getOffset();
+                checkpoint.loadIds(parsedIds::add);
+                info("\rResuming after line " + resumeLine + " (" + checkpoint.getRecords() 
+                        + " records already imported)");
+            } else {
+                checkpoint.delete();
+            }
+        }
 
-        System.out.println("Cleaning file...");
-        String out = "/tmp/" + Paths.get(path.substring(0, path.lastIndexOf(".")) + ".tmp.txt").getFileName();
-        tmpFile = Paths.get(out);
-        Files.deleteIfExists(tmpFile);
-        try (BufferedReader charReader = new BufferedReader(new InputStreamReader(new FileInputStream(path), "UTF8"))) {
-            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(out), "UTF-8"))) {
-                int r;
-                while ((r = charReader.read()) != -1) {
-                    if (r != 10) {
-                        writer.write(r);
+        rejected = false;
+        skippedLines = 0;
+        quarantinedLines = 0;
+        malformedLines = 0;
+        duplicateLines = 0;
+        parsedRecords = 0;
+        problemLines.clear();
+        diagnostics = new Diagnostics(catalogName, path, diagnosticsDirectory, !validateOnly, verbose);
+        List<ArchivedFileInfo> fileInfoList = new ArrayList<>();
+
+        // line feeds are stray (records are separated by carriage returns), they are dropped while reading
+        try (CatalogLineReader reader = new CatalogLineReader(CatalogSource.open(path))) {
+            lineReader = reader;
+
+            header = reader.readLine();
+            if (header == null) {
+                throw new IOException("Empty catalog file.");
+            }
+            final List<String> columns = Arrays.asList(header.split("\t", -1));
+            final int headerSize = columns.size();
+            mapHeader(columns, minimal);
+
+            info("\rParsing...");
+            int lineNumber = 1;
+            String line;
+            if (resumeOffset > 0) {
+                // the imported part is skipped without reading it line by line
+                reader.skipTo(resumeOffset, (int) resumeLine);
+                lineNumber = (int) resumeLine;
+            } else if (resumeLine > 0) {
+                // checkpoints written before offsets were recorded
+                while (lineNumber < resumeLine && reader.readLine() != null) {
+                    lineNumber++;
+                }
+            } else {
+                // find first line of data
+                while ((line = reader.readLine()) != null) {
+                    lineNumber++;
+                    if (getTabs(line) + 1 == headerSize) {
+                        addRecord(line, lineNumber, fileInfoList, autoCorrect, ignoreFields);
+                        break;
                     }
                 }
-            } catch (IOException e) {
-                throw e;
             }
-        } catch (IOException e) {
-            throw e;
+
+            // read remaining data
+            if (!autoCorrect) {
+                while (keepReading() && (line = reader.readLine()) != null) {
+                    lineNumber++;
+                    addRecord(line, lineNumber, fileInfoList, autoCorrect, ignoreFields);
+                }
+            } else {
+                final LineRepair lineRepair = new LineRepair(headerSize, LineRepair.DEFAULT_LOOKAHEAD
+                        , new LineRepair.Listener() {
+                    @Override
+                    public void record(final String record, final int recordLineNumber) {
+                        addRecord(record, recordLineNumber, fileInfoList, autoCorrect, ignoreFields);
+                    }
+
+                    @Override
+                    public void malformed(final String lines, final int lastLineNumber) {
+                        malformedLines++;
+                        addProblemLine(lastLineNumber);
+                        diagnostics.report("malformed", "columns", lastLineNumber, "Column mismatch (" 
+                                + malformedPolicy + ")", lines.split("\t", -1));
+                        if (malformedPolicy == RepairPolicy.accept) {
+                            addRecord(lines, lastLineNumber, fileInfoList, autoCorrect, ignoreFields);
+                        } else {
+                            handle(malformedPolicy, lines, "Column mismatch at line " + lastLineNumber);
+                        }
+                    }
+                });
+                while (keepReading() && (line = reader.readLine()) != null) {
+                    lineNumber++;
+                    lineRepair.line(line, lineNumber);
+                }
+                lineRepair.finish();
+                if (lineRepair.getRepaired() > 0) {
+                    info("\rRecords repaired: " + lineRepair.getRepaired());
+                }
+            }
+            info("\rRecords parsed: " + parsedRecords + "\n");
+        } finally {
+            lineReader = null;
+            closeQuarantine();
+            diagnostics.close();
+        }
+
+        if (skippedLines > 0) {
+            info("\r" + skippedLines + " records skipped.");
+        }
+        if (quarantinedLines > 0) {
+            info("\r" + quarantinedLines + " records quarantined in " + getQuarantineFile());
         }
 
-        path = out;
+        if (stopped) {
+            System.out.println("\rImport stopped, no data imported.");
+            return false;
+        }
 
-        List<String> columns = null;
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
-                new FileInputStream(path), "UTF-8"))) {
+        if (validateOnly) {
+            return !rejected && !parsingErrors && potentiallyInvalidDataLines == 0;
+        }
 
-            // read header into list
-            columns = reader.lines()
-                    .findFirst()
-                    .map(line -> Arrays.asList(line.split("\t", -1)))
-                    .get();
-        } catch (IOException e) {
-            throw e;
+        if (potentiallyInvalidDataLines > 0) {
+            System.out.println("\rFile '" + path + "' has " + potentiallyInvalidDataLines + " potentially invalid lines.");
+        }
+
+        if (rejected) {
+            System.out.println("\rFile '" + path + "' rejected. " + rejectReason);
+            System.out.println("\rNo data imported.");
+            return false;
+        }
+
+        if (parsingErrors || (potentiallyInvalidDataLines > 0)) {
+            System.out.println("\rFile '" + path + "' has " + invalidDataLines + " invalid lines.");
+            System.out.println("\rNo data imported.");
+            return false;
+        }
+
+        if (snapshotDirectory != null) {
+            if (resumeLine > 0) {
+                System.out.println("\rNo snapshot written, the import was resumed.");
+            } else {
+                writeSnapshot(path, fileInfoList);
+            }
+        }
+
+        System.out.println("\rImporting into elasticsearch index...");
+        if (checkpoint != null) {
+            checkpoint.open();
+            bulkIndexer.setAckListener(new CheckpointUpdater(checkpoint, fileInfoList));
+        }
+        Metrics.expect(fileInfoList.size());
+        produced = fileInfoList.size();
+        int submitted = 0;
+        for (ArchivedFileInfo fileInfo : fileInfoList) {
+            if (stopped) {
+                break;
+            }
+            bulkIndexer.add(fileInfo, fileInfoList.size());
+            submitted++;
+        }
+        try {
+            bulkIndexer.close(submitted);
+        } finally {
+            Metrics.expect(0);
+            if (checkpoint != null) {
+                if (bulkIndexer.getAcknowledged() == fileInfoList.size()) {
+                    checkpoint.delete();
+                } else {
+                    checkpoint.close();
+                    System.out.println("\rCheckpoint saved after line " + checkpoint.getLine() + " ("
+                            + checkpoint.getRecords() + " records imported), continue with --resume");
+                }
+            }
+        }
+        if (stopped) {
+            System.out.println("\rImport stopped, " + bulkIndexer.getIndexed() + " of " + fileInfoList.size() 
+                    + " records imported.");
+            return false;
+        }
+        if (lostLines > 0) {
+            System.out.println("\r" + lostLines + " records lost.");
         }
-        int headerSize = columns.size();
+        System.out.println("\r" + (fileInfoList.size() - lostLines) + " records imported.");
+        return true;
+    }
+
+    /**
+     * Maps the fields to the columns of the given header.
+     * 
+     * @param columns the column names of the header line
+     * @param minimal if only path and volume are required
+     * @return the minimum number of columns a data line needs
+     * @throws IOException if the header does not provide all required fields
+     */
+    int mapHeader(final List<String> columns, final boolean minimal) throws IOException {
         // create index map
         indexMap = new HashMap<>();
         int maxIndex = -1;
@@ -132,185 +475,67 @@ public class CsvReader {
                     int columnIndex = columns.indexOf(token);
                     maxIndex = maxIndex < columnIndex ? columnIndex : maxIndex;
                     indexMap.put(key, columnIndex);
-                    System.out.println("\rColumn providing field '" + key + "': " + columns.get(columnIndex));
+                    info("\rColumn providing field '" + key + "': " + columns.get(columnIndex));
                     break;
                 }
             }
         }
-        System.out.println();
+        info("");
 
         if (indexMap.keySet().size() != tokenMap.keySet().size()) {
-            System.err.println("Invalid header: " + columns);
-            throw new IOException("Invalid header.");
-        }
-
-        System.out.println("\rParsing...");
-        // read data
-        final int minLength = maxIndex + 1;
-        minLineLength = minLength;
-        List<ArchivedFileInfo> fileInfoList = new ArrayList<>();
-
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
-                new FileInputStream(path), "UTF8"))) {
-
-            // little hack to 'get access' to line numbers
-            final AtomicInteger dataLineNumber = new AtomicInteger(1);
-            // find first line of data
-            final String[] firstDataLine = reader.lines()
-                    .skip(1)
-                    .map(line -> line.split("\t", -1))
-                    .peek(line -> dataLineNumber.incrementAndGet())
-                    .filter(line -> line.length == headerSize)
-                    .findFirst()
-                    .get();
-
-            fileInfoList.add(getLineAsFileInfo(firstDataLine, dataLineNumber.intValue(), autoCorrect, ignoreFields));
-
-            // read remaining data
-            if (!autoCorrect) {
-                fileInfoList.addAll(reader.lines()
-                        .peek(line -> dataLineNumber.incrementAndGet())
-                        .map(line -> getLineAsFileInfo(line.split("\t", -1), dataLineNumber.intValue(), autoCorrect, ignoreFields))
-                        .collect(Collectors.toList()));
-            } else {
-                List<String> rawLineData = reader.lines().collect(Collectors.toList());
-
-                List<String> correctedData = new ArrayList<>();
-                String correctedLine = "";
-                boolean yesToAll = false;
-                int lineNumber = dataLineNumber.intValue();
-                for (String line : rawLineData) {
-                    lineNumber++;
-                    int count = getTabs(line) + 1;
-                    if (count == headerSize) {
-                        if (line.startsWith("\t")) {
-                            int last = correctedData.size() - 1;
-                            System.out.println("before: " + correctedData.get(last));
-                            correctedData.set(last, correctedData.get(last) + line);
-                            System.out.println("after : " + correctedData.get(last));
-                        } else {
-                            correctedData.add(line);
-                        }
-                    } else {
-                        if (verbose) {
-                            System.err.println("Expected " + headerSize + ", got " + count + " columns.");
-                            System.err.println("\r" + lineNumber + ": " + line);
-                        }
-                        if (count > headerSize) {
-                            pauseProgressIndicator();
-                            System.out.println("\rColumn mismatch at line " + lineNumber);
-                            showLineMapped(line);
-                            System.out.println("\r");
-                            if (!yesToAll) {
-                                System.out.println("Import this file info and continue? [Y/n/a]");
-                                Scanner scanner = new Scanner(System.in);
-                                String confirm = scanner.nextLine();
-                                if (confirm.toLowerCase().startsWith("a")) {
-                                    yesToAll = true;
-                                    confirm = "";
-                                }
-                                if (confirm.isEmpty() || confirm.toLowerCase().startsWith("y")) {
-                                    correctedData.add(line);
-                                    unpauseProgresIndicator();
-                                    continue;
-                                }
-                            } else {
-                                correctedData.add(line);
-                                unpauseProgresIndicator();
-                                continue;
-                            }
-                            exit(9);
-                        }
-                        if ("".equals(correctedLine)) {
-                            correctedLine = line;
-                        } else {
-                            correctedLine += line;
-                            if (verbose) {
-                                System.out.println("\rCorrected :");
-                                int l = (int) Math.log10(lineNumber) + 1;
-                                System.out.println("\r" + new String(new char[l]).replace('\0', '*') + ": "
-                                        + correctedLine);
-                            }
-                            count = getTabs(correctedLine) + 1;
-                            if (count == headerSize) {
-                                correctedData.add(correctedLine);
-                                correctedLine = "";
-                                if (verbose) {
-                                    System.out.println("\rAuto correction successfull.");
-                                    System.out.println("");
-                                }
-                            } else {
-                                if (count > headerSize) {
-                                    System.err.println("Auto correction failed at line: " + lineNumber);
-                                    exit(0);
-                                }
-                            }
-                        }
-                    }
-                }
-                fileInfoList.addAll(correctedData.stream()
-                        .peek(line -> dataLineNumber.incrementAndGet())
-                        .map(line -> getLineAsFileInfo(line.split("\t", -1), dataLineNumber.intValue(), autoCorrect, ignoreFields))
-                        .collect(Collectors.toList()));
+            if (!validateOnly) {
+                System.err.println("Invalid header: " + columns);
             }
-            System.out.println("\rRecords parsed: " + fileInfoList.size() + "\n");
-        } catch (IOException e) {
-            throw e;
+            throw new IOException("Invalid header.");
         }
+        minLineLength = maxIndex + 1;
+        return minLineLength;
+    }
 
-        // delete tmp file
-        Files.deleteIfExists(tmpFile);
+    // when validating all problems are counted, even after the catalog has been rejected
+    private boolean keepReading() {
+        return !stopped && (!rejected || validateOnly);
+    }
 
-        if (potentiallyInvalidDataLines > 0) {
-            System.out.println("\rFile '" + path + "' has " + potentiallyInvalidDataLines + " potentially invalid lines.");
+    private void addProblemLine(final int lineNumber) {
+        if (problemLines.size() < MAX_PROBLEM_LINES) {
+            problemLines.add(lineNumber);
         }
+    }
 
-        if (parsingErrors || (potentiallyInvalidDataLines > 0)) {
-            System.out.println("\rFile '" + path + "' has " + invalidDataLines + " invalid lines.");
-            System.out.println("\rNo data imported.");
-            return false;
+    private void info(final String message) {
+        if (!validateOnly) {
+            System.out.println(message);
         }
+    }
 
-        System.out.println("\rImporting into elasticsearch index...");
-        fileInfoList.stream().forEach((fileInfo) -> {
-            bulkIndexer.add(fileInfo, fileInfoList.size());
-        });
-        bulkIndexer.close(fileInfoList.size());
-        if (lostLines > 0) {
-            System.out.println("\r" + lostLines + " records lost.");
+    private void addRecordLine(final int line) {
+        if (recordCount == recordLines.length) {
+            recordLines = Arrays.copyOf(recordLines, recordCount * 2);
+            recordEnds = Arrays.copyOf(recordEnds, recordCount * 2);
         }
-        System.out.println("\r" + (fileInfoList.size() - lostLines) + " records imported.");
-        return true;
+        recordEnds[recordCount] = lineReader.getLineEnd(line);
+        recordLines[recordCount++] = line;
     }
 
-    private int getTabs(final String string) {
-        AtomicInteger result = new AtomicInteger(0);
-        string.chars().forEach(c -> {
-            if (c == '\t') {
-                result.addAndGet(1);
+    static int getTabs(final String string) {
+        int tabs = 0;
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) == '\t') {
+                tabs++;
             }
-        });
-        return result.get();
-    }
-
-    private void showLineMapped(final String line) {
-        System.out.println("Extracted file info: ");
-        String[] columns = line.split("\t", -1);
-        String result = "";
-        for (Map.Entry<String, Integer> entrySet : indexMap.entrySet()) {
-            String fieldName = entrySet.getKey();
-            Integer index = entrySet.getValue();
-            System.out.println(fieldName + ": " + columns[index]);
         }
+        return tabs;
     }
 
-    private ArchivedFileInfo getLineAsFileInfo(final String[] dataLine, final int lineNumber, final boolean autoCorrect, final Set<String> ignoreFields) {
+    ArchivedFileInfo getLineAsFileInfo(final String[] dataLine, final int lineNumber, final boolean autoCorrect, final Set<String> ignoreFields) {
 
-        String detailMessage = "\rMissing columns";
+        String detailMessage = "Missing columns";
+        String fieldName = "columns";
+        final long start = System.nanoTime();
         if (dataLine.length >= minLineLength) {
             final ArchivedFileInfo fileInfo = new ArchivedFileInfo(esService.getIndexName(), autoCorrect);
             String setterName = "";
-            String fieldName = "";
             try {
                 for (Map.Entry<String, Integer> entrySet : indexMap.entrySet()) {
                     fieldName = entrySet.getKey();
@@ -347,34 +572,33 @@ public class CsvReader {
                         }
                     } else {
                         potentiallyInvalidDataLines++;
-                        System.err.println("Potentially invalid data at line " + lineNumber);
-                        System.err.println("No value for field '" + fieldName + "'");
-                        System.err.println("" + lineNumber + ": " + Arrays.toString(dataLine));
-                        System.err.println();
+                        addProblemLine(lineNumber);
+                        diagnostics.report("potentially invalid", fieldName, lineNumber, "No value for field '" 
+                                + fieldName + "'", dataLine);
                         if ("path".equals(fieldName)) {
                             System.err.println("FATAL! Cannot import file info without path!");
-                            exit(11);
+                            abort(11, "No path at line " + lineNumber);
                         }
                     }
                 }
 
                 String id = fileInfo.getPath();
                 if (parsedIds.contains(id)) {
-                    System.err.println("SEVERE! Dublicate path '" + fileInfo.getPath() + "'at line " + lineNumber);
-                    System.err.println("" + lineNumber + ": " + Arrays.toString(dataLine));
-                    System.out.println("Hit [ENTER] to exit.");
-                    System.out.println("To continue the import type: Yes, I know, I will lose data!");
-                    Scanner scanner = new Scanner(System.in);
-                    String confirm = scanner.nextLine();
-                    if (!confirm.equals("Yes, I know, I will lose data!")) {
-                        exit(5);
+                    duplicateLines++;
+                    addProblemLine(lineNumber);
+                    diagnostics.report("duplicate", "path", lineNumber, "Duplicate path '" + id + "' ("
+                            + duplicatePolicy + ")", dataLine);
+                    if (duplicatePolicy != RepairPolicy.accept) {
+                        handle(duplicatePolicy, String.join("\t", dataLine), "Duplicate path '" + id 
+                                + "' at line " + lineNumber);
+                        return SKIPPED;
                     }
-                    System.out.println("");
                     lostLines++;
                 } else {
                     parsedIds.add(id);
                 }
 
+                Metrics.PARSE.record(1, 0, System.nanoTime() - start);
                 return fileInfo;
             } catch (InvocationTargetException ex) {
                 detailMessage = "Could not set field '" + fieldName + "'. Cause: "
@@ -382,36 +606,274 @@ public class CsvReader {
             } catch (NoSuchFieldException | NoSuchMethodException | IllegalAccessException ex) {
                 System.err.println("Failed to call setter " + setterName);
                 System.err.println("Cause: " + ex);
-                exit(10);
+                abort(10, "Failed to call setter " + setterName);
             }
         }
         invalidDataLines++;
-        System.err.println("Invalid data at line " + lineNumber);
-        System.err.println(detailMessage);
-        System.err.println(lineNumber + ": " + Arrays.toString(dataLine));
-        System.err.println();
+        Metrics.PARSE.recordErrors(1);
+        addProblemLine(lineNumber);
+        diagnostics.report("invalid", fieldName, lineNumber, detailMessage, dataLine);
         parsingErrors = true;
         return null;
     }
 
-    private void pauseProgressIndicator() {
-        if (progressIndicator.isAlive()) {
-            progressIndicator.pause();
+    /**
+     * Advances the checkpoint whenever more records were acknowledged.
+     */
+    private class CheckpointUpdater implements LongConsumer {
+
+        private final ImportCheckpoint checkpoint;
+        private final List<ArchivedFileInfo> fileInfos;
+
+        private int acknowledged = 0;
+        private boolean failed = false;
+
+        CheckpointUpdater(final ImportCheckpoint checkpoint, final List<ArchivedFileInfo> fileInfos) {
+            this.checkpoint = checkpoint;
+            this.fileInfos = fileInfos;
+        }
+
+        @Override
+        public synchronized void accept(final long records) {
+            if (records <= acknowledged || failed) {
+                return;
+            }
+            final List<String> ids = new ArrayList<>((int) records - acknowledged);
+            for (int i = acknowledged; i < records; i++) {
+                ids.add(fileInfos.get(i).getPath());
+            }
+            try {
+                checkpoint.update(recordLines[(int) records - 1], recordEnds[(int) records - 1], ids);
+                acknowledged = (int) records;
+            } catch (IOException e) {
+                failed = true;
+                System.err.println("Could not write checkpoint. " + e.getMessage());
+            }
         }
     }
 
-    private void unpauseProgresIndicator() {
-        if (progressIndicator.isAlive()) {
-            progressIndicator.unpause();
+    private void addRecord(final String line, final int lineNumber, final List<ArchivedFileInfo> fileInfoList
+            , final boolean autoCorrect, final Set<String> ignoreFields) {
+        final ArchivedFileInfo fileInfo = getLineAsFileInfo(line.split("\t", -1), lineNumber, autoCorrect
+                , ignoreFields);
+        if (fileInfo != SKIPPED) {
+            parsedRecords++;
+            // validating needs the paths only
+            if (!validateOnly) {
+                fileInfoList.add(fileInfo);
+                addRecordLine(lineNumber);
+            }
         }
     }
 
-    private void exit(final int exitCode) {
-        try {
-            Files.deleteIfExists(tmpFile);
-        } catch (IOException ex) {
-            System.err.println("Could not delete temporary file: " + tmpFile.toString());
+    // applies a policy other than accept to a record
+    private void handle(final RepairPolicy policy, final String record, final String reason) {
+        switch (policy) {
+            case skip:
+                skippedLines++;
+                break;
+            case quarantine:
+                if (validateOnly) {
+                    quarantinedLines++;
+                    break;
+                }
+                try {
+                    quarantine(record);
+                    quarantinedLines++;
+                } catch (IOException e) {
+                    System.err.println("Could not write quarantine file. " + e.getMessage());
+                    reject(reason);
+                }
+                break;
+            default:
+                reject(reason);
+        }
+    }
+
+    private void reject(final String reason) {
+        if (!rejected) {
+            rejected = true;
+            rejectReason = reason;
+        }
+    }
+
+    private void quarantine(final String record) throws IOException {
+        if (quarantineWriter == null) {
+            Files.createDirectories(quarantineDirectory);
+            quarantineWriter = Files.newBufferedWriter(getQuarantineFile(), StandardCharsets.UTF_8);
+            quarantineWriter.write(header);
+            quarantineWriter.write("\r\n");
+        }
+        quarantineWriter.write(record);
+        quarantineWriter.write("\r\n");
+    }
+
+    private void closeQuarantine() {
+        if (quarantineWriter != null) {
+            try {
+                quarantineWriter.close();
+            } catch (IOException e) {
+                System.err.println("Could not close quarantine file. " + e.getMessage());
+            }
+            quarantineWriter = null;
+        }
+    }
+
+    private Path getQuarantineFile() {
+        return quarantineDirectory.resolve(catalogName.substring(0, catalogName.lastIndexOf('.')) 
+                + ".quarantine.txt");
+    }
+
+    private void writeSnapshot(final String path, final List<ArchivedFileInfo> fileInfoList) {
+        final Path catalog = Paths.get(path).toAbsolutePath();
+        final Path snapshotFile = CatalogSnapshot.getFile(snapshotDirectory, catalog);
+        try (CatalogSnapshot snapshot = CatalogSnapshot.create(snapshotFile, catalog.toString())) {
+            for (ArchivedFileInfo fileInfo : fileInfoList) {
+                snapshot.add(fileInfo);
+            }
+            snapshot.complete();
+            System.out.println("\rSnapshot written to " + snapshotFile);
+        } catch (IOException e) {
+            System.err.println("\rCould not write snapshot. " + e.getMessage());
+        }
+    }
+
+    private CsvReader copySettings() {
+        return new CsvReader(esService, verbose, progressIndicator)
+                .setCheckpoints(checkpointDirectory, resume)
+                .setSnapshotDirectory(snapshotDirectory)
+                .setRepairPolicies(malformedPolicy, duplicatePolicy)
+                .setQuarantineDirectory(quarantineDirectory)
+                .setValidateOnly(validateOnly)
+                .setDiagnosticsDirectory(diagnosticsDirectory);
+    }
+
+    private void abort(final int exitCode, final String message) {
+        throw new ImportAbortedException(exitCode, message);
+    }
+
+    /**
+     * Reads the lines of a catalog. Records are separated by carriage returns, line feeds are stray and dropped. 
+     * Lines are split on the bytes before they are decoded (UTF-8 never uses these bytes inside a character), so the 
+     * offset after every line is known and a resumed import can skip to it.
+     */
+    private static class CatalogLineReader implements Closeable {
+
+        // line ends are kept for the most recent lines only, records are added at most a few lines after reading
+        private static final int LINE_END_MASK = (1 << 10) - 1;
+
+        private final InputStream in;
+        private final byte[] buffer = new byte[1 << 16];
+        private int position = 0;
+        private int limit = 0;
+        // offset of the buffer start in the catalog
+        private long bufferOffset = 0;
+
+        private byte[] line = new byte[1024];
+
+        private int lineNumber = 0;
+        private final long[] lineEnds = new long[LINE_END_MASK + 1];
+
+        CatalogLineReader(final InputStream in) {
+            this.in = in;
+        }
+
+        String readLine() throws IOException {
+            int length = 0;
+            while (true) {
+                if (position == limit && !fill()) {
+                    return length > 0 ? endLine(new String(line, 0, length, StandardCharsets.UTF_8)) : null;
+                }
+                final int start = position;
+                boolean lineFeeds = false;
+                int end = start;
+                while (end < limit && buffer[end] != '\r') {
+                    lineFeeds |= buffer[end] == '\n';
+                    end++;
+                }
+                position = end < limit ? end + 1 : end;
+                if (end < limit && length == 0 && !lineFeeds) {
+                    return endLine(new String(buffer, start, end - start, StandardCharsets.UTF_8));
+                }
+                if (line.length - length < end - start) {
+                    line = Arrays.copyOf(line, Math.max(line.length * 2, length + end - start));
+                }
+                for (int i = start; i < end; i++) {
+                    if (buffer[i] != '\n') {
+                        line[length++] = buffer[i];
+                    }
+                }
+                if (end < limit) {
+                    return endLine(new String(line, 0, length, StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        /**
+         * @param line one of the last lines read
+         * @return the offset in bytes after the line
+         */
+        long getLineEnd(final int line) {
+            return lineEnds[line & LINE_END_MASK];
+        }
+
+        /**
+         * Skips forward to a line. Plain files seek, compressed ones are only decompressed up to the offset.
+         * 
+         * @param offset the offset in bytes after the line before
+         * @param line the number of the line before
+         * @throws IOException if the catalog is shorter than the offset
+         */
+        void skipTo(final long offset, final int line) throws IOException {
+            if (offset < bufferOffset + position) {
+                throw new IOException("Cannot skip backwards to offset " + offset + ".");
+            }
+            if (offset <= bufferOffset + limit) {
+                position = (int) (offset - bufferOffset);
+            } else {
+                long remaining = offset - bufferOffset - limit;
+                bufferOffset += limit;
+                position = 0;
+                limit = 0;
+                while (remaining > 0) {
+                    long skipped = in.skip(remaining);
+                    if (skipped <= 0) {
+                        if (in.read() < 0) {
+                            throw new EOFException("Catalog ends before offset " + offset + ".");
+                        }
+                        skipped = 1;
+                    }
+                    remaining -= skipped;
+                    bufferOffset += skipped;
+                }
+            }
+            lineNumber = line;
+            lineEnds[line & LINE_END_MASK] = offset;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private String endLine(final String line) {
+            lineEnds[++lineNumber & LINE_END_MASK] = bufferOffset + position;
+            return line;
+        }
+
+        private boolean fill() throws IOException {
+            bufferOffset += limit;
+            position = 0;
+            limit = 0;
+            int read;
+            do {
+                read = in.read(buffer);
+            } while (read == 0);
+            if (read < 0) {
+                return false;
+            }
+            limit = read;
+            return true;
         }
-        System.exit(exitCode);
     }
 }
@@ -0,0 +1,332 @@
+package org.dainst.arachne;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the problems found in the records of a catalog or listing.
+ *
+ * Reporting a problem counts it per type and field, keeps the first examples and hands it to a background thread,
+ * so parsing threads never wait for the disk or the console. The background thread appends every problem to a side 
+ * file and prints only the first problems of each type and field, at a limited rate. If it falls behind and its 
+ * queue is full, the reporting thread appends the problem to a spill file of its own instead, so no problem is lost 
+ * and no lock is shared. When closed, the spill files are appended to the side file and a summary with the counts 
+ * and examples per type and field is printed.
+ * 
+ * The side file has one tab separated line per problem: the line number, type, field, message and the fields of
+ * the record. It is named after the source and a hash of its path, so sources with the same name in different 
+ * directories or archives get side files of their own.
+ *
+ * @author Reimar Grabowski
+ */
+public class Diagnostics {
+
+    /**
+     * The directory the side files are written to by default.
+     */
+    public static final Path DEFAULT_DIRECTORY = Paths.get(System.getProperty("user.home"), ".neofindertoes"
+            , "diagnostics");
+
+    private static final int QUEUE_SIZE = 1 << 16;
+
+    private static final int EXAMPLES = 3;
+
+    private static final int CONSOLE_PER_KEY = 3;
+
+    private static final int CONSOLE_LINES_PER_SECOND = 10;
+
+    private static final int MAX_LINE_LENGTH = 200;
+
+    private final String source;
+    private final Path sideFile;
+    private final boolean console;
+    private final boolean verbose;
+
+    private final Map<String, Aggregate> aggregates = new ConcurrentHashMap<>();
+    private final BlockingQueue<Problem> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final AtomicLong problems = new AtomicLong();
+
+    // spill files of the threads that found the queue full, every one is only written by its thread
+    private final Map<Thread, Spill> spills = new ConcurrentHashMap<>();
+
+    private Thread writer = null;
+    private volatile boolean closed = false;
+
+    // used by the writer thread, and by close once it has finished
+    private BufferedWriter sideWriter = null;
+    private boolean sideFileFailed = false;
+    private volatile boolean sideFileWritten = false;
+
+    /**
+     * @param source the name of the catalog or listing
+     * @param path the path of the catalog or listing
+     * @param directory the directory to write the side file to
+     * @param console if the first problems and the summary should be printed
+     * @param verbose if all problems should be printed (still at a limited rate)
+     */
+    public Diagnostics(final String source, final String path, final Path directory, final boolean console
+            , final boolean verbose) {
+        this.source = source;
+        this.sideFile = directory.resolve(source + "-" + ImportCheckpoint.hash(path) + ".diagnostics.txt");
+        this.console = console;
+        this.verbose = verbose;
+    }
+
+    /**
+     * Reports a problem, never waits for the background thread.
+     *
+     * @param type the type of the problem
+     * @param field the field the problem was found in
+     * @param lineNumber the line or record number
+     * @param message the description of the problem
+     * @param record the fields of the record
+     */
+    public void report(final String type, final String field, final long lineNumber, final String message
+            , final String[] record) {
+        if (problems.getAndIncrement() == 0) {
+            start();
+        }
+        final Problem problem = new Problem(type, field, lineNumber, message, record);
+        final Aggregate aggregate = aggregates.computeIfAbsent(type + " '" + field + "'", key -> new Aggregate());
+        aggregate.count.incrementAndGet();
+        synchronized (aggregate) {
+            if (aggregate.examples.size() < EXAMPLES) {
+                aggregate.examples.add(problem);
+            }
+        }
+        if (!queue.offer(problem)) {
+            spills.computeIfAbsent(Thread.currentThread(), thread -> new Spill(sideFile.resolveSibling(
+                    sideFile.getFileName() + "." + thread.getId() + ".spill"))).write(problem);
+        }
+    }
+
+    /**
+     * @return the number of problems reported
+     */
+    public long getProblems() {
+        return problems.get();
+    }
+
+    /**
+     * @return the side file with all problems or <code>null</code> if there were none
+     */
+    public Path getSideFile() {
+        return sideFileWritten ? sideFile : null;
+    }
+
+    /**
+     * Writes the remaining problems, closes the side file and prints the summary. Must only be called once all 
+     * problems have been reported.
+     */
+    public void close() {
+        final Thread running;
+        synchronized (this) {
+            closed = true;
+            running = writer;
+        }
+        if (running != null) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // left over if the writer thread was interrupted
+        Problem problem;
+        while ((problem = queue.poll()) != null) {
+            write(problem.toLine());
+        }
+        for (Spill spill : spills.values()) {
+            spill.appendTo();
+        }
+        spills.clear();
+        if (sideWriter != null) {
+            try {
+                sideWriter.close();
+            } catch (IOException e) {
+                System.err.println("\rCould not close " + sideFile + ". " + e.getMessage());
+            }
+            sideWriter = null;
+        }
+        if (!console || problems.get() == 0) {
+            return;
+        }
+        System.out.println("\r" + problems.get() + " problem(s) in " + source + ":");
+        aggregates.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue().count.get(), a.getValue().count.get()))
+                .forEach(entry -> {
+                    System.out.println(String.format("\r%10d %s", entry.getValue().count.get(), entry.getKey()));
+                    for (Problem example : entry.getValue().examples) {
+                        System.out.println("\r           line " + example.lineNumber + ": " + example.message);
+                        System.out.println("\r           " + truncate(String.join("\t", example.record)));
+                    }
+                });
+        if (sideFileWritten) {
+            System.out.println("\rAll problems are listed in " + sideFile);
+        }
+    }
+
+    // appends a line to the side file, only called by the writer thread and by close once it has finished
+    private void write(final String line) {
+        if (sideFileFailed) {
+            return;
+        }
+        try {
+            if (sideWriter == null) {
+                Files.createDirectories(sideFile.getParent());
+                sideWriter = Files.newBufferedWriter(sideFile, StandardCharsets.UTF_8);
+                sideFileWritten = true;
+            }
+            sideWriter.write(line);
+            sideWriter.newLine();
+        } catch (IOException e) {
+            System.err.println("\rCould not write diagnostics to " + sideFile + ". " + e.getMessage());
+            sideFileFailed = true;
+        }
+    }
+
+    private synchronized void start() {
+        if (closed || writer != null) {
+            return;
+        }
+        writer = new Thread(this::run, "diagnostics-" + source);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private void run() {
+        final Map<String, Integer> printed = new HashMap<>();
+        long second = 0;
+        int printedThisSecond = 0;
+        long suppressed = 0;
+        try {
+            while (true) {
+                final Problem problem = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (problem == null) {
+                    if (closed && queue.isEmpty()) {
+                        break;
+                    }
+                    continue;
+                }
+                write(problem.toLine());
+                if (!console) {
+                    continue;
+                }
+                final String key = problem.type + " '" + problem.field + "'";
+                final int printedForKey = printed.merge(key, 1, Integer::sum);
+                final long now = System.nanoTime() / 1000000000L;
+                if (now != second) {
+                    second = now;
+                    printedThisSecond = 0;
+                }
+                if ((verbose || printedForKey <= CONSOLE_PER_KEY) && printedThisSecond < CONSOLE_LINES_PER_SECOND) {
+                    printedThisSecond++;
+                    System.err.println("\r" + source + ": " + key + " at line " + problem.lineNumber + ": "
+                            + problem.message);
+                    System.err.println("\r" + problem.lineNumber + ": " + truncate(String.join("\t"
+                            , problem.record)));
+                } else if (suppressed++ == 0) {
+                    System.err.println("\rFurther problems in " + source + " are only counted, see the summary.");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String truncate(final String line) {
+        return line.length() > MAX_LINE_LENGTH ? line.substring(0, MAX_LINE_LENGTH) + "..." : line;
+    }
+
+    private static class Aggregate {
+
+        private final AtomicLong count = new AtomicLong();
+        private final List<Problem> examples = new ArrayList<>(EXAMPLES);
+    }
+
+    private static class Problem {
+
+        private final String type;
+        private final String field;
+        private final long lineNumber;
+        private final String message;
+        private final String[] record;
+
+        Problem(final String type, final String field, final long lineNumber, final String message
+                , final String[] record) {
+            this.type = type;
+            this.field = field;
+            this.lineNumber = lineNumber;
+            this.message = message;
+            this.record = record;
+        }
+
+        String toLine() {
+            return lineNumber + "\t" + type + "\t" + field + "\t" + message + "\t" + String.join("\t", record);
+        }
+    }
+
+    /**
+     * Spill file of a single reporting thread.
+     */
+    private class Spill {
+
+        private final Path file;
+        private BufferedWriter spillWriter = null;
+        private boolean failed = false;
+
+        Spill(final Path file) {
+            this.file = file;
+        }
+
+        void write(final Problem problem) {
+            if (failed) {
+                return;
+            }
+            try {
+                if (spillWriter == null) {
+                    Files.createDirectories(file.getParent());
+                    spillWriter = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+                }
+                spillWriter.write(problem.toLine());
+                spillWriter.newLine();
+            } catch (IOException e) {
+                System.err.println("\rCould not write diagnostics to " + file + ". " + e.getMessage());
+                failed = true;
+            }
+        }
+
+        // moves the spilled problems to the side file
+        void appendTo() {
+            if (spillWriter == null) {
+                return;
+            }
+            try {
+                spillWriter.close();
+                try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        Diagnostics.this.write(line);
+                    }
+                }
+                Files.delete(file);
+            } catch (IOException e) {
+                System.err.println("\rCould not append " + file + " to " + sideFile + ". " + e.getMessage());
+            }
+        }
+    }
+}
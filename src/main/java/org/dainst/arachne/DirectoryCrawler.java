@@ -1,8 +1,11 @@
 package org.dainst.arachne;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.FileVisitOption;
+import java.nio.file.FileSystemLoopException;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
@@ -11,16 +14,18 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.time.Instant;
+import java.nio.file.attribute.FileTime;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 import org.apache.tika.Tika;
 
 /**
@@ -31,40 +36,152 @@ import org.apache.tika.Tika;
 public class DirectoryCrawler implements Callable<Integer> {
 
     private final Path root;
+    private final Path start;
     private final BlockingQueue<ArchivedFileInfo> queue;
     private final Tika tika;
     private final int mimeInfo;
+    private final IOBudget ioBudget;
+    private final PathFilter pathFilter;
+    private final int maxDepth;
+    private final boolean statMinimal;
+    private final boolean followLinks;
+    private final InodeTracker inodeTracker;
+    private final ZoneId zone = ZoneId.systemDefault();
 
-    private static final DecimalFormat DECIMAL_FORMATTER = new DecimalFormat("#.00");
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MM/dd/yyyy HH:mm:ss");
+    // DecimalFormat is not thread safe and crawlers run in parallel
+    private static final ThreadLocal<DecimalFormat> DECIMAL_FORMATTER 
+            = ThreadLocal.withInitial(() -> new DecimalFormat("#.00"));
 
     private final boolean verbose;
 
     private int scannedFiles = 0;
 
+    private long throttledNanos = 0;
+
+    private int excludedDirectories = 0;
+    private int excludedFiles = 0;
+
+    private int linkedEntries = 0;
+    private int loops = 0;
+
+    // file system call counters, the walk itself reads the attributes of every entry once and they are reused
+    private long walkedEntries = 0;
+    private long directoryListings = 0;
+    private long contentCalls = 0;
+
     private final List<String> failedFiles = new ArrayList<>();
 
-    protected DirectoryCrawler(final Path root, final int mimeInfo, final boolean verbose, final BlockingQueue<ArchivedFileInfo> queue) {
+    private ScanJournal journal = null;
 
-        this.mimeInfo = mimeInfo;
-        this.tika = mimeInfo == 2 ? new Tika() : null;
+    // number of documents added to the queue, the journal needs it to match directories with acknowledgements
+    private volatile long queuedDocuments = 0;
+
+    private volatile boolean stopped = false;
+
+    // number of failures when entering the directories currently crawled
+    private final Deque<Integer> failureMarks = new ArrayDeque<>();
+
+    protected DirectoryCrawler(final Path root, final ScanOptions options, final BlockingQueue<ArchivedFileInfo> queue) {
+        this(root, root, options, queue);
+    }
+
+    /**
+     * Creates a crawler for a part of a scan root, for example to rescan a changed subtree.
+     * 
+     * @param root the scan root (filter rules and the maximum depth are relative to it)
+     * @param start the file or directory to start crawling at (must be inside root)
+     * @param options the scan options
+     * @param queue the queue to add file information to
+     */
+    protected DirectoryCrawler(final Path root, final Path start, final ScanOptions options
+            , final BlockingQueue<ArchivedFileInfo> queue) {
+
+        this.mimeInfo = options.getMimeInfo();
+        this.statMinimal = options.isStatMinimal();
+        this.tika = mimeInfo == 2 || (mimeInfo == 1 && statMinimal) ? new Tika() : null;
         this.root = root;
+        this.start = start;
         this.queue = queue;
-        this.verbose = verbose;
+        this.verbose = options.isVerbose();
+        this.ioBudget = options.getIOBudget();
+        this.pathFilter = options.getPathFilter();
+        this.maxDepth = options.getMaxDepth() == Integer.MAX_VALUE || root.equals(start) ? options.getMaxDepth()
+                : Math.max(0, options.getMaxDepth() - root.relativize(start).getNameCount());
+        this.followLinks = options.isFollowLinks();
+        this.inodeTracker = options.getInodeTracker();
+    }
+
+    /**
+     * @param journal the journal to skip completed subtrees with and to report crawled directories to
+     * @return this
+     */
+    public DirectoryCrawler setJournal(final ScanJournal journal) {
+        this.journal = journal;
+        return this;
+    }
+
+    /**
+     * Stops the crawl, the entries visited so far stay in the queue.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return the number of documents added to the queue
+     */
+    public long getQueuedDocuments() {
+        return queuedDocuments;
+    }
+
+    /**
+     * @return <code>true</code> if files or directories could not be read
+     */
+    public boolean hasFailures() {
+        return !failedFiles.isEmpty();
     }
 
     @Override
     public Integer call() {
         try {
-            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            final EnumSet<FileVisitOption> visitOptions = followLinks ? EnumSet.of(FileVisitOption.FOLLOW_LINKS) 
+                    : EnumSet.noneOf(FileVisitOption.class);
+            Files.walkFileTree(start, visitOptions, maxDepth, new SimpleFileVisitor<Path>() {
                 @Override
                 public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attrs) throws IOException {
+                    if (stopped) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    walkedEntries++;
+                    // decide before the directory is opened so excluded trees are never listed
+                    if (pathFilter.isExcludedDirectory(root, directory)) {
+                        excludedDirectories++;
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    if (journal != null && journal.isCompleted(directory)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    // directories can only be reached twice via symbolic links
+                    if (inodeTracker != null && followLinks && !inodeTracker.visit(directory, attrs)) {
+                        linkedEntries++;
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
                     try {
                         scannedFiles++;
+                        // one op for the attributes and one for listing the directory
+                        throttledNanos += ioBudget.acquireMetadataOps(2);
                         queue.put(getFileInfo(directory, attrs));
+                        queuedDocuments++;
+                        Metrics.CRAWL.record(1, 0, -1);
                         if (verbose) {
                             System.out.println("\rScanning " + directory + "...");
                         }
+                        directoryListings++;
+                        failureMarks.push(failedFiles.size());
                     } catch (InterruptedException ex) {
                         Thread.currentThread().interrupt();
                         failedFiles.add(directory.toString());
@@ -75,9 +192,30 @@ public class DirectoryCrawler implements Callable<Integer> {
 
                 @Override
                 public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (stopped) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    walkedEntries++;
+                    // directories at the maximum depth are reported as files
+                    if (attrs.isDirectory() ? pathFilter.isExcludedDirectory(root, file) 
+                            : !pathFilter.isIncludedFile(root, file)) {
+                        if (attrs.isDirectory()) {
+                            excludedDirectories++;
+                        } else {
+                            excludedFiles++;
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                    if (inodeTracker != null && !attrs.isDirectory() && !inodeTracker.visit(file, attrs)) {
+                        linkedEntries++;
+                        return FileVisitResult.CONTINUE;
+                    }
                     try {
                         scannedFiles++;
+                        throttledNanos += ioBudget.acquireMetadataOps(1);
                         queue.put(getFileInfo(file, attrs));
+                        queuedDocuments++;
+                        Metrics.CRAWL.record(1, 0, -1);
                     } catch (InterruptedException ex) {
                         Thread.currentThread().interrupt();
                         failedFiles.add(file.toString());
@@ -86,8 +224,29 @@ public class DirectoryCrawler implements Callable<Integer> {
                     return FileVisitResult.CONTINUE;
                 }
 
+                @Override
+                public FileVisitResult postVisitDirectory(Path directory, IOException e) throws IOException {
+                    final int failuresBefore = failureMarks.pop();
+                    if (e != null) {
+                        throw e;
+                    }
+                    if (journal != null && failedFiles.size() == failuresBefore) {
+                        journal.crawled(directory, queuedDocuments);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
                 @Override
                 public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    walkedEntries++;
+                    if (e instanceof FileSystemLoopException) {
+                        loops++;
+                        if (verbose) {
+                            System.out.println("\rSkipping directory cycle at " + file);
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+                    Metrics.CRAWL.recordErrors(1);
                     System.err.printf("Could not read '%s': ", file);
                     if (e instanceof AccessDeniedException) {
                         System.out.println("Access denied");
@@ -101,7 +260,23 @@ public class DirectoryCrawler implements Callable<Integer> {
             });
         } catch (IOException e) {
             System.err.println("IO error: " + e.getMessage());
-            failedFiles.add(root.toString());
+            failedFiles.add(start.toString());
+        }
+
+        if (excludedDirectories > 0 || excludedFiles > 0) {
+            System.out.println("\rExcluded by filter: " + excludedDirectories + " directories, " + excludedFiles 
+                    + " files");
+        }
+
+        if (linkedEntries > 0 || loops > 0) {
+            System.out.println("\rSkipped already visited: " + linkedEntries + " hard linked or symlinked entries, " 
+                    + loops + " directory cycles");
+        }
+
+        if (verbose || statMinimal) {
+            System.out.println(String.format("\rFile system calls: %d entries walked (attributes read once and "
+                    + "reused), %d directory listings, %d mime type probes", walkedEntries, directoryListings
+                    , contentCalls));
         }
 
         if (!failedFiles.isEmpty()) {
@@ -112,19 +287,41 @@ public class DirectoryCrawler implements Callable<Integer> {
         return scannedFiles;
     }
 
-    private ArchivedFileInfo getFileInfo(final Path path, final BasicFileAttributes attributes) throws IOException {
+    /**
+     * @return the time this crawler was delayed by the I/O budget in milliseconds
+     */
+    public long getThrottledMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(throttledNanos);
+    }
+
+    ArchivedFileInfo getFileInfo(final Path path, final BasicFileAttributes attributes) throws IOException
+            , InterruptedException {
         String type = null;
-        if (path.toFile().isDirectory()) {
+        // use the attributes the walk already read, every extra call is a round trip on network file systems
+        if (attributes.isDirectory()) {
             type = "folder";
         } else {
             switch (mimeInfo) {
                 case 1: {
-                    type = Files.probeContentType(path);
+                    if (statMinimal) {
+                        type = tika.detect(path.getFileName() != null ? path.getFileName().toString() : null);
+                    } else {
+                        contentCalls++;
+                        throttledNanos += ioBudget.acquireMetadataOps(1);
+                        final long start = System.nanoTime();
+                        type = Files.probeContentType(path);
+                        Metrics.MIME.record(1, 0, System.nanoTime() - start);
+                    }
                     break;
                 }
 
                 case 2: {
-                    type = tika.detect(path);
+                    contentCalls++;
+                    // opening the file is charged as an op, the bytes read are charged by the throttled stream
+                    throttledNanos += ioBudget.acquireMetadataOps(1);
+                    final long start = System.nanoTime();
+                    type = detectByContent(path);
+                    Metrics.MIME.record(1, 0, System.nanoTime() - start);
                     break;
                 }
 
@@ -136,26 +333,39 @@ public class DirectoryCrawler implements Callable<Integer> {
         Path fileName = path.getFileName();
         fileName = fileName != null ? fileName : path;
 
-        LocalDateTime creationDateTime
-                = LocalDateTime.ofInstant(Instant.ofEpochMilli(attributes.creationTime().toMillis()), ZoneId.systemDefault());
-        LocalDateTime modifiedDateTime
-                = LocalDateTime.ofInstant(Instant.ofEpochMilli(attributes.lastModifiedTime().toMillis()), ZoneId.systemDefault());
-
+        final long size = attributes.size();
         return new ArchivedFileInfo(null, false)
                 .setName(fileName.toString())
                 .setPath(path.toString())
-                .setSize(formatSize(attributes.size()))
-                .setCreated(creationDateTime.format(DATE_FORMATTER))
-                .setLastChanged(modifiedDateTime.format(DATE_FORMATTER))
+                .setSize(formatSize(size), size)
+                .setCreated(toLocalDateTime(attributes.creationTime()))
+                .setLastChanged(toLocalDateTime(attributes.lastModifiedTime()))
                 .setResourceType(type);
     }
 
-    private String formatSize(final long sizeInBytes) {
+    private LocalDateTime toLocalDateTime(final FileTime fileTime) {
+        return LocalDateTime.ofInstant(fileTime.toInstant(), zone);
+    }
+
+    private String detectByContent(final Path path) throws IOException {
+        if (!ioBudget.isLimited()) {
+            return tika.detect(path);
+        }
+        // read through the budget, Tika only reads the first few kilobytes needed for magic detection
+        final IOBudget.ThrottledInputStream throttled = ioBudget.throttle(Files.newInputStream(path));
+        try (InputStream inputStream = new BufferedInputStream(throttled)) {
+            return tika.detect(inputStream, path.getFileName() != null ? path.getFileName().toString() : null);
+        } finally {
+            throttledNanos += throttled.getThrottledNanos();
+        }
+    }
+
+    static String formatSize(final long sizeInBytes) {
         if (sizeInBytes < 1024) {
             return sizeInBytes + " B" + " (" + NumberFormat.getNumberInstance(Locale.GERMAN).format(sizeInBytes) + " Bytes)";
         }
         int z = (63 - Long.numberOfLeadingZeros(sizeInBytes)) / 10;
-        return DECIMAL_FORMATTER.format((double) sizeInBytes / (1L << (z * 10))) + " " + " KMGTPE".charAt(z) + "B ("
+        return DECIMAL_FORMATTER.get().format((double) sizeInBytes / (1L << (z * 10))) + " " + " KMGTPE".charAt(z) + "B ("
                 + NumberFormat.getNumberInstance(Locale.US).format(sizeInBytes) + " Bytes)";
     }
 }
@@ -0,0 +1,322 @@
+package org.dainst.arachne;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Local stand-in for an elasticsearch 2.x cluster speaking the part of the REST API this tool uses (cluster info,
+ * index create/delete/exists, put mapping and bulk).
+ * 
+ * Documents are not stored, only counted. To reproduce cluster side slowdowns the stand-in can delay requests, cap 
+ * the accepted bytes per second, reject single bulk items and fail whole bulk requests. It is configured with a comma 
+ * separated list of settings:
+ * <pre>
+ * latency=MS        fixed delay per request (default 0)
+ * jitter=MS         additional random delay of up to MS per request (default 0)
+ * throughput=RATE   maximum bytes per second accepted (k, m and g suffixes are allowed, default unlimited)
+ * rejections=P      probability of rejecting a single bulk item with 429 (default 0)
+ * failures=P        probability of failing a whole bulk request with 503 (default 0)
+ * seed=N            seed of the random generator (default 1)
+ * </pre>
+ * 
+ * It can run inside the importing process (option --standin) or on its own with
+ * <code>java -cp neofindertoes org.dainst.arachne.ESStandIn PORT [SETTINGS]</code>.
+ *
+ * @author Reimar Grabowski
+ */
+public class ESStandIn {
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double rejectionRate;
+    private final double failureRate;
+
+    private final IOBudget throughput;
+
+    private final Random random;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, AtomicLong> indices = new ConcurrentHashMap<>();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong bulkItems = new AtomicLong();
+    private final AtomicLong rejectedItems = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+
+    private HttpServer server;
+
+    /**
+     * @param settings the settings as described in the class documentation (may be empty)
+     * @throws IllegalArgumentException if the settings could not be parsed
+     */
+    public ESStandIn(final String settings) throws IllegalArgumentException {
+        long latency = 0;
+        long jitter = 0;
+        long bytesPerSecond = 0;
+        double rejections = 0;
+        double failures = 0;
+        long seed = 1;
+        for (String setting : settings.split(",")) {
+            if (setting.trim().isEmpty()) {
+                continue;
+            }
+            final String[] keyValue = setting.split("=", 2);
+            if (keyValue.length != 2) {
+                throw new IllegalArgumentException("Invalid stand-in setting '" + setting + "'.");
+            }
+            final String value = keyValue[1].trim();
+            switch (keyValue[0].trim()) {
+                case "latency":
+                    latency = Long.parseLong(value);
+                    break;
+                case "jitter":
+                    jitter = Long.parseLong(value);
+                    break;
+                case "throughput":
+                    bytesPerSecond = IOBudget.parseBytes(value);
+                    break;
+                case "rejections":
+                    rejections = Double.parseDouble(value);
+                    break;
+                case "failures":
+                    failures = Double.parseDouble(value);
+                    break;
+                case "seed":
+                    seed = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown stand-in setting '" + keyValue[0] + "'.");
+            }
+        }
+        this.latencyMillis = latency;
+        this.jitterMillis = jitter;
+        this.rejectionRate = rejections;
+        this.failureRate = failures;
+        this.throughput = new IOBudget(0, bytesPerSecond, null, null);
+        this.random = new Random(seed);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: ESStandIn PORT [SETTINGS]");
+            System.exit(1);
+        }
+        final ESStandIn standIn = new ESStandIn(args.length > 1 ? args[1] : "");
+        standIn.start(Integer.parseInt(args[0]));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(standIn.getStatistics())));
+    }
+
+    /**
+     * Starts the stand-in on the loopback interface.
+     * 
+     * @param port the port to listen on (0 for any free port)
+     * @return the port the stand-in listens on
+     * @throws IOException if the server could not be started
+     */
+    public int start(final int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "es-stand-in");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.start();
+        System.out.println("Elasticsearch stand-in listening on port " + server.getAddress().getPort());
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    public String getStatistics() {
+        return "Stand-in: " + requests.get() + " requests (" + failedRequests.get() + " failed), " + bulkItems.get()
+                + " bulk items (" + rejectedItems.get() + " rejected), " + receivedBytes.get() + " bytes received, "
+                + throughput.getThrottledMillis() + " ms throttled";
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            requests.incrementAndGet();
+            final byte[] body = readBody(exchange);
+            delay(body.length);
+
+            final String method = exchange.getRequestMethod();
+            final String[] path = exchange.getRequestURI().getPath().replaceAll("^/+|/+$", "").split("/");
+            final String index = path[0];
+
+            if (index.isEmpty()) {
+                final ObjectNode info = mapper.createObjectNode();
+                info.put("name", "stand-in").put("cluster_name", "elasticsearch");
+                info.putObject("version").put("number", "2.4.4");
+                respond(exchange, 200, info);
+            } else if ("_bulk".equals(path[path.length - 1]) && "POST".equals(method)) {
+                if (chance(failureRate)) {
+                    failedRequests.incrementAndGet();
+                    respond(exchange, 503, error("unavailable_shards_exception", "Injected failure"));
+                } else {
+                    respond(exchange, 200, bulk(body, path.length > 1 ? index : null));
+                }
+            } else if (path.length == 1 && "HEAD".equals(method)) {
+                exchange.sendResponseHeaders(indices.containsKey(index) ? 200 : 404, -1);
+            } else if (path.length == 1 && "PUT".equals(method)) {
+                if (indices.putIfAbsent(index, new AtomicLong()) != null) {
+                    respond(exchange, 400, error("index_already_exists_exception", "already exists"));
+                } else {
+                    respond(exchange, 200, acknowledged());
+                }
+            } else if (path.length == 1 && "DELETE".equals(method)) {
+                if (indices.remove(index) == null) {
+                    respond(exchange, 404, error("index_not_found_exception", "no such index"));
+                } else {
+                    respond(exchange, 200, acknowledged());
+                }
+            } else if (path.length >= 2 && "_mapping".equals(path[1]) && "PUT".equals(method)) {
+                respond(exchange, indices.containsKey(index) ? 200 : 404, acknowledged());
+            } else if (path.length == 2 && "_count".equals(path[1])) {
+                final AtomicLong count = indices.get(index);
+                respond(exchange, count != null ? 200 : 404
+                        , mapper.createObjectNode().put("count", count != null ? count.get() : 0));
+            } else {
+                respond(exchange, 400, error("illegal_argument_exception", "Unsupported by the stand-in"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private ObjectNode bulk(final byte[] body, final String defaultIndex) throws IOException {
+        final long start = System.nanoTime();
+        final ObjectNode response = mapper.createObjectNode();
+        final ArrayNode items = mapper.createArrayNode();
+        boolean errors = false;
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            final ObjectNode action = (ObjectNode) mapper.readTree(line);
+            final String actionName = action.fieldNames().next();
+            final ObjectNode metadata = (ObjectNode) action.get(actionName);
+            if (!"delete".equals(actionName)) {
+                // skip the source
+                reader.readLine();
+            }
+            bulkItems.incrementAndGet();
+
+            final String index = metadata.has("_index") ? metadata.get("_index").asText() : defaultIndex;
+            final ObjectNode result = items.addObject().putObject(actionName);
+            result.put("_index", index).put("_type", metadata.path("_type").asText())
+                    .put("_id", metadata.path("_id").asText());
+            if (chance(rejectionRate)) {
+                rejectedItems.incrementAndGet();
+                errors = true;
+                result.put("status", 429).set("error", error("es_rejected_execution_exception"
+                        , "Injected rejection").get("error"));
+                continue;
+            }
+            final AtomicLong count = indices.computeIfAbsent(index, key -> new AtomicLong());
+            if ("delete".equals(actionName)) {
+                count.decrementAndGet();
+                result.put("status", 200).put("found", true);
+            } else {
+                count.incrementAndGet();
+                result.put("status", 201).put("created", true);
+            }
+        }
+        response.put("took", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        response.put("errors", errors);
+        response.set("items", items);
+        return response;
+    }
+
+    private byte[] readBody(final HttpExchange exchange) throws IOException {
+        InputStream inputStream = exchange.getRequestBody();
+        if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+            inputStream = new GZIPInputStream(inputStream);
+        }
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = inputStream) {
+            final byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+        receivedBytes.addAndGet(body.size());
+        return body.toByteArray();
+    }
+
+    private void delay(final long bytes) throws InterruptedException {
+        long delay = latencyMillis;
+        if (jitterMillis > 0) {
+            synchronized (random) {
+                delay += (long) (random.nextDouble() * jitterMillis);
+            }
+        }
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+        if (bytes > 0) {
+            throughput.acquireBytes(bytes);
+        }
+    }
+
+    private boolean chance(final double probability) {
+        if (probability <= 0) {
+            return false;
+        }
+        synchronized (random) {
+            return random.nextDouble() < probability;
+        }
+    }
+
+    private ObjectNode acknowledged() {
+        return mapper.createObjectNode().put("acknowledged", true);
+    }
+
+    private ObjectNode error(final String type, final String reason) {
+        final ObjectNode error = mapper.createObjectNode();
+        error.putObject("error").put("type", type).put("reason", reason);
+        return error;
+    }
+
+    private void respond(final HttpExchange exchange, final int status, final ObjectNode json) throws IOException {
+        final byte[] body = mapper.writeValueAsBytes(json);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+}
@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.function.LongConsumer;
 
 /**
  * Class to fetch file information added by <code>DirectoryCrawlers</code> from the queue and add it to the
@@ -79,6 +80,24 @@ public class FileInfoCollector implements Callable<Integer> {
         return filesSubmitted;
     }
 
+    /**
+     * @param ackListener the listener notified about the number of documents acknowledged by the index
+     */
+    public void setAckListener(final LongConsumer ackListener) {
+        bulkIndexer.setAckListener(ackListener);
+    }
+
+    /**
+     * @return the number of documents acknowledged by the index
+     */
+    public long getAcknowledged() {
+        return bulkIndexer.getAcknowledged();
+    }
+
+    BulkIndexer getBulkIndexer() {
+        return bulkIndexer;
+    }
+
     public void interrupt(final int filesRead) {
         bulkIndexer.close(filesRead);
         myself.interrupt();
@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.file.LinkOption;
+import java.nio.file.Path;
 import java.util.Date;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CancellationException;
@@ -31,6 +32,8 @@ public class FileSystemScanner {
     private String hostname;
     private boolean strict;
 
+    private boolean complete = false;
+
     public FileSystemScanner(final ESService esService) {
         this.esService = esService;
 
@@ -41,57 +44,111 @@ public class FileSystemScanner {
         }
     }
 
-    public void scan(final File scanDirectory, final int maxThreads, final int mimeInfo, final boolean verbose) 
-            throws IOException {
+    /**
+     * @return <code>true</code> if the last scan read every entry and the index acknowledged every document
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Scans a directory and adds the file information to the index.
+     * 
+     * @param scanDirectory the directory to scan
+     * @param maxThreads the maximum number of threads
+     * @param options the scan options
+     * @return the number of documents submitted to the index
+     * @throws IOException if the directory could not be resolved
+     */
+    public int scan(final File scanDirectory, final int maxThreads, final ScanOptions options) throws IOException {
 
         this.volume = scanDirectory.toString();
-        this.verbose = verbose;
+        this.verbose = options.isVerbose();
+        this.complete = false;
         FileInfoCollector fileInfoCollector = null;
 
         System.out.format("\rScanning %s...\n", scanDirectory);
 
         BlockingQueue<ArchivedFileInfo> queue = new LinkedBlockingQueue<>();
+        Metrics.SERIALIZE.addQueue(queue);
 
         fileInfoCollector = new FileInfoCollector(scanDirectory, esService, queue, verbose);
         ExecutorService fixedThreadPool = Executors.newFixedThreadPool(2);
         Future<Integer> indexedFiles = (Future<Integer>) fixedThreadPool.submit(fileInfoCollector);
 
-        DirectoryCrawler crawler = new DirectoryCrawler(scanDirectory.toPath().toRealPath(LinkOption.NOFOLLOW_LINKS)
-                , mimeInfo, verbose, queue);
+        final Path root = scanDirectory.toPath().toRealPath(LinkOption.NOFOLLOW_LINKS);
+        DirectoryCrawler crawler = new DirectoryCrawler(root, options, queue);
+
+        ScanJournal journal = null;
+        if (options.getJournalDirectory() != null) {
+            journal = new ScanJournal(options.getJournalDirectory(), root);
+            try {
+                final int completedSubtrees = journal.open(options.isResume());
+                if (completedSubtrees > 0) {
+                    System.out.println("\rResuming scan, skipping " + completedSubtrees + " completed subtree(s)");
+                }
+                fileInfoCollector.setAckListener(journal);
+                crawler.setJournal(journal);
+            } catch (IOException e) {
+                System.err.println("Could not open scan journal, the scan cannot be resumed. " + e.getMessage());
+                journal = null;
+            }
+        }
         Future<Integer> readFiles = (Future<Integer>) fixedThreadPool.submit(crawler);
 
         long startTime = new Date().getTime();
 
-        // clean up if the execution is finished or terminated (for example by ctrl+c)
-        Runtime.getRuntime().addShutdownHook(new Thread() {
-            @Override
-            public void run() {
-                fixedThreadPool.shutdownNow();
-                esService.close();
-            }
-        });
-
-        int filesRead = 0;
-        try {
-            filesRead = readFiles.get();
-        } catch (InterruptedException | ExecutionException ignore) {};
-                
-        fileInfoCollector.interrupt(filesRead);
+        // on shutdown (for example by ctrl+c) the crawl is stopped and the queued documents are still indexed
+        final ShutdownCoordinator.Drain drain = ShutdownCoordinator.begin(scanDirectory.toString()
+                , fileInfoCollector.getBulkIndexer(), crawler::getQueuedDocuments, crawler::stop);
 
         int fileInfos = 0;
         try {
-            fileInfos = indexedFiles.get();
-        } catch (InterruptedException | ExecutionException ignore) {
-        }
+            int filesRead = 0;
+            try {
+                filesRead = readFiles.get();
+            } catch (InterruptedException | ExecutionException ignore) {};
+                
+            fileInfoCollector.interrupt(filesRead);
 
-        if (fileInfos > 0) {
-            System.out.println("\rDone.\n");
+            try {
+                fileInfos = indexedFiles.get();
+            } catch (InterruptedException | ExecutionException ignore) {
+            }
 
-            long diff = new Date().getTime() - startTime;
-            String timeTaken = String.format("%02d min, %02d sec", TimeUnit.MILLISECONDS.toMinutes(diff), TimeUnit.MILLISECONDS.toSeconds(diff)
-                    - TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(diff)));
-            System.out.println("\rElapsed time: " + timeTaken);
+            if (fileInfos > 0) {
+                System.out.println("\rDone.\n");
+
+                long diff = new Date().getTime() - startTime;
+                String timeTaken = String.format("%02d min, %02d sec", TimeUnit.MILLISECONDS.toMinutes(diff), TimeUnit.MILLISECONDS.toSeconds(diff)
+                        - TimeUnit.MINUTES.toSeconds(TimeUnit.MILLISECONDS.toMinutes(diff)));
+                System.out.println("\rElapsed time: " + timeTaken);
+                if (options.getIOBudget().isLimited()) {
+                    long throttled = crawler.getThrottledMillis();
+                    System.out.println(String.format("\rTime throttled: %02d min, %02d sec (%d%%)"
+                            , TimeUnit.MILLISECONDS.toMinutes(throttled)
+                            , TimeUnit.MILLISECONDS.toSeconds(throttled) % 60, diff > 0 ? throttled * 100 / diff : 0));
+                }
+            }
+            fixedThreadPool.shutdown();
+            complete = !crawler.hasFailures() && !crawler.isStopped()
+                    && fileInfoCollector.getAcknowledged() >= crawler.getQueuedDocuments();
+            if (journal != null) {
+                if (journal.getSkipped() > 0) {
+                    System.out.println("\rSubtrees skipped as completed by an earlier scan: " + journal.getSkipped());
+                }
+                if (complete) {
+                    journal.delete();
+                } else {
+                    journal.close();
+                    System.out.println("\rScan incomplete, completed subtrees are kept in " + journal.getJournalFile()
+                            + ", continue with --resume");
+                }
+            }
+            Metrics.SERIALIZE.removeQueue(queue);
+        } finally {
+            drain.finish();
         }
-        fixedThreadPool.shutdown();
+        return fileInfos;
     }
 }
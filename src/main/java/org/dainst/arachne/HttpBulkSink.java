@@ -0,0 +1,145 @@
+package org.dainst.arachne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bulk sink sending NDJSON <code>_bulk</code> requests to the REST API of an elasticsearch cluster.
+ * 
+ * Actions are buffered until <code>BULK_ACTIONS</code> or <code>BULK_SIZE</code> is reached. The bulk is then sent by
+ * a background thread while the next one is buffered. If a bulk is still in flight when the next one is full, adding
+ * blocks.
+ *
+ * @author Reimar Grabowski
+ */
+public class HttpBulkSink implements BulkSink {
+
+    private static final byte NEWLINE = '\n';
+
+    private final HttpESService esService;
+
+    private final String indexName;
+
+    private final Listener listener;
+
+    private final ObjectMapper mapper;
+
+    private final ExecutorService sender = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "http-bulk-sender");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // only one bulk in flight
+    private final Semaphore inFlight = new Semaphore(1);
+
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream(1 << 20);
+
+    private int bufferedActions = 0;
+
+    private long executionId = 0;
+
+    public HttpBulkSink(final HttpESService esService, final String indexName, final Listener listener) {
+        this.esService = esService;
+        this.indexName = indexName;
+        this.listener = listener;
+        this.mapper = esService.getMapper();
+    }
+
+    @Override
+    public synchronized void index(final String id, final byte[] source) {
+        add("index", id, source);
+    }
+
+    @Override
+    public synchronized void delete(final String id) {
+        add("delete", id, null);
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (bufferedActions > 0) {
+            send();
+        }
+    }
+
+    @Override
+    public boolean awaitClose(final long timeout, final TimeUnit unit) throws InterruptedException {
+        flush();
+        final boolean finished = inFlight.tryAcquire(timeout, unit);
+        if (finished) {
+            inFlight.release();
+        }
+        sender.shutdown();
+        return finished;
+    }
+
+    private void add(final String action, final String id, final byte[] source) {
+        final ObjectNode metadata = mapper.createObjectNode();
+        metadata.putObject(action)
+                .put("_index", indexName)
+                .put("_type", ESService.DOCUMENT_TYPE)
+                .put("_id", id);
+        try {
+            buffer.write(mapper.writeValueAsBytes(metadata));
+            buffer.write(NEWLINE);
+            if (source != null) {
+                buffer.write(source);
+                buffer.write(NEWLINE);
+            }
+        } catch (IOException e) {
+            // writing to a byte array does not fail
+            throw new IllegalStateException(e);
+        }
+        bufferedActions++;
+        if (bufferedActions >= BULK_ACTIONS || buffer.size() >= BULK_SIZE) {
+            send();
+        }
+    }
+
+    private void send() {
+        final byte[] bulk = buffer.toByteArray();
+        final int actions = bufferedActions;
+        final long id = ++executionId;
+        buffer = new ByteArrayOutputStream(Math.max(1 << 20, bulk.length));
+        bufferedActions = 0;
+
+        inFlight.acquireUninterruptibly();
+        listener.beforeBulk(id, actions);
+        sender.submit(() -> {
+            try {
+                final HttpESService.Response response = esService.request("POST", "/_bulk", bulk, true);
+                if (response.status != 200) {
+                    throw new IOException("Bulk request failed: " + response.text());
+                }
+                listener.afterBulk(id, actions, countFailedItems(response.body));
+            } catch (IOException | RuntimeException e) {
+                listener.afterBulk(id, actions, e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private int countFailedItems(final byte[] responseBody) throws IOException {
+        final JsonNode response = mapper.readTree(responseBody);
+        if (!response.path("errors").asBoolean(false)) {
+            return 0;
+        }
+        int failed = 0;
+        for (JsonNode item : response.path("items")) {
+            final JsonNode result = item.elements().hasNext() ? item.elements().next() : null;
+            if (result != null && result.has("error")) {
+                failed++;
+            }
+        }
+        return failed;
+    }
+}
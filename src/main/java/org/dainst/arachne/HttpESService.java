@@ -0,0 +1,274 @@
+package org.dainst.arachne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Elasticsearch service using the REST API (port 9200).
+ * 
+ * Requests are sent with <code>HttpURLConnection</code>, which keeps connections alive and reuses them from its 
+ * connection cache (the pool size can be set with the system property <code>http.maxConnections</code>). Bulk 
+ * request bodies can optionally be gzip compressed.
+ *
+ * @author Reimar Grabowski
+ */
+public class HttpESService implements ESService {
+
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int READ_TIMEOUT = 120000;
+
+    private static final String SCROLL_KEEP_ALIVE = "5m";
+
+    private final String baseUrl;
+
+    private final String indexName;
+
+    private final boolean gzip;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private boolean clusterAvailable;
+
+    public HttpESService(final InetAddress address, final int port, final String clusterName, final String indexName
+            , final boolean gzip) {
+        final String host = address.getHostAddress().contains(":") ? '[' + address.getHostAddress() + ']'
+                : address.getHostAddress();
+        this.baseUrl = "http://" + host + ':' + port;
+        this.indexName = indexName;
+        this.gzip = gzip;
+
+        // test if we are connected to an es cluster
+        try {
+            final Response response = request("GET", "/", null, false);
+            clusterAvailable = response.status == 200;
+            if (clusterAvailable) {
+                final String actualClusterName = mapper.readTree(response.body).path("cluster_name").asText();
+                if (!clusterName.equals(actualClusterName)) {
+                    System.out.println("Connected to cluster '" + actualClusterName + "' instead of '" + clusterName 
+                            + "'");
+                }
+            } else {
+                System.out.println("Could not connect to elasticsearch cluster");
+            }
+        } catch (IOException e) {
+            System.out.println("Could not connect to elasticsearch cluster");
+            clusterAvailable = false;
+        }
+    }
+
+    @Override
+    public boolean isClusterAvailable() {
+        return clusterAvailable;
+    }
+
+    @Override
+    public boolean createIndex() {
+        try {
+            final Response response = request("PUT", "/" + indexName, null, false);
+            if (!isAcknowledged(response)) {
+                System.err.println("Failed to create index '" + indexName + "'. Cause: " + response.text());
+                return false;
+            }
+            final String mapping = Mapping.getIndexMapping();
+            if (!"undefined".equals(mapping)) {
+                final Response mappingResponse = request("PUT", "/" + indexName + "/_mapping/entry"
+                        , mapping.getBytes(StandardCharsets.UTF_8), false);
+                if (isAcknowledged(mappingResponse)) {
+                    System.out.println("Elasticsearch mapping set.");
+                } else {
+                    System.out.println("Failed to set elasticsearch mapping.");
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to create index '" + indexName + "'. Cause: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean deleteIndex() {
+        try {
+            final Response response = request("DELETE", "/" + indexName, null, false);
+            if (!isAcknowledged(response)) {
+                System.err.println("Index " + indexName + " was not deleted.");
+                return false;
+            }
+        } catch (IOException e) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean indexExists() {
+        try {
+            return request("HEAD", "/" + indexName, null, false).status == 200;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String getIndexName() {
+        return indexName;
+    }
+
+    @Override
+    public BulkSink createBulkSink(final BulkSink.Listener listener) {
+        return new HttpBulkSink(this, indexName, listener);
+    }
+
+    @Override
+    public int getSlices() throws IOException {
+        final Response response = request("GET", "/" + indexName + "/_settings", null, false);
+        if (response.status != 200) {
+            throw new IOException("Could not read the settings of index '" + indexName + "'. Cause: " 
+                    + response.text());
+        }
+        // the index name may be an alias, the settings are keyed by the real name
+        final JsonNode settings = mapper.readTree(response.body).elements().next();
+        return settings.path("settings").path("index").path("number_of_shards").asInt(1);
+    }
+
+    @Override
+    public long readSlice(final int slice, final int batchSize, final DocumentConsumer consumer) throws IOException {
+        long documents = 0;
+        String scrollId = null;
+        try {
+            // elasticsearch 2.x has no sliced scroll, every shard is scrolled on its own
+            final ObjectNode search = mapper.createObjectNode().put("size", batchSize);
+            search.putArray("sort").add("_doc");
+            JsonNode response = searchRequest("/" + indexName + "/_search?scroll=" + SCROLL_KEEP_ALIVE 
+                    + "&preference=_shards:" + slice, search);
+            JsonNode hits = response.path("hits").path("hits");
+            while (hits.size() > 0) {
+                scrollId = response.path("_scroll_id").asText();
+                for (JsonNode hit : hits) {
+                    consumer.accept(hit.path("_id").asText(), mapper.writeValueAsBytes(hit.path("_source")));
+                    documents++;
+                }
+                final ObjectNode scroll = mapper.createObjectNode()
+                        .put("scroll", SCROLL_KEEP_ALIVE)
+                        .put("scroll_id", scrollId);
+                response = searchRequest("/_search/scroll", scroll);
+                hits = response.path("hits").path("hits");
+            }
+            scrollId = response.path("_scroll_id").asText(null);
+        } finally {
+            if (scrollId != null) {
+                final ObjectNode clear = mapper.createObjectNode();
+                clear.putArray("scroll_id").add(scrollId);
+                try {
+                    request("DELETE", "/_search/scroll", mapper.writeValueAsBytes(clear), false);
+                } catch (IOException e) {
+                    // expires anyway
+                }
+            }
+        }
+        return documents;
+    }
+
+    @Override
+    public void close() {
+        // connections are owned by the JDK connection cache
+    }
+
+    /**
+     * Sends a request to the cluster.
+     * 
+     * @param method the HTTP method
+     * @param path the path (starting with '/')
+     * @param body the request body (may be <code>null</code>)
+     * @param compress whether to gzip the body (ignored if gzip is not enabled for this service)
+     * @return the response
+     * @throws IOException if the request failed
+     */
+    Response request(final String method, final String path, final byte[] body, final boolean compress)
+            throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        connection.setRequestMethod(method);
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setRequestProperty("Accept-Encoding", "identity");
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "application/json");
+            byte[] data = body;
+            if (compress && gzip) {
+                final ByteArrayOutputStream compressed = new ByteArrayOutputStream(body.length / 4 + 64);
+                try (GZIPOutputStream gzipStream = new GZIPOutputStream(compressed, 1 << 16)) {
+                    gzipStream.write(body);
+                }
+                data = compressed.toByteArray();
+                connection.setRequestProperty("Content-Encoding", "gzip");
+            }
+            connection.setFixedLengthStreamingMode(data.length);
+            try (OutputStream outputStream = connection.getOutputStream()) {
+                outputStream.write(data);
+            }
+        }
+        final int status = connection.getResponseCode();
+        // the response has to be read completely for the connection to be reused
+        final InputStream inputStream = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+        final ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+        if (inputStream != null) {
+            try (InputStream in = inputStream) {
+                final byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    responseBody.write(buffer, 0, read);
+                }
+            }
+        }
+        return new Response(status, responseBody.toByteArray());
+    }
+
+    private JsonNode searchRequest(final String path, final ObjectNode body) throws IOException {
+        final Response response = request("POST", path, mapper.writeValueAsBytes(body), false);
+        if (response.status != 200) {
+            throw new IOException("Search request failed. Cause: " + response.text());
+        }
+        return mapper.readTree(response.body);
+    }
+
+    ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    private boolean isAcknowledged(final Response response) throws IOException {
+        if (response.status != 200 || response.body.length == 0) {
+            return false;
+        }
+        final JsonNode json = mapper.readTree(response.body);
+        return json.path("acknowledged").asBoolean(false);
+    }
+
+    /**
+     * Status and body of a response.
+     */
+    static class Response {
+
+        final int status;
+        final byte[] body;
+
+        Response(final int status, final byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        String text() {
+            return status + " " + new String(body, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.dainst.arachne;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class to limit the I/O load a scan puts on the scanned storage.
+ * 
+ * The budget consists of a maximum number of metadata operations per second and a maximum number of content bytes
+ * read per second (both optional). Reading the attributes of an entry, listing a directory and probing the type of
+ * a file each count as one metadata operation. The budget is shared by all crawlers of a run and enforced by token 
+ * buckets. If a time window is given the limits only apply inside that window (for example during office hours).
+ *
+ * @author Reimar Grabowski
+ */
+public class IOBudget {
+
+    /**
+     * A budget that never throttles.
+     */
+    public static final IOBudget UNLIMITED = new IOBudget(0, 0, null, null);
+
+    private final TokenBucket metadataOps;
+    private final TokenBucket contentBytes;
+
+    private final LocalTime windowStart;
+    private final LocalTime windowEnd;
+
+    private final AtomicLong throttledNanos = new AtomicLong();
+
+    /**
+     * @param maxOpsPerSecond the maximum number of metadata operations per second (0 for no limit)
+     * @param maxBytesPerSecond the maximum number of content bytes read per second (0 for no limit)
+     * @param windowStart start of the time window the limits apply in (<code>null</code> for always)
+     * @param windowEnd end of the time window the limits apply in (<code>null</code> for always)
+     */
+    public IOBudget(final long maxOpsPerSecond, final long maxBytesPerSecond, final LocalTime windowStart
+            , final LocalTime windowEnd) {
+        this.metadataOps = maxOpsPerSecond > 0 ? new TokenBucket(maxOpsPerSecond) : null;
+        this.contentBytes = maxBytesPerSecond > 0 ? new TokenBucket(maxBytesPerSecond) : null;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+    }
+
+    /**
+     * Parses a time window of the form <code>HH:mm-HH:mm</code>. Windows may span midnight (22:00-06:00).
+     * 
+     * @param window the window string
+     * @return start and end time of the window
+     * @throws IllegalArgumentException if the window could not be parsed
+     */
+    public static LocalTime[] parseWindow(final String window) throws IllegalArgumentException {
+        final String[] times = window.split("-");
+        if (times.length != 2) {
+            throw new IllegalArgumentException("Invalid time window '" + window + "'. Expected HH:mm-HH:mm.");
+        }
+        try {
+            return new LocalTime[]{LocalTime.parse(times[0].trim()), LocalTime.parse(times[1].trim())};
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid time window '" + window + "'. Expected HH:mm-HH:mm.");
+        }
+    }
+
+    /**
+     * Parses a byte rate like <code>500k</code>, <code>20M</code> or <code>1g</code> (binary units).
+     * 
+     * @param rate the rate string
+     * @return the rate in bytes
+     * @throws NumberFormatException if the rate could not be parsed
+     */
+    public static long parseBytes(final String rate) throws NumberFormatException {
+        final String value = rate.trim().toLowerCase();
+        final int unit = "kmg".indexOf(value.charAt(value.length() - 1));
+        if (unit < 0) {
+            return Long.parseLong(value);
+        }
+        return Long.parseLong(value.substring(0, value.length() - 1).trim()) << (10 * (unit + 1));
+    }
+
+    public boolean isLimited() {
+        return metadataOps != null || contentBytes != null;
+    }
+
+    /**
+     * Blocks until the given number of metadata operations may be performed.
+     * 
+     * @param ops the number of operations
+     * @return the time spent waiting in nanoseconds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public long acquireMetadataOps(final int ops) throws InterruptedException {
+        return acquire(metadataOps, ops);
+    }
+
+    /**
+     * Blocks until the given number of content bytes may be read.
+     * 
+     * @param bytes the number of bytes
+     * @return the time spent waiting in nanoseconds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public long acquireBytes(final long bytes) throws InterruptedException {
+        return acquire(contentBytes, bytes);
+    }
+
+    /**
+     * Wraps an input stream so that all reads from it are charged to the content byte budget.
+     * 
+     * @param inputStream the stream to wrap
+     * @return the throttled stream
+     */
+    public ThrottledInputStream throttle(final InputStream inputStream) {
+        return new ThrottledInputStream(inputStream);
+    }
+
+    /**
+     * @return the total time all users of this budget spent waiting in milliseconds
+     */
+    public long getThrottledMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(throttledNanos.get());
+    }
+
+    @Override
+    public String toString() {
+        if (!isLimited()) {
+            return "unlimited";
+        }
+        String result = (metadataOps != null ? metadataOps.rate + " metadata ops/s" : "unlimited metadata ops")
+                + ", " + (contentBytes != null ? contentBytes.rate + " bytes/s" : "unlimited bytes");
+        if (windowStart != null) {
+            result += " (between " + windowStart + " and " + windowEnd + ")";
+        }
+        return result;
+    }
+
+    private long acquire(final TokenBucket bucket, final long tokens) throws InterruptedException {
+        if (bucket == null || !isInWindow()) {
+            return 0;
+        }
+        final long waitNanos = bucket.reserve(tokens);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+            throttledNanos.addAndGet(waitNanos);
+        }
+        return waitNanos;
+    }
+
+    private boolean isInWindow() {
+        if (windowStart == null || windowEnd == null) {
+            return true;
+        }
+        final LocalTime now = LocalTime.now();
+        if (windowStart.isBefore(windowEnd)) {
+            return !now.isBefore(windowStart) && now.isBefore(windowEnd);
+        }
+        return !now.isBefore(windowStart) || now.isBefore(windowEnd);
+    }
+
+    /**
+     * Token bucket that allows bursts of up to one second worth of tokens. Callers reserve tokens (possibly going 
+     * into debt) and sleep for the returned time outside of the lock.
+     */
+    private static class TokenBucket {
+
+        private final long rate;
+        private final double nanosPerToken;
+
+        private double available;
+        private long lastRefill = System.nanoTime();
+
+        TokenBucket(final long rate) {
+            this.rate = rate;
+            this.nanosPerToken = TimeUnit.SECONDS.toNanos(1) / (double) rate;
+            this.available = rate;
+        }
+
+        synchronized long reserve(final long tokens) {
+            final long now = System.nanoTime();
+            available = Math.min(rate, available + (now - lastRefill) / nanosPerToken);
+            lastRefill = now;
+            available -= tokens;
+            return available >= 0 ? 0 : (long) (-available * nanosPerToken);
+        }
+    }
+
+    /**
+     * Input stream charging every read to the content byte budget.
+     */
+    public class ThrottledInputStream extends FilterInputStream {
+
+        private long throttledNanos = 0;
+
+        ThrottledInputStream(final InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            final int result = super.read();
+            if (result != -1) {
+                charge(1);
+            }
+            return result;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int result = super.read(b, off, len);
+            if (result > 0) {
+                charge(result);
+            }
+            return result;
+        }
+
+        /**
+         * @return the time reads from this stream were delayed in nanoseconds
+         */
+        public long getThrottledNanos() {
+            return throttledNanos;
+        }
+
+        private void charge(final long bytes) throws IOException {
+            try {
+                throttledNanos += acquireBytes(bytes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling read.");
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package org.dainst.arachne;
+
+/**
+ * Thrown if an import cannot be continued, carrying the exit code the command line tool terminates with.
+ *
+ * @author Reimar Grabowski
+ */
+public class ImportAbortedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int exitCode;
+
+    public ImportAbortedException(final int exitCode, final String message) {
+        super(message);
+        this.exitCode = exitCode;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+}
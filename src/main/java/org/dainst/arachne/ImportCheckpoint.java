@@ -0,0 +1,246 @@
+package org.dainst.arachne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Checkpoint of a catalog import, used to resume an interrupted import.
+ * 
+ * The checkpoint stores the line number of the last record of the longest run of records, counted from the start of 
+ * the catalog, that was acknowledged by the index, and the offset in bytes after that line, so a resumed import can 
+ * seek past the imported part. The ids (paths) of these records are appended to a side file, so the duplicate 
+ * detection works across the resumed part. Checkpoints are only valid as long as the size and the 
+ * modification time of the catalog are unchanged.
+ *
+ * @author Reimar Grabowski
+ */
+public class ImportCheckpoint {
+
+    /**
+     * The directory checkpoints are stored in by default.
+     */
+    public static final Path DEFAULT_DIRECTORY = Paths.get(System.getProperty("user.home"), ".neofindertoes"
+            , "checkpoints");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Path catalog;
+    private final Path checkpointFile;
+    private final Path idsFile;
+
+    private final long catalogSize;
+    private final long catalogModified;
+
+    private long line = 0;
+    private long offset = 0;
+    private long records = 0;
+
+    private BufferedWriter idsWriter = null;
+
+    /**
+     * @param directory the directory to store the checkpoint in
+     * @param catalog the catalog file
+     * @throws IOException if the catalog attributes could not be read
+     */
+    public ImportCheckpoint(final Path directory, final Path catalog) throws IOException {
+        this(directory, catalog, catalog);
+    }
+
+    /**
+     * @param directory the directory to store the checkpoint in
+     * @param catalog the catalog, may be an entry of an archive
+     * @param file the file containing the catalog, its size and modification time validate the checkpoint
+     * @throws IOException if the file attributes could not be read
+     */
+    public ImportCheckpoint(final Path directory, final Path catalog, final Path file) throws IOException {
+        this.catalog = catalog.toAbsolutePath();
+        final String name = this.catalog.getFileName() + "-" + hash(this.catalog.toString());
+        this.checkpointFile = directory.resolve(name + ".json");
+        this.idsFile = directory.resolve(name + ".ids");
+        this.catalogSize = Files.size(file);
+        this.catalogModified = Files.getLastModifiedTime(file).toMillis();
+    }
+
+    /**
+     * Loads the checkpoint.
+     * 
+     * @return <code>true</code> if there is a checkpoint for the unchanged catalog
+     * @throws IOException if the checkpoint could not be read
+     */
+    public synchronized boolean load() throws IOException {
+        if (!Files.exists(checkpointFile)) {
+            return false;
+        }
+        final JsonNode json = mapper.readTree(checkpointFile.toFile());
+        if (json.path("size").asLong() != catalogSize || json.path("lastModified").asLong() != catalogModified) {
+            System.out.println("\rCatalog changed since the checkpoint was written, starting from the beginning.");
+            return false;
+        }
+        line = json.path("line").asLong();
+        offset = json.path("offset").asLong();
+        records = json.path("records").asLong();
+        return line > 0;
+    }
+
+    /**
+     * Reads the ids of the records covered by the checkpoint.
+     * 
+     * @param consumer the consumer of the ids
+     * @throws IOException if the ids could not be read
+     */
+    public synchronized void loadIds(final Consumer<String> consumer) throws IOException {
+        // the side file may contain ids written after the last checkpoint
+        try (BufferedReader reader = Files.newBufferedReader(idsFile, StandardCharsets.UTF_8)) {
+            String id;
+            long count = 0;
+            while (count < records && (id = reader.readLine()) != null) {
+                consumer.accept(id);
+                count++;
+            }
+            if (count < records) {
+                throw new IOException("Checkpoint ids incomplete, expected " + records + " but found " + count);
+            }
+        }
+    }
+
+    /**
+     * Removes the ids of the side file written after the loaded checkpoint and starts appending to it.
+     * 
+     * @throws IOException if the side file could not be written
+     */
+    public synchronized void open() throws IOException {
+        Files.createDirectories(checkpointFile.getParent());
+        final Path tmpFile = idsFile.resolveSibling(idsFile.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+            if (records > 0) {
+                loadIds(id -> {
+                    try {
+                        writer.write(id);
+                        writer.write('\n');
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+        }
+        move(tmpFile, idsFile);
+        idsWriter = Files.newBufferedWriter(idsFile, StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Advances the checkpoint.
+     * 
+     * @param line the line number of the last acknowledged record
+     * @param offset the offset in bytes after the last acknowledged record (in the decompressed catalog)
+     * @param ids the ids of the records acknowledged since the last update
+     * @throws IOException if the checkpoint could not be written
+     */
+    public synchronized void update(final long line, final long offset, final List<String> ids) throws IOException {
+        for (String id : ids) {
+            idsWriter.write(id);
+            idsWriter.write('\n');
+        }
+        idsWriter.flush();
+        this.line = line;
+        this.offset = offset;
+        this.records += ids.size();
+
+        final ObjectNode json = mapper.createObjectNode();
+        json.put("catalog", catalog.toString());
+        json.put("size", catalogSize);
+        json.put("lastModified", catalogModified);
+        json.put("line", line);
+        json.put("offset", offset);
+        json.put("records", records);
+        final Path tmpFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+        mapper.writeValue(tmpFile.toFile(), json);
+        move(tmpFile, checkpointFile);
+    }
+
+    /**
+     * Closes the side file.
+     */
+    public synchronized void close() {
+        if (idsWriter != null) {
+            try {
+                idsWriter.close();
+            } catch (IOException e) {
+                System.err.println("Could not close checkpoint file " + idsFile + ". " + e.getMessage());
+            }
+            idsWriter = null;
+        }
+    }
+
+    /**
+     * Closes and deletes the checkpoint, after the import has finished.
+     */
+    public synchronized void delete() {
+        close();
+        try {
+            Files.deleteIfExists(checkpointFile);
+            Files.deleteIfExists(idsFile);
+        } catch (IOException e) {
+            System.err.println("Could not delete checkpoint " + checkpointFile + ". " + e.getMessage());
+        }
+        line = 0;
+        offset = 0;
+        records = 0;
+    }
+
+    /**
+     * @return the line number of the last acknowledged record (the header is line 1)
+     */
+    public synchronized long getLine() {
+        return line;
+    }
+
+    /**
+     * @return the offset in bytes after the last acknowledged record, 0 for checkpoints written without it
+     */
+    public synchronized long getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return the number of acknowledged records
+     */
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    private static void move(final Path source, final Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    static String hash(final String string) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1").digest(string.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder hex = new StringBuilder();
+            for (int i = 0; i < 6; i++) {
+                hex.append(String.format("%02x", digest[i]));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(string.hashCode());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.dainst.arachne;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Class describing an import job submitted to the <code>ImportServer</code>.
+ * 
+ * Only type and path are required when submitting a job, all other settings default to the command line options 
+ * the server was started with.
+ *
+ * @author Reimar Grabowski
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ImportJob {
+
+    public enum Type {
+        scan, catalog, listing
+    }
+
+    public enum Status {
+        queued, running, succeeded, failed
+    }
+
+    private long id;
+
+    private Type type;
+    private String path;
+
+    private Boolean autoCorrect;
+    private Set<String> ignoreFields;
+    private Boolean minimal;
+    private Integer mimeInfo;
+    private RepairPolicy malformedPolicy;
+    private RepairPolicy duplicatePolicy;
+
+    private Status status;
+    private String message;
+
+    private Long submitted;
+    private Long started;
+    private Long finished;
+
+    public long getId() {
+        return id;
+    }
+
+    public ImportJob setId(long id) {
+        this.id = id;
+        return this;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public ImportJob setType(Type type) {
+        this.type = type;
+        return this;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public ImportJob setPath(String path) {
+        this.path = path;
+        return this;
+    }
+
+    public Boolean getAutoCorrect() {
+        return autoCorrect;
+    }
+
+    public ImportJob setAutoCorrect(Boolean autoCorrect) {
+        this.autoCorrect = autoCorrect;
+        return this;
+    }
+
+    public Set<String> getIgnoreFields() {
+        return ignoreFields;
+    }
+
+    public ImportJob setIgnoreFields(Set<String> ignoreFields) {
+        this.ignoreFields = ignoreFields != null ? new HashSet<>(ignoreFields) : null;
+        return this;
+    }
+
+    public Boolean getMinimal() {
+        return minimal;
+    }
+
+    public ImportJob setMinimal(Boolean minimal) {
+        this.minimal = minimal;
+        return this;
+    }
+
+    public Integer getMimeInfo() {
+        return mimeInfo;
+    }
+
+    public ImportJob setMimeInfo(Integer mimeInfo) {
+        this.mimeInfo = mimeInfo;
+        return this;
+    }
+
+    public RepairPolicy getMalformedPolicy() {
+        return malformedPolicy;
+    }
+
+    public ImportJob setMalformedPolicy(RepairPolicy malformedPolicy) {
+        this.malformedPolicy = malformedPolicy;
+        return this;
+    }
+
+    public RepairPolicy getDuplicatePolicy() {
+        return duplicatePolicy;
+    }
+
+    public ImportJob setDuplicatePolicy(RepairPolicy duplicatePolicy) {
+        this.duplicatePolicy = duplicatePolicy;
+        return this;
+    }
+
+    public synchronized Status getStatus() {
+        return status;
+    }
+
+    public synchronized ImportJob setStatus(Status status) {
+        this.status = status;
+        final long now = System.currentTimeMillis();
+        switch (status) {
+            case queued:
+                submitted = now;
+                break;
+            case running:
+                started = now;
+                break;
+            default:
+                finished = now;
+        }
+        return this;
+    }
+
+    public synchronized String getMessage() {
+        return message;
+    }
+
+    public synchronized ImportJob setMessage(String message) {
+        this.message = message;
+        return this;
+    }
+
+    public synchronized Long getSubmitted() {
+        return submitted;
+    }
+
+    public synchronized Long getStarted() {
+        return started;
+    }
+
+    public synchronized Long getFinished() {
+        return finished;
+    }
+}
@@ -0,0 +1,256 @@
+package org.dainst.arachne;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class providing a small local HTTP/JSON API to submit import jobs to a long running process.
+ * 
+ * The process keeps one elasticsearch client and its JIT compiled code warm across jobs, so many small imports do not
+ * pay the startup cost each time. Jobs are run on a pool of <code>concurrentJobs</code> threads.
+ * 
+ * <pre>
+ * POST /jobs        {"type": "scan"|"catalog"|"listing", "path": "...", ...}  submit a job
+ * GET  /jobs        list all jobs
+ * GET  /jobs/ID     show a single job
+ * </pre>
+ * 
+ * The server only listens on the loopback interface.
+ *
+ * @author Reimar Grabowski
+ */
+public class ImportServer {
+
+    private final ESService esService;
+
+    private final ProgressReport progressIndicator;
+
+    private final ImportJob defaults;
+
+    private final ScanOptions scanOptions;
+
+    private final int maxThreads;
+
+    private final ExecutorService jobExecutor;
+
+    private final Map<Long, ImportJob> jobs = new ConcurrentSkipListMap<>();
+
+    private final AtomicLong nextId = new AtomicLong(1);
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private HttpServer server;
+
+    /**
+     * @param esService the elasticsearch service shared by all jobs
+     * @param progressIndicator the progress indicator
+     * @param defaults the settings used for everything not specified by a submitted job
+     * @param scanOptions the scan options used for scan jobs
+     * @param maxThreads the maximum number of threads a single job may use
+     * @param concurrentJobs the number of jobs run concurrently
+     */
+    public ImportServer(final ESService esService, final ProgressReport progressIndicator, final ImportJob defaults
+            , final ScanOptions scanOptions, final int maxThreads, final int concurrentJobs) {
+        this.esService = esService;
+        this.progressIndicator = progressIndicator;
+        this.defaults = defaults;
+        this.scanOptions = scanOptions;
+        this.maxThreads = maxThreads;
+        this.jobExecutor = Executors.newFixedThreadPool(concurrentJobs > 0 ? concurrentJobs : 1);
+    }
+
+    public void start(final int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/jobs", this::handle);
+        server.setExecutor(Executors.newSingleThreadExecutor());
+        server.start();
+        System.out.println("\rAccepting jobs on http://" + server.getAddress().getHostString() + ':' 
+                + server.getAddress().getPort() + "/jobs");
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        jobExecutor.shutdown();
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        try {
+            final String path = exchange.getRequestURI().getPath();
+            final String method = exchange.getRequestMethod();
+            if ("POST".equals(method) && "/jobs".equals(path)) {
+                final ImportJob job;
+                try (InputStream body = exchange.getRequestBody()) {
+                    job = mapper.readValue(body, ImportJob.class);
+                } catch (IOException e) {
+                    respond(exchange, 400, error("Invalid job: " + e.getMessage()));
+                    return;
+                }
+                if (job.getType() == null || job.getPath() == null) {
+                    respond(exchange, 400, error("A job needs a type and a path."));
+                    return;
+                }
+                submit(job);
+                respond(exchange, 202, mapper.writeValueAsBytes(job));
+            } else if ("GET".equals(method) && ("/jobs".equals(path) || "/jobs/".equals(path))) {
+                respond(exchange, 200, mapper.writeValueAsBytes(new ArrayList<>(jobs.values())));
+            } else if ("GET".equals(method) && path.startsWith("/jobs/")) {
+                final ImportJob job;
+                try {
+                    job = jobs.get(Long.parseLong(path.substring("/jobs/".length())));
+                } catch (NumberFormatException e) {
+                    respond(exchange, 400, error("Invalid job id."));
+                    return;
+                }
+                if (job == null) {
+                    respond(exchange, 404, error("No such job."));
+                } else {
+                    respond(exchange, 200, mapper.writeValueAsBytes(job));
+                }
+            } else {
+                respond(exchange, 405, error("Unsupported request."));
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void submit(final ImportJob job) {
+        job.setId(nextId.getAndIncrement());
+        if (job.getAutoCorrect() == null) {
+            job.setAutoCorrect(defaults.getAutoCorrect());
+        }
+        if (job.getIgnoreFields() == null) {
+            job.setIgnoreFields(defaults.getIgnoreFields());
+        }
+        if (job.getMinimal() == null) {
+            job.setMinimal(defaults.getMinimal());
+        }
+        if (job.getMimeInfo() == null) {
+            job.setMimeInfo(defaults.getMimeInfo());
+        }
+        if (job.getMalformedPolicy() == null) {
+            job.setMalformedPolicy(defaults.getMalformedPolicy());
+        }
+        if (job.getDuplicatePolicy() == null) {
+            job.setDuplicatePolicy(defaults.getDuplicatePolicy());
+        }
+        job.setStatus(ImportJob.Status.queued);
+        jobs.put(job.getId(), job);
+        jobExecutor.submit(() -> run(job));
+    }
+
+    private void run(final ImportJob job) {
+        job.setStatus(ImportJob.Status.running);
+        System.out.println("\rStarting job " + job.getId() + ": " + job.getType() + ' ' + job.getPath());
+        try {
+            final File file = new File(job.getPath()).getCanonicalFile();
+            if (!file.exists()) {
+                throw new IOException("'" + job.getPath() + "' does not exist.");
+            }
+            boolean success = true;
+            switch (job.getType()) {
+                case scan: {
+                    if (!file.isDirectory()) {
+                        throw new IOException("'" + job.getPath() + "' is not a directory.");
+                    }
+                    // inodes seen by an earlier job must not hide the files of this one
+                    final InodeTracker inodeTracker = scanOptions.getInodeTracker() != null
+                            ? new InodeTracker(null) : null;
+                    try {
+                        final FileSystemScanner scanner = new FileSystemScanner(esService);
+                        scanner.scan(file, maxThreads, scanOptions.copy()
+                                .setMimeInfo(job.getMimeInfo())
+                                .setInodeTracker(inodeTracker));
+                        success = scanner.isComplete();
+                    } finally {
+                        if (inodeTracker != null) {
+                            inodeTracker.close();
+                        }
+                    }
+                    break;
+                }
+                case catalog: {
+                    for (String catalog : list(file, true)) {
+                        success &= new CsvReader(esService, false, progressIndicator)
+                                .setRepairPolicies(job.getMalformedPolicy(), job.getDuplicatePolicy())
+                                .read(catalog, job.getAutoCorrect(), job.getIgnoreFields(), job.getMinimal());
+                    }
+                    break;
+                }
+                case listing: {
+                    final ListingReader listingReader = new ListingReader(esService, false, maxThreads
+                            , Math.min(job.getMimeInfo(), 1));
+                    for (String listing : list(file, false)) {
+                        success &= listingReader.read(listing);
+                    }
+                    break;
+                }
+            }
+            job.setMessage(success ? null : "Not all files could be imported.");
+            job.setStatus(success ? ImportJob.Status.succeeded : ImportJob.Status.failed);
+        } catch (IOException | RuntimeException e) {
+            job.setMessage(e.getMessage());
+            job.setStatus(ImportJob.Status.failed);
+        }
+        System.out.println("\rJob " + job.getId() + ' ' + job.getStatus());
+    }
+
+    // subdirectories are skipped, for catalogs other files too and zip archives are expanded like when validating
+    private static List<String> list(final File file, final boolean catalogs) throws IOException {
+        final List<File> candidates = new ArrayList<>();
+        if (file.isDirectory()) {
+            final File[] children = file.listFiles();
+            if (children != null) {
+                for (File child : children) {
+                    if (child.isFile()) {
+                        candidates.add(child);
+                    }
+                }
+            }
+        } else {
+            candidates.add(file);
+        }
+        if (catalogs) {
+            candidates.removeIf(candidate -> !CatalogSource.isCatalog(candidate.getName()));
+        }
+        Collections.sort(candidates);
+        final List<String> files = new ArrayList<>();
+        for (File candidate : candidates) {
+            if (catalogs) {
+                files.addAll(CatalogSource.expand(candidate.getPath()));
+            } else {
+                files.add(candidate.getPath());
+            }
+        }
+        return files;
+    }
+
+    private byte[] error(final String message) throws IOException {
+        return mapper.writeValueAsBytes(Collections.singletonMap("error", message));
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(body);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package org.dainst.arachne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Class to export the documents of an index, for backups or to move them to another cluster.
+ *
+ * The index is read in slices (one scroll per shard, elasticsearch 2.x has no sliced scroll) by a pool of threads,
+ * every thread writes the documents of its slice to files of its own, so only one batch per thread is held in memory.
+ * The documents are written either as NDJSON bulk files (see {@link NdjsonFileSink}) or as tab separated catalogs
+ * that can be imported again with <code>-c</code>.
+ *
+ * @author Reimar Grabowski
+ */
+public class IndexExporter {
+
+    /**
+     * The formats documents can be exported in.
+     */
+    public enum Format {
+
+        /**
+         * NDJSON bulk files, loadable with curl or readable with the NDJSON output directory.
+         */
+        ndjson,
+
+        /**
+         * Tab separated catalogs with an english header.
+         */
+        catalog
+    }
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final String[] CATALOG_FIELDS = {"name", "path", "size", "created", "lastChanged"
+            , "resourceType", "catalog", "volume"};
+
+    private static final String CATALOG_HEADER = "Name\tPath\tSize\tDate Created\tDate Modified\tKind\tCatalog"
+            + "\tVolume";
+
+    private final ESService esService;
+
+    private final int threads;
+
+    private final Format format;
+
+    private final boolean gzip;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final AtomicInteger fileNumbers = new AtomicInteger();
+
+    // documents with tabs or line breaks in a field, they are replaced by spaces in catalogs
+    private final AtomicLong sanitized = new AtomicLong();
+
+    /**
+     * @param esService the service of the index to export
+     * @param threads the number of slices exported concurrently
+     * @param format the format of the exported files
+     * @param gzip if the exported files should be gzip compressed
+     */
+    public IndexExporter(final ESService esService, final int threads, final Format format, final boolean gzip) {
+        this.esService = esService;
+        this.threads = threads > 0 ? threads : 1;
+        this.format = format;
+        this.gzip = gzip;
+    }
+
+    /**
+     * Exports all documents of the index.
+     *
+     * @param directory the directory to write the files to
+     * @return the number of slices that could not be exported completely
+     * @throws IOException if the index could not be inspected or the directory not be created
+     */
+    public int export(final Path directory) throws IOException {
+        Files.createDirectories(directory);
+        fileNumbers.set(NdjsonFileSink.getLastFileNumber(directory, esService.getIndexName()));
+        final int slices = esService.getSlices();
+        System.out.println("\rExporting " + slices + " slice(s) of index '" + esService.getIndexName() + "' to "
+                + directory + " (" + format + ")");
+
+        final ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(slices, 1)));
+        final List<Future<Long>> results = new ArrayList<>();
+        for (int slice = 0; slice < slices; slice++) {
+            final int current = slice;
+            results.add(pool.submit(() -> exportSlice(current, directory)));
+        }
+        pool.shutdown();
+
+        int failed = 0;
+        long exported = 0;
+        for (int slice = 0; slice < slices; slice++) {
+            try {
+                final long documents = results.get(slice).get();
+                exported += documents;
+                if (verboseSlices(slices)) {
+                    System.out.println("\rSlice " + slice + ": " + documents + " documents");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+                throw new IOException("Export interrupted.", e);
+            } catch (ExecutionException e) {
+                failed++;
+                final Throwable cause = e.getCause();
+                System.err.println("\rSlice " + slice + " failed. " + (cause instanceof UncheckedIOException
+                        ? cause.getCause().getMessage() : cause.getMessage()));
+            }
+        }
+        try {
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (sanitized.get() > 0) {
+            System.out.println("\r" + sanitized.get() + " documents had tabs or line breaks in a field, they were "
+                    + "replaced by spaces.");
+        }
+        System.out.println("\r" + exported + " documents exported" + (failed > 0 ? ", " + failed
+                + " slice(s) failed." : "."));
+        return failed;
+    }
+
+    // a line per slice is only useful for a few slices (shards), not for many bulk files
+    private boolean verboseSlices(final int slices) {
+        return format == Format.catalog || slices <= 64;
+    }
+
+    private long exportSlice(final int slice, final Path directory) throws IOException {
+        if (format == Format.ndjson) {
+            final NdjsonFileSink sink = new NdjsonFileSink(directory, esService.getIndexName(), gzip
+                    , new SilentListener(), fileNumbers::incrementAndGet);
+            boolean complete = false;
+            try {
+                final long documents = esService.readSlice(slice, BATCH_SIZE, (id, source) -> {
+                    sink.index(id, source);
+                });
+                complete = true;
+                return documents;
+            } finally {
+                // the bulk files written so far are complete, only the one being written is dropped
+                if (complete) {
+                    sink.flush();
+                } else {
+                    sink.discard();
+                }
+            }
+        }
+
+        final Path file = directory.resolve(String.format("%s-%03d.txt%s", esService.getIndexName(), slice
+                , gzip ? ".gz" : ""));
+        boolean complete = false;
+        OutputStream fileStream = Files.newOutputStream(file);
+        try {
+            if (gzip) {
+                fileStream = new GZIPOutputStream(fileStream, 1 << 16);
+            }
+        } catch (IOException e) {
+            fileStream.close();
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(fileStream, StandardCharsets.UTF_8)
+                , 1 << 16)) {
+            // records are separated by carriage returns like in NeoFinder catalogs
+            writer.write(CATALOG_HEADER);
+            writer.write("\r\n");
+            final StringBuilder line = new StringBuilder(256);
+            final long documents = esService.readSlice(slice, BATCH_SIZE, (id, source) -> {
+                final JsonNode document = mapper.readTree(source);
+                line.setLength(0);
+                boolean clean = true;
+                for (String field : CATALOG_FIELDS) {
+                    if (line.length() > 0) {
+                        line.append('\t');
+                    }
+                    final String value = document.path(field).asText("");
+                    for (int i = 0; i < value.length(); i++) {
+                        final char c = value.charAt(i);
+                        if (c == '\t' || c == '\r' || c == '\n') {
+                            line.append(' ');
+                            clean = false;
+                        } else {
+                            line.append(c);
+                        }
+                    }
+                }
+                if (!clean) {
+                    sanitized.incrementAndGet();
+                }
+                line.append("\r\n");
+                writer.append(line);
+            });
+            complete = true;
+            return documents;
+        } finally {
+            // an incomplete catalog would be imported without notice, so it is removed
+            if (!complete) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    /**
+     * Listener of the NDJSON sinks, the files are written synchronously and failures are thrown.
+     */
+    private static class SilentListener implements BulkSink.Listener {
+
+        @Override
+        public void beforeBulk(final long executionId, final int actions) {
+        }
+
+        @Override
+        public void afterBulk(final long executionId, final int actions, final int failedActions) {
+        }
+
+        @Override
+        public void afterBulk(final long executionId, final int actions, final Throwable failure) {
+            throw new UncheckedIOException("Could not write bulk file " + executionId + ". " + failure.getMessage()
+                    , failure instanceof IOException ? (IOException) failure : new IOException(failure));
+        }
+    }
+}
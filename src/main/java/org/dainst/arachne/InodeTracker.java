@@ -0,0 +1,183 @@
+package org.dainst.arachne;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class to remember which physical files (device and inode) have already been visited.
+ * 
+ * Files are identified by the file key of the attributes the crawler already read, so tracking costs no extra file 
+ * system call. On Unix the key holds device and inode, which are kept in an open addressing hash set of primitive 
+ * longs, so a tracked entry costs about 32 bytes. Other file keys are kept in a map.
+ * 
+ * Optionally every alternate path of an already visited file is written to a tab separated file as 
+ * '&lt;first path&gt; TAB &lt;alternate path&gt;'. For this the first path of every visited file is kept in memory.
+ * 
+ * The tracker may be shared by crawlers running in parallel.
+ *
+ * @author Reimar Grabowski
+ */
+public class InodeTracker implements Closeable {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] slots;
+    private String[] firstPaths;
+    private int size = 0;
+
+    // fallback for file keys without device and inode
+    private final Map<Object, String> otherKeys = new HashMap<>();
+
+    private final BufferedWriter alternatePathWriter;
+
+    private long duplicates = 0;
+
+    /**
+     * @param alternatePathFile the file to write alternate paths to (may be <code>null</code>)
+     * @throws IOException if the alternate path file could not be created
+     */
+    public InodeTracker(final Path alternatePathFile) throws IOException {
+        slots = newSlots(1 << 16);
+        if (alternatePathFile != null) {
+            alternatePathWriter = Files.newBufferedWriter(alternatePathFile, StandardCharsets.UTF_8);
+            firstPaths = new String[1 << 16];
+        } else {
+            alternatePathWriter = null;
+        }
+    }
+
+    /**
+     * Marks the file described by the attributes as visited.
+     * 
+     * @param path the path the file was found at
+     * @param attributes the attributes of the file
+     * @return <code>true</code> if the file has not been visited before (or its identity is unknown)
+     */
+    public boolean visit(final Path path, final BasicFileAttributes attributes) {
+        final Object fileKey = attributes.fileKey();
+        if (fileKey == null) {
+            return true;
+        }
+
+        final String firstPath;
+        // the unix file key prints as '(dev=<hex>,ino=<decimal>)', it has no public accessors
+        final String key = fileKey.toString();
+        final int inodeStart = key.startsWith("(dev=") && key.endsWith(")") ? key.indexOf(",ino=") : -1;
+        long device = 0;
+        long inode = 0;
+        boolean parsed = false;
+        if (inodeStart > 0) {
+            try {
+                device = Long.parseUnsignedLong(key.substring(5, inodeStart), 16);
+                inode = Long.parseLong(key.substring(inodeStart + 5, key.length() - 1));
+                parsed = true;
+            } catch (NumberFormatException e) {
+                // unknown key format, use the map
+            }
+        }
+        if (parsed) {
+            synchronized (this) {
+                firstPath = add(device, inode, path);
+            }
+        } else {
+            synchronized (this) {
+                firstPath = otherKeys.putIfAbsent(fileKey, alternatePathWriter != null ? path.toString() : "");
+            }
+        }
+
+        if (firstPath == null) {
+            return true;
+        }
+        synchronized (this) {
+            duplicates++;
+            if (alternatePathWriter != null) {
+                try {
+                    alternatePathWriter.write(firstPath);
+                    alternatePathWriter.write('\t');
+                    alternatePathWriter.write(path.toString());
+                    alternatePathWriter.newLine();
+                } catch (IOException e) {
+                    System.err.println("Could not write alternate path for '" + path + "'. Cause: " 
+                            + e.getMessage());
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of entries skipped because their file has already been visited
+     */
+    public synchronized long getDuplicates() {
+        return duplicates;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (alternatePathWriter != null) {
+            alternatePathWriter.close();
+        }
+    }
+
+    // returns null if the pair was added, else the first path ("" if not recorded)
+    private String add(final long device, final long inode, final Path path) {
+        int slot = find(slots, device, inode);
+        if (slots[slot] != EMPTY) {
+            return firstPaths != null ? firstPaths[slot >> 1] : "";
+        }
+        slots[slot] = device;
+        slots[slot + 1] = inode;
+        if (firstPaths != null) {
+            firstPaths[slot >> 1] = path.toString();
+        }
+        if (++size > (slots.length >> 1) * LOAD_FACTOR) {
+            grow();
+        }
+        return null;
+    }
+
+    private static int find(final long[] slots, final long device, final long inode) {
+        final int mask = (slots.length >> 1) - 1;
+        long hash = device * 0x9E3779B97F4A7C15L + inode;
+        hash ^= hash >>> 32;
+        int index = (int) hash & mask;
+        while (slots[index << 1] != EMPTY
+                && (slots[index << 1] != device || slots[(index << 1) + 1] != inode)) {
+            index = (index + 1) & mask;
+        }
+        return index << 1;
+    }
+
+    private void grow() {
+        final long[] oldSlots = slots;
+        final String[] oldPaths = firstPaths;
+        slots = newSlots(oldSlots.length);
+        firstPaths = oldPaths != null ? new String[oldPaths.length << 1] : null;
+        for (int i = 0; i < oldSlots.length; i += 2) {
+            if (oldSlots[i] != EMPTY) {
+                final int slot = find(slots, oldSlots[i], oldSlots[i + 1]);
+                slots[slot] = oldSlots[i];
+                slots[slot + 1] = oldSlots[i + 1];
+                if (firstPaths != null) {
+                    firstPaths[slot >> 1] = oldPaths[i >> 1];
+                }
+            }
+        }
+    }
+
+    private static long[] newSlots(final int entries) {
+        final long[] slots = new long[entries << 1];
+        Arrays.fill(slots, EMPTY);
+        return slots;
+    }
+}
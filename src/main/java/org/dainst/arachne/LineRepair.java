@@ -0,0 +1,154 @@
+package org.dainst.arachne;
+
+/**
+ * Streaming repair of catalog lines with the wrong number of columns (auto correction).
+ *
+ * Lines are fed one by one and complete records are passed on as soon as they cannot change anymore, so only the
+ * last record and the fragments of a broken record are kept in memory:
+ * <ul>
+ * <li>a line with all columns is a record, unless it starts with a tab, then it continues the previous record</li>
+ * <li>lines with less columns are fragments of a record broken by a stray line separator, they are joined until
+ * the record has all columns</li>
+ * <li>lines with more columns, fragments joined to more columns and fragments not completed within the lookahead
+ * (or interrupted by a complete line) are malformed</li>
+ * </ul>
+ *
+ * @author Reimar Grabowski
+ */
+class LineRepair {
+
+    /**
+     * The default maximum number of lines joined to repair a record.
+     */
+    static final int DEFAULT_LOOKAHEAD = 8;
+
+    // a record is never longer than this, whatever the lookahead
+    private static final int MAX_RECORD_LENGTH = 1 << 16;
+
+    /**
+     * Receiver of the records and malformed lines.
+     */
+    interface Listener {
+
+        /**
+         * @param record the (repaired) record
+         * @param lineNumber the number of the last line of the record
+         */
+        void record(String record, int lineNumber);
+
+        /**
+         * @param lines the malformed line or the fragments joined so far
+         * @param lineNumber the number of the last line
+         */
+        void malformed(String lines, int lineNumber);
+    }
+
+    private final int columns;
+    private final int lookahead;
+    private final Listener listener;
+
+    // the last record, it may still be continued
+    private final StringBuilder held = new StringBuilder(256);
+    private int heldLineNumber = -1;
+
+    private final StringBuilder fragment = new StringBuilder(256);
+    private int fragmentTabs = 0;
+    private int fragmentLines = 0;
+    private int fragmentLineNumber = 0;
+
+    private long repaired = 0;
+
+    LineRepair(final int columns, final int lookahead, final Listener listener) {
+        this.columns = columns;
+        this.lookahead = lookahead;
+        this.listener = listener;
+    }
+
+    /**
+     * Feeds the next line.
+     *
+     * @param line the line
+     * @param lineNumber the line number
+     */
+    void line(final String line, final int lineNumber) {
+        final int tabs = CsvReader.getTabs(line);
+        if (tabs + 1 == columns) {
+            if (fragmentLines > 0) {
+                malformedFragment();
+            }
+            if (heldLineNumber >= 0 && line.startsWith("\t") && held.length() + line.length() <= MAX_RECORD_LENGTH) {
+                held.append(line);
+                heldLineNumber = lineNumber;
+                repaired++;
+            } else {
+                hold(line, lineNumber);
+            }
+        } else if (tabs + 1 > columns) {
+            if (fragmentLines > 0) {
+                malformedFragment();
+            }
+            release();
+            listener.malformed(line, lineNumber);
+        } else {
+            fragment.append(line);
+            fragmentTabs += tabs;
+            fragmentLines++;
+            fragmentLineNumber = lineNumber;
+            if (fragmentLines == 1) {
+                return;
+            }
+            if (fragmentTabs + 1 == columns) {
+                hold(fragment, lineNumber);
+                clearFragment();
+                repaired++;
+            } else if (fragmentTabs + 1 > columns || fragmentLines >= lookahead
+                    || fragment.length() > MAX_RECORD_LENGTH) {
+                malformedFragment();
+            }
+        }
+    }
+
+    /**
+     * Passes on the last record, fragments never completed are malformed.
+     */
+    void finish() {
+        if (fragmentLines > 0) {
+            malformedFragment();
+        }
+        release();
+    }
+
+    /**
+     * @return the number of records repaired by joining lines
+     */
+    long getRepaired() {
+        return repaired;
+    }
+
+    private void hold(final CharSequence record, final int lineNumber) {
+        release();
+        held.append(record);
+        heldLineNumber = lineNumber;
+    }
+
+    private void release() {
+        if (heldLineNumber >= 0) {
+            listener.record(held.toString(), heldLineNumber);
+            held.setLength(0);
+            heldLineNumber = -1;
+        }
+    }
+
+    private void malformedFragment() {
+        // the records before the fragment are complete, keep the order of the lines
+        release();
+        listener.malformed(fragment.toString(), fragmentLineNumber);
+        clearFragment();
+    }
+
+    private void clearFragment() {
+        fragment.setLength(0);
+        fragmentTabs = 0;
+        fragmentLines = 0;
+    }
+}
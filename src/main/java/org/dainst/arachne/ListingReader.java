@@ -0,0 +1,260 @@
+package org.dainst.arachne;
+
+import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.tika.Tika;
+
+/**
+ * Class to import pre-generated file listings instead of crawling the described file system.
+ * 
+ * A listing contains one record per file, either newline or NUL separated (detected automatically). Each record has
+ * the tab separated fields
+ * <pre>
+ * PATH  SIZE_IN_BYTES  MODIFIED_EPOCH_SECONDS  [TYPE]  [CREATED_EPOCH_SECONDS]
+ * </pre>
+ * which is what <code>find DIR -printf '%p\t%s\t%T@\t%y\t%B@\n'</code> produces (<code>%y</code> and
+ * <code>%B@</code> are optional). Listings ending in '.gz', '.bz2' or '.xz' are decompressed on the fly. The first 
+ * record is used as the volume (find prints the starting point first), the listing file name as the catalog.
+ * 
+ * Records are read in chunks which are converted and submitted to the bulk indexer by a pool of worker threads.
+ *
+ * @author Reimar Grabowski
+ */
+public class ListingReader {
+
+    private static final int CHUNK_SIZE = 10000;
+
+    private final ESService esService;
+
+    private final boolean verbose;
+
+    private final int threads;
+
+    private final Tika tika;
+
+    private final ZoneId zone = ZoneId.systemDefault();
+
+    private final AtomicInteger invalidRecords = new AtomicInteger();
+
+    private volatile Diagnostics diagnostics;
+
+    // set on shutdown, stops reading the listings
+    private volatile boolean stopped = false;
+
+    public ListingReader(final ESService esService, final boolean verbose, final int threads, final int mimeInfo) {
+        this.esService = esService;
+        this.verbose = verbose;
+        this.threads = threads > 0 ? threads : 1;
+        // the described file system is never touched, so mime types can only be guessed from names
+        this.tika = mimeInfo > 0 ? new Tika() : null;
+    }
+
+    public boolean read(final String path) throws IOException {
+
+        final Path file = Paths.get(path);
+        if (!Files.isReadable(file)) {
+            System.err.println("Unable to read file: " + path);
+            return false;
+        }
+        System.out.println("\rListing file: " + path);
+
+        final String catalog = file.getFileName().toString();
+        invalidRecords.set(0);
+        diagnostics = new Diagnostics(catalog, path, Diagnostics.DEFAULT_DIRECTORY, true, verbose);
+        final BulkIndexer bulkIndexer = new BulkIndexer(esService, verbose);
+        final ShutdownCoordinator.Drain drain = ShutdownCoordinator.begin(path, bulkIndexer
+                , bulkIndexer::getSubmitted, () -> stopped = true);
+        try {
+            final AtomicInteger records = new AtomicInteger();
+
+            // bounded queue with caller runs policy, so the reading thread helps out instead of buffering the whole
+            // listing
+            final ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS
+                    , new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+            Metrics.PARSE.addQueue(workers.getQueue());
+
+            try (InputStream inputStream = open(path)) {
+                final char separator = detectSeparator(inputStream);
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream
+                        , StandardCharsets.UTF_8), 1 << 16);
+                final StringBuilder recordBuilder = new StringBuilder(256);
+
+                String volume = null;
+                long recordNumber = 0;
+                List<String> chunk = new ArrayList<>(CHUNK_SIZE);
+                String record;
+                while (!stopped && (record = readRecord(reader, separator, recordBuilder)) != null) {
+                    if (record.isEmpty()) {
+                        continue;
+                    }
+                    if (volume == null) {
+                        volume = record.split("\t", 2)[0];
+                        System.out.println("\rVolume: " + volume);
+                    }
+                    chunk.add(record);
+                    if (chunk.size() == CHUNK_SIZE) {
+                        submit(workers, chunk, recordNumber, volume, catalog, bulkIndexer, records);
+                        recordNumber += chunk.size();
+                        chunk = new ArrayList<>(CHUNK_SIZE);
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    submit(workers, chunk, recordNumber, volume, catalog, bulkIndexer, records);
+                }
+            } finally {
+                workers.shutdown();
+                try {
+                    workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                Metrics.PARSE.removeQueue(workers.getQueue());
+                diagnostics.close();
+            }
+
+            bulkIndexer.close(records.get());
+            if (stopped) {
+                System.out.println("\rImport stopped, " + bulkIndexer.getIndexed() + " records imported.");
+                return false;
+            }
+            if (invalidRecords.get() > 0) {
+                System.out.println("\r" + invalidRecords.get() + " invalid records skipped.");
+            }
+            System.out.println("\r" + records.get() + " records imported.");
+            return true;
+        } finally {
+            drain.finish();
+        }
+    }
+
+    private void submit(final ThreadPoolExecutor workers, final List<String> chunk, final long firstRecordNumber
+            , final String volume, final String catalog, final BulkIndexer bulkIndexer, final AtomicInteger records) {
+
+        workers.execute(() -> {
+            long recordNumber = firstRecordNumber;
+            for (String record : chunk) {
+                recordNumber++;
+                final long start = System.nanoTime();
+                final ArchivedFileInfo fileInfo = getRecordAsFileInfo(record, recordNumber);
+                if (fileInfo == null) {
+                    Metrics.PARSE.recordErrors(1);
+                } else {
+                    Metrics.PARSE.record(1, 0, System.nanoTime() - start);
+                    fileInfo.setVolume(volume).setCatalog(catalog);
+                    bulkIndexer.add(fileInfo);
+                    records.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    private ArchivedFileInfo getRecordAsFileInfo(final String record, final long recordNumber) {
+        final String[] fields = record.split("\t", -1);
+        String field = "columns";
+        try {
+            if (fields.length < 3 || fields[0].isEmpty()) {
+                throw new IllegalArgumentException("Expected at least 3 fields, got " + fields.length);
+            }
+            final String path = fields[0];
+            field = "size";
+            final long size = Long.parseLong(fields[1]);
+            field = "lastChanged";
+            final LocalDateTime modified = toLocalDateTime(fields[2]);
+            field = "created";
+            final LocalDateTime created = fields.length > 4 && !fields[4].isEmpty() && !fields[4].startsWith("-")
+                    ? toLocalDateTime(fields[4]) : modified;
+
+            final int nameStart = path.lastIndexOf('/', path.length() - 2);
+            String name = nameStart >= 0 ? path.substring(nameStart + 1) : path;
+            if (name.length() > 1 && name.endsWith("/")) {
+                name = name.substring(0, name.length() - 1);
+            }
+
+            String type;
+            if (fields.length > 3 && "d".equals(fields[3])) {
+                type = "folder";
+            } else if (tika != null) {
+                type = tika.detect(name);
+            } else {
+                type = "n/a";
+            }
+
+            return new ArchivedFileInfo(null, false)
+                    .setName(name)
+                    .setPath(path)
+                    .setSize(DirectoryCrawler.formatSize(size), size)
+                    .setCreated(created)
+                    .setLastChanged(modified)
+                    .setResourceType(type);
+        } catch (RuntimeException e) {
+            invalidRecords.incrementAndGet();
+            diagnostics.report("invalid", field, recordNumber, e.toString(), fields);
+            return null;
+        }
+    }
+
+    private LocalDateTime toLocalDateTime(final String epochSeconds) {
+        final int dot = epochSeconds.indexOf('.');
+        final long seconds = Long.parseLong(dot < 0 ? epochSeconds : epochSeconds.substring(0, dot));
+        long nanos = 0;
+        if (dot >= 0) {
+            String fraction = (epochSeconds.substring(dot + 1) + "000000000").substring(0, 9);
+            nanos = Long.parseLong(fraction);
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(seconds, nanos), zone);
+    }
+
+    private InputStream open(final String path) throws IOException {
+        return new BufferedInputStream(CatalogSource.open(path), 1 << 16);
+    }
+
+    // NUL separated listings are recognized by a NUL byte in the first block
+    private char detectSeparator(final InputStream inputStream) throws IOException {
+        final byte[] buffer = new byte[8192];
+        inputStream.mark(buffer.length);
+        int read = 0;
+        int count;
+        while (read < buffer.length && (count = inputStream.read(buffer, read, buffer.length - read)) > 0) {
+            read += count;
+        }
+        inputStream.reset();
+        for (int i = 0; i < read; i++) {
+            if (buffer[i] == 0) {
+                return '\0';
+            }
+        }
+        return '\n';
+    }
+
+    private String readRecord(final BufferedReader reader, final char separator, final StringBuilder recordBuilder)
+            throws IOException {
+        if (separator == '\n') {
+            return reader.readLine();
+        }
+        recordBuilder.setLength(0);
+        int c;
+        while ((c = reader.read()) != -1) {
+            if (c == separator) {
+                return recordBuilder.toString();
+            }
+            recordBuilder.append((char) c);
+        }
+        return recordBuilder.length() > 0 ? recordBuilder.toString() : null;
+    }
+}
@@ -1,5 +1,9 @@
 package org.dainst.arachne;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -10,6 +14,9 @@ import java.util.Map;
  * @author Reimar Grabowski
  */
 public class Mapping {
+
+    private static final String ES_MAPPING_FILE = "mapping.json";
+
     public static Map<String, List<String>> getTokenMap() {
         Map<String, List<String>> tokenMap = new HashMap<>();
         tokenMap.put("name", Arrays.asList("Name"));
@@ -29,4 +36,35 @@ public class Mapping {
         tokenMap.put("volume", Arrays.asList("Name des Volumes", "Volume"));
         return tokenMap;
     }
+
+    /**
+     * Reads the elasticsearch mapping of the index.
+     * 
+     * @return the mapping as JSON or "undefined" if it could not be read
+     */
+    public static String getIndexMapping() {
+        StringBuilder result = new StringBuilder(64);
+        InputStream inputStream = null;
+        try {
+            inputStream = Thread.currentThread().getContextClassLoader().getResourceAsStream(ES_MAPPING_FILE);
+            final BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(inputStream));
+            String inputLine;
+            while ((inputLine = bufferedReader.readLine()) != null) {
+                result.append(inputLine);
+            }
+        } catch (IOException e) {
+            System.out.println("Could not read '" + ES_MAPPING_FILE + "'. " + e.getMessage());
+            result = new StringBuilder("undefined");
+        } finally {
+            if (inputStream != null) {
+                try {
+                    inputStream.close();
+                } catch (IOException e) {
+                    System.out.println("Could not close '" + ES_MAPPING_FILE + "'. " + e.getMessage());
+                    result = new StringBuilder("undefined");
+                }
+            }
+        }
+        return result.toString();
+    }
 }
@@ -0,0 +1,99 @@
+package org.dainst.arachne;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics of all processing stages of this process.
+ * 
+ * The stages are exposed over JMX as <code>org.dainst.arachne:type=Stage,name=STAGE</code>.
+ *
+ * @author Reimar Grabowski
+ */
+public final class Metrics {
+
+    /**
+     * Entries visited by the directory crawlers.
+     */
+    public static final Stage CRAWL = new Stage("crawl");
+
+    /**
+     * Mime type detections reading the file system or the file content.
+     */
+    public static final Stage MIME = new Stage("mime");
+
+    /**
+     * Catalog and listing records converted to file information.
+     */
+    public static final Stage PARSE = new Stage("parse");
+
+    /**
+     * Documents serialized to JSON.
+     */
+    public static final Stage SERIALIZE = new Stage("serialize");
+
+    /**
+     * Bulk requests sent to the index.
+     */
+    public static final Stage BULK = new Stage("bulk");
+
+    private static final List<Stage> STAGES = Collections.unmodifiableList(Arrays.asList(CRAWL, MIME, PARSE
+            , SERIALIZE, BULK));
+
+    private static final AtomicLong expectedDocuments = new AtomicLong();
+    private static final AtomicLong indexedBefore = new AtomicLong();
+
+    private Metrics() {
+    }
+
+    public static List<Stage> getStages() {
+        return STAGES;
+    }
+
+    /**
+     * Registers the stages with the platform MBean server.
+     */
+    public static synchronized void register() {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Stage stage : STAGES) {
+            try {
+                final ObjectName name = new ObjectName("org.dainst.arachne:type=Stage,name=" + stage.getName());
+                if (!server.isRegistered(name)) {
+                    server.registerMBean(stage, name);
+                }
+            } catch (JMException e) {
+                System.err.println("Could not register metrics for stage " + stage.getName() + ". " + e);
+            }
+        }
+    }
+
+    /**
+     * Sets the number of documents the current import will index, used to estimate the remaining time.
+     * 
+     * @param documents the number of documents (0 if unknown)
+     */
+    public static void expect(final long documents) {
+        indexedBefore.set(BULK.getCount());
+        expectedDocuments.set(documents);
+    }
+
+    /**
+     * @return the number of documents the current import will index (0 if unknown)
+     */
+    public static long getExpectedDocuments() {
+        return expectedDocuments.get();
+    }
+
+    /**
+     * @return the number of documents indexed since the last call to {@link #expect(long)}
+     */
+    public static long getIndexedSinceExpect() {
+        return BULK.getCount() - indexedBefore.get();
+    }
+}
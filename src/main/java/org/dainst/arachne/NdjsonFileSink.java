@@ -0,0 +1,196 @@
+package org.dainst.arachne;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.BufferedOutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Bulk sink writing the documents to NDJSON files in the elasticsearch bulk format.
+ * 
+ * Every file holds one bulk (at most <code>BULK_ACTIONS</code> actions or about <code>BULK_SIZE</code> bytes) and can 
+ * be loaded later with <code>curl -H 'Content-Type: application/x-ndjson' --data-binary @FILE HOST:9200/_bulk</code> 
+ * (for compressed files add <code>-H 'Content-Encoding: gzip'</code>). Files are named INDEX-NUMBER.ndjson[.gz], the 
+ * numbers are shared by all sinks writing to the same directory. Existing files are never overwritten, numbering 
+ * continues after the last file of the index (see {@link #getLastFileNumber(Path, String)}).
+ *
+ * @author Reimar Grabowski
+ */
+public class NdjsonFileSink implements BulkSink {
+
+    private static final byte NEWLINE = '\n';
+
+    private final Path directory;
+
+    private final String indexName;
+
+    private final boolean gzip;
+
+    private final Listener listener;
+
+    private final IntSupplier fileNumbers;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private OutputStream outputStream;
+
+    private Path file;
+
+    private int fileNumber;
+
+    private int writtenActions = 0;
+    private long writtenBytes = 0;
+
+    public NdjsonFileSink(final Path directory, final String indexName, final boolean gzip, final Listener listener
+            , final IntSupplier fileNumbers) {
+        this.directory = directory;
+        this.indexName = indexName;
+        this.gzip = gzip;
+        this.listener = listener;
+        this.fileNumbers = fileNumbers;
+    }
+
+    /**
+     * Finds the highest number of the bulk files of an index, so files written by earlier runs are not overwritten.
+     *
+     * @param directory the directory the files are written to
+     * @param indexName the name of the index
+     * @return the highest file number or 0 if there are no files of the index (or no directory yet)
+     * @throws IOException if the directory could not be listed
+     */
+    public static int getLastFileNumber(final Path directory, final String indexName) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        final Pattern fileName = Pattern.compile(Pattern.quote(indexName) + "-(\\d+)\\.ndjson(\\.gz)?");
+        int last = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, indexName + "-*.ndjson*")) {
+            for (Path file : files) {
+                final Matcher matcher = fileName.matcher(file.getFileName().toString());
+                if (matcher.matches() && matcher.group(1).length() < 10) {
+                    last = Math.max(last, Integer.parseInt(matcher.group(1)));
+                }
+            }
+        }
+        return last;
+    }
+
+    @Override
+    public synchronized void index(final String id, final byte[] source) {
+        add("index", id, source);
+    }
+
+    @Override
+    public synchronized void delete(final String id) {
+        add("delete", id, null);
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (outputStream != null) {
+            closeFile();
+        }
+    }
+
+    /**
+     * Closes and deletes the file being written, for example if the documents to write could not be read completely.
+     * Files written before are complete bulks and are kept.
+     */
+    public synchronized void discard() {
+        if (outputStream == null) {
+            return;
+        }
+        try {
+            outputStream.close();
+        } catch (IOException e) {
+            // deleted anyway
+        } finally {
+            outputStream = null;
+            writtenActions = 0;
+            writtenBytes = 0;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            System.err.println("\rCould not delete incomplete bulk file " + file + ". " + e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean awaitClose(final long timeout, final TimeUnit unit) {
+        flush();
+        return true;
+    }
+
+    private void add(final String action, final String id, final byte[] source) {
+        final ObjectNode metadata = mapper.createObjectNode();
+        metadata.putObject(action)
+                .put("_index", indexName)
+                .put("_type", ESService.DOCUMENT_TYPE)
+                .put("_id", id);
+        try {
+            if (outputStream == null) {
+                openFile();
+            }
+            final byte[] metadataBytes = mapper.writeValueAsBytes(metadata);
+            outputStream.write(metadataBytes);
+            outputStream.write(NEWLINE);
+            writtenBytes += metadataBytes.length + 1;
+            if (source != null) {
+                outputStream.write(source);
+                outputStream.write(NEWLINE);
+                writtenBytes += source.length + 1;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write bulk file. Cause: " + e.getMessage(), e);
+        }
+        writtenActions++;
+        if (writtenActions >= BULK_ACTIONS || writtenBytes >= BULK_SIZE) {
+            closeFile();
+        }
+    }
+
+    private void openFile() throws IOException {
+        OutputStream fileStream = null;
+        while (fileStream == null) {
+            fileNumber = fileNumbers.getAsInt();
+            file = directory.resolve(String.format("%s-%06d.ndjson%s", indexName, fileNumber, gzip ? ".gz" : ""));
+            try {
+                fileStream = Files.newOutputStream(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            } catch (FileAlreadyExistsException e) {
+                // written by another process meanwhile, take the next number
+            }
+        }
+        if (gzip) {
+            fileStream = new GZIPOutputStream(fileStream, 1 << 16);
+        }
+        outputStream = new BufferedOutputStream(fileStream, 1 << 16);
+    }
+
+    private void closeFile() {
+        final int actions = writtenActions;
+        writtenActions = 0;
+        writtenBytes = 0;
+        listener.beforeBulk(fileNumber, actions);
+        try {
+            outputStream.close();
+            listener.afterBulk(fileNumber, actions, 0);
+        } catch (IOException e) {
+            listener.afterBulk(fileNumber, actions, e);
+        } finally {
+            outputStream = null;
+        }
+    }
+}
@@ -4,11 +4,18 @@ import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
@@ -29,6 +36,10 @@ import org.apache.commons.cli.UnrecognizedOptionException;
  * 4 unknown field given for -I
  * 6 elasticsearch host not found
  * 7 could not connect to elasticsearch cluster
+ * 8 could not start server
+ * 12 throughput regression found by --compare
+ * 13 catalogs failed validation (--validate)
+ * 14 the index could not be exported completely (--export)
  */
 /**
  *
@@ -45,6 +56,12 @@ public class NeoFinderToES {
     private static ESService esService;
 
     private static boolean scanMode = true;
+
+    private static boolean listingMode = false;
+
+    private static boolean reindexMode = false;
+
+    private static boolean snapshot = false;
     
     private static boolean minimalImport = false;
     
@@ -64,6 +81,60 @@ public class NeoFinderToES {
     
     private static boolean autoCorrect = false;
 
+    private static int scansPerDevice = 1;
+
+    private static IOBudget ioBudget = IOBudget.UNLIMITED;
+
+    private static PathFilter pathFilter = PathFilter.ACCEPT_ALL;
+
+    private static int maxDepth = Integer.MAX_VALUE;
+
+    private static boolean statMinimal = false;
+
+    private static boolean followLinks = false;
+
+    private static InodeTracker inodeTracker = null;
+
+    private static boolean watch = false;
+
+    private static long debounceMillis = 2000;
+
+    private static int catalogWorkers = 2;
+
+    private static int serverPort = -1;
+
+    private static int serverJobs = 2;
+
+    private static boolean http = false;
+
+    private static int esPort = -1;
+
+    private static boolean gzip = false;
+
+    private static String output = "es";
+
+    private static ESStandIn standIn = null;
+
+    private static long progressInterval = 10;
+
+    private static long drainSeconds = ShutdownCoordinator.DEFAULT_DRAIN_SECONDS;
+
+    private static RunReport runReport = null;
+
+    private static boolean resume = false;
+
+    private static boolean validate = false;
+
+    private static RepairPolicy malformedPolicy = RepairPolicy.reject;
+
+    private static RepairPolicy duplicatePolicy = RepairPolicy.reject;
+
+    private static Path reportFile;
+
+    private static Path exportDirectory = null;
+
+    private static IndexExporter.Format exportFormat = IndexExporter.Format.ndjson;
+
     public static void main(String[] args) {
 
         esAddress = InetAddress.getLoopbackAddress();
@@ -74,7 +145,94 @@ public class NeoFinderToES {
                 + "- try to fix lines with less columns than the header specifies" + newline
                 + "- if only one date column could be parsed assign this value to both date fields" + newline
                 + "(for catalog parsing only)");
-        options.addOption("c", "catalog", false, "parse and import cdfinder/neofinder catalog files");
+        options.addOption("c", "catalog", false, "parse and import cdfinder/neofinder catalog files" + newline
+                + "(catalogs ending in '.gz', '.bz2' or '.xz' are decompressed, the catalogs in '.zip' archives are "
+                + "imported one by one)");
+        options.addOption(Option.builder()
+                .longOpt("validate")
+                .desc("only check the catalogs (header, fields, dates, sizes and duplicate paths) concurrently and "
+                        + "print a report per catalog instead of importing them, no elasticsearch cluster is needed"
+                        + newline + "(implies -c, exits with code 13 if a catalog would not be imported)")
+                .build());
+        options.addOption(Option.builder("l")
+                .longOpt("listing")
+                .desc("import file listings instead of scanning the file system" + newline
+                        + "one record per line (or NUL separated) with the tab separated fields path, size in bytes, "
+                        + "modification time in epoch seconds and optionally type and creation time, as produced by "
+                        + "find DIR -printf '%p\\t%s\\t%T@\\t%y\\t%B@\\n'" + newline
+                        + "(listings ending in '.gz', '.bz2' or '.xz' are decompressed)")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("draintimeout")
+                .desc("the maximum number of seconds to wait on shutdown (for example by ctrl+c) for the documents "
+                        + "already read to be sent and acknowledged by the index (default 30)")
+                .hasArg()
+                .argName("SECONDS")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("progress")
+                .desc("the number of seconds between the throughput reports (default 10, 0 disables them)" + newline
+                        + "the metrics are available over JMX as org.dainst.arachne:type=Stage,name=*, too")
+                .hasArg()
+                .argName("SECONDS")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("report")
+                .desc("write a JSON report with the timings and throughput of all inputs and stages, bulk "
+                        + "statistics, peak heap and GC time to FILE at the end of the run")
+                .hasArg()
+                .argName("FILE")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("compare")
+                .desc("compare the throughput of two run reports and exit with code 12 if the new one has "
+                        + "regressed by more than the threshold")
+                .numberOfArgs(2)
+                .argName("OLD NEW")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("threshold")
+                .desc("the throughput drop in percent reported as regression by --compare (default 10)")
+                .hasArg()
+                .argName("PERCENT")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("resume")
+                .desc("continue interrupted catalog imports after the last record acknowledged by the index and "
+                        + "interrupted scans with the directories not yet completely indexed" + newline
+                        + "(checkpoints are kept in ~/.neofindertoes/checkpoints and scan journals in "
+                        + "~/.neofindertoes/journals until an import or scan is complete)")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("snapshot")
+                .desc("write a compact binary snapshot of the validated records of every imported catalog to "
+                        + "~/.neofindertoes/snapshots, so the index can be rebuilt with --reindex without parsing "
+                        + "the catalogs again" + newline
+                        + "(for catalog parsing only)")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("reindex")
+                .desc("import catalog snapshots written with --snapshot (files ending in '.snapshot' or directories "
+                        + "containing them) instead of scanning the file system, the records are not parsed or "
+                        + "validated again")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("export")
+                .desc("export all documents of the index (or of the NDJSON files with --output DIRECTORY) to "
+                        + "DIRECTORY instead of importing, one shard per thread" + newline
+                        + "(no files or directories to import are needed)")
+                .hasArg()
+                .argName("DIRECTORY")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("exportformat")
+                .desc("the format of the exported files:" + newline
+                        + "ndjson: elasticsearch bulk files that can be loaded with curl (default)" + newline
+                        + "catalog: tab separated catalogs that can be imported again with -c" + newline
+                        + "(for --export only, --gzip compresses the files)")
+                .hasArg()
+                .argName("FORMAT")
+                .build());
         options.addOption("r", "readerrors", false, "ignore read errors" + newline
                 + "(for file system scanning only)");
         options.addOption("n", "newindex", false, "create a new elasticsearch index " + newline 
@@ -87,6 +245,45 @@ public class NeoFinderToES {
                 .hasArg()
                 .argName("ADDRESS")
                 .build());
+        options.addOption(Option.builder()
+                .longOpt("http")
+                .desc("use the elasticsearch REST API instead of the transport protocol")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("port")
+                .desc("the port of the elasticsearch cluster " + newline
+                        + "(omitting this port 9300, or 9200 with --http, will be used)")
+                .hasArg()
+                .argName("PORT")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("gzip")
+                .desc("gzip compress bulk requests (with --http) or NDJSON files (with --output DIRECTORY)")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("standin")
+                .desc("import into an elasticsearch stand-in started in this process instead of a cluster "
+                        + "(for load tests, implies --http), SETTINGS is a comma separated list of:" + newline
+                        + "latency=MS fixed delay per request" + newline
+                        + "jitter=MS additional random delay per request" + newline
+                        + "throughput=RATE maximum bytes per second accepted (k, m and g suffixes are allowed)" + newline
+                        + "rejections=P probability of rejecting a single bulk item" + newline
+                        + "failures=P probability of failing a whole bulk request" + newline
+                        + "seed=N seed for the injected failures" + newline
+                        + "(use '' for a stand-in without delays or failures)")
+                .hasArg()
+                .argName("SETTINGS")
+                .build());
+        options.addOption(Option.builder("o")
+                .longOpt("output")
+                .desc("where to send the documents to:" + newline
+                        + "es: the elasticsearch index (default)" + newline
+                        + "null: nowhere, only count them (to measure read throughput)" + newline
+                        + "DIRECTORY: NDJSON files in elasticsearch bulk format for loading them later" + newline
+                        + "(without 'es' no elasticsearch cluster is needed)")
+                .hasArg()
+                .argName("TARGET")
+                .build());
         options.addOption(Option.builder("i")
                 .longOpt("indexname")
                 .desc("the name of the elasticsearch index " + newline 
@@ -105,6 +302,27 @@ public class NeoFinderToES {
                 .valueSeparator(',')
                 .argName("FIELDLIST")
                 .build());
+        options.addOption(Option.builder()
+                .longOpt("malformed")
+                .desc("what to do with lines with more columns than the header and broken lines that could not be "
+                        + "repaired by -A:" + newline
+                        + "accept: import them as they are" + newline
+                        + "skip: leave them out" + newline
+                        + "reject: do not import the catalog (default)" + newline
+                        + "quarantine: leave them out and write them to a catalog in ~/.neofindertoes/quarantine "
+                        + "that can be corrected and imported later" + newline
+                        + "(for catalog parsing only)")
+                .hasArg()
+                .argName("POLICY")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("duplicates")
+                .desc("what to do with records with a path already imported (accept replaces the record imported "
+                        + "before, for the other policies see --malformed, default reject)" + newline
+                        + "(for catalog parsing only)")
+                .hasArg()
+                .argName("POLICY")
+                .build());
         options.addOption(Option.builder("e")
                 .longOpt("esclustername")
                 .desc("the name of the elasticsearch cluster " + newline 
@@ -122,6 +340,129 @@ public class NeoFinderToES {
                 .hasArg()
                 .argName("STRATEGY")
                 .build());
+        options.addOption(Option.builder("d")
+                .longOpt("devicescans")
+                .desc("the maximum number of directories scanned concurrently on the same device" + newline
+                        + "(directories on different devices are always scanned in parallel, default 1)" + newline
+                        + "(for file system scanning only)")
+                .hasArg()
+                .argName("NUMBER")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("maxops")
+                .desc("the maximum number of file system metadata operations per second" + newline
+                        + "(omitting this the scan is not throttled)" + newline
+                        + "(for file system scanning only)")
+                .hasArg()
+                .argName("NUMBER")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("maxbytes")
+                .desc("the maximum number of bytes read per second for mime type detection (k, m and g suffixes are "
+                        + "allowed)" + newline
+                        + "(omitting this the scan is not throttled)" + newline
+                        + "(for file system scanning only)")
+                .hasArg()
+                .argName("SIZE")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("throttlewindow")
+                .desc("the daily time window the --maxops and --maxbytes limits apply in, for example 08:00-18:00" + newline
+                        + "(omitting this the limits always apply)" + newline
+                        + "(for file system scanning only)")
+                .hasArg()
+                .argName("HH:mm-HH:mm")
+                .build());
+        options.addOption(Option.builder("x")
+                .longOpt("exclude")
+                .desc("the file and directory names or paths to exclude" + newline
+                        + "rules are globs (*, **, ?, [], {}) or regular expressions prefixed with 'regex:', rules "
+                        + "containing a '/' are matched against the path relative to the scanned directory, all others "
+                        + "against the name only" + newline
+                        + "multiple rules are comma separated (commas inside {} or [] belong to the rule) or given by "
+                        + "repeating the option" + newline
+                        + "excluded directories are skipped with their whole subtree" + newline
+                        + "(for file system scanning only)")
+                .hasArg()
+                .argName("RULES")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("include")
+                .desc("the file names or paths to include, all other files are skipped (same syntax as --exclude)"
+                        + newline
+                        + "(directories are always scanned unless excluded)" + newline
+                        + "(for file system scanning only)")
+                .hasArg()
+                .argName("RULES")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("maxdepth")
+                .desc("the maximum directory depth to scan (0 only indexes the given directory itself)" + newline
+                        + "(for file system scanning only)")
+                .hasArg()
+                .argName("NUMBER")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("statminimal")
+                .desc("only use the metadata read once per entry while crawling, mime types are guessed from the "
+                        + "file name (-m 2 falls back to -m 1)" + newline
+                        + "(recommended for network file systems)" + newline
+                        + "(for file system scanning only)")
+                .build());
+        options.addOption(Option.builder("L")
+                .longOpt("followlinks")
+                .desc("follow symbolic links (directory cycles are detected and skipped)" + newline
+                        + "(for file system scanning only)")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("dedup")
+                .desc("index every physical file (device and inode) only once, even if it is reachable by multiple "
+                        + "hard links or symbolic links" + newline
+                        + "(for file system scanning only)")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("alternatepaths")
+                .desc("with --dedup write the skipped alternate paths of already indexed files to this file" + newline
+                        + "(for file system scanning only)")
+                .hasArg()
+                .argName("FILE")
+                .build());
+        options.addOption(Option.builder("w")
+                .longOpt("watch")
+                .desc("keep running after the scan and update the index whenever files are created, changed or "
+                        + "deleted" + newline
+                        + "with -c the given directories are watched for new catalog files which are imported and "
+                        + "moved to the subdirectory 'imported' or 'failed'")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("catalogworkers")
+                .desc("the number of catalogs imported concurrently (default 2)" + newline
+                        + "(for watching catalog directories only)")
+                .hasArg()
+                .argName("NUMBER")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("debounce")
+                .desc("the time in milliseconds without new changes after which collected changes are sent to the "
+                        + "index or a dropped catalog file is considered complete (default 2000)" + newline
+                        + "(for watching only)")
+                .hasArg()
+                .argName("MILLISECONDS")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("server")
+                .desc("run as a server accepting scan, catalog and listing jobs as JSON on "
+                        + "http://localhost:PORT/jobs" + newline
+                        + "(all other options are used as defaults for the submitted jobs)")
+                .hasArg()
+                .argName("PORT")
+                .build());
+        options.addOption(Option.builder()
+                .longOpt("serverjobs")
+                .desc("the number of jobs the server runs concurrently (default 2)")
+                .hasArg()
+                .argName("NUMBER")
+                .build());
         options.addOption(Option.builder()
                 .longOpt("iknowiamonlyimportingpathandvolume")
                 .desc("import only path and volume" + newline
@@ -134,10 +475,29 @@ public class NeoFinderToES {
             final CommandLineParser parser = new DefaultParser();
             final CommandLine cmd = parser.parse(options, args);
             argList = cmd.getArgList();
-            if (!argList.isEmpty()) {
-                scanMode = !cmd.hasOption("c");
-                autoCorrect = !scanMode && cmd.hasOption("A");
-                minimalImport = !scanMode && cmd.hasOption("iknowiamonlyimportingpathandvolume");
+            if (cmd.hasOption("compare")) {
+                compareReports(cmd.getOptionValues("compare")
+                        , Double.parseDouble(cmd.getOptionValue("threshold", "10")));
+            }
+            if (cmd.hasOption("server")) {
+                serverPort = Integer.parseInt(cmd.getOptionValue("server"));
+                serverJobs = Integer.parseInt(cmd.getOptionValue("serverjobs", String.valueOf(serverJobs)));
+            }
+            if (cmd.hasOption("export") && serverPort < 0) {
+                exportDirectory = Paths.get(cmd.getOptionValue("export")).toAbsolutePath().normalize();
+                exportFormat = IndexExporter.Format.valueOf(cmd.getOptionValue("exportformat", exportFormat.name()));
+            }
+            if (!argList.isEmpty() || serverPort >= 0 || exportDirectory != null) {
+                validate = cmd.hasOption("validate") && serverPort < 0 && exportDirectory == null;
+                reindexMode = !cmd.hasOption("c") && !validate && cmd.hasOption("reindex");
+                listingMode = !cmd.hasOption("c") && !validate && !reindexMode && cmd.hasOption("l");
+                scanMode = !cmd.hasOption("c") && !validate && !reindexMode && !listingMode;
+                // the server uses these as defaults for catalog jobs
+                final boolean catalogOptions = !scanMode || serverPort >= 0;
+                autoCorrect = catalogOptions && cmd.hasOption("A");
+                resume = cmd.hasOption("resume");
+                snapshot = catalogOptions && cmd.hasOption("snapshot");
+                minimalImport = catalogOptions && cmd.hasOption("iknowiamonlyimportingpathandvolume");
                 verbose = cmd.hasOption("v");
                 if (cmd.hasOption("a")) {
                     address = cmd.getOptionValue("a");
@@ -146,13 +506,83 @@ public class NeoFinderToES {
                 if (cmd.hasOption("e")) {
                     esClusterName = cmd.getOptionValue("e");
                 }
+                http = cmd.hasOption("http");
+                output = cmd.getOptionValue("o", output);
+                gzip = cmd.hasOption("gzip");
+                esPort = Integer.parseInt(cmd.getOptionValue("port", http ? "9200" : "9300"));
+                if (cmd.hasOption("report")) {
+                    reportFile = Paths.get(cmd.getOptionValue("report"));
+                    runReport = new RunReport(args);
+                }
+                if (cmd.hasOption("draintimeout")) {
+                    drainSeconds = Long.parseLong(cmd.getOptionValue("draintimeout"));
+                }
+                if (cmd.hasOption("progress")) {
+                    progressInterval = Long.parseLong(cmd.getOptionValue("progress"));
+                }
+                if (cmd.hasOption("standin")) {
+                    startStandIn(cmd.getOptionValue("standin"));
+                }
                 if (cmd.hasOption("i")) {
                     esIndexName = cmd.getOptionValue("i");
                 }
-                if (scanMode && cmd.hasOption("m")) {
+                if ((scanMode || listingMode) && cmd.hasOption("m")) {
                     mimeInfo = Integer.valueOf(cmd.getOptionValue("m"));
                 }
-                if (!scanMode && cmd.hasOption("I")) {
+                if (scanMode && cmd.hasOption("d")) {
+                    scansPerDevice = Integer.valueOf(cmd.getOptionValue("d"));
+                }
+                if (scanMode && (cmd.hasOption("maxops") || cmd.hasOption("maxbytes"))) {
+                    LocalTime[] window = new LocalTime[2];
+                    if (cmd.hasOption("throttlewindow")) {
+                        window = IOBudget.parseWindow(cmd.getOptionValue("throttlewindow"));
+                    }
+                    ioBudget = new IOBudget(Long.parseLong(cmd.getOptionValue("maxops", "0"))
+                            , IOBudget.parseBytes(cmd.getOptionValue("maxbytes", "0")), window[0], window[1]);
+                    System.out.println("I/O budget: " + ioBudget);
+                }
+                if (scanMode && (cmd.hasOption("x") || cmd.hasOption("include"))) {
+                    pathFilter = new PathFilter(cmd.getOptionValues("x"), cmd.getOptionValues("include"));
+                }
+                if (scanMode && cmd.hasOption("statminimal")) {
+                    statMinimal = true;
+                    if (mimeInfo == 2) {
+                        System.out.println("Mime type detection by file content is not available with --statminimal. "
+                                + "Guessing mime types from file names.");
+                        mimeInfo = 1;
+                    }
+                }
+                if (scanMode) {
+                    followLinks = cmd.hasOption("L");
+                }
+                if (scanMode && cmd.hasOption("dedup")) {
+                    try {
+                        final String alternatePaths = cmd.getOptionValue("alternatepaths");
+                        inodeTracker = new InodeTracker(alternatePaths != null ? Paths.get(alternatePaths) : null);
+                    } catch (IOException e) {
+                        System.out.println("Could not create alternate path file. " + e.getMessage());
+                        System.exit(2);
+                    }
+                }
+                if (!listingMode && cmd.hasOption("w")) {
+                    watch = true;
+                    if (cmd.hasOption("debounce")) {
+                        debounceMillis = Long.parseLong(cmd.getOptionValue("debounce"));
+                    }
+                    if (cmd.hasOption("catalogworkers")) {
+                        catalogWorkers = Integer.parseInt(cmd.getOptionValue("catalogworkers"));
+                    }
+                }
+                if (scanMode && cmd.hasOption("maxdepth")) {
+                    maxDepth = Integer.valueOf(cmd.getOptionValue("maxdepth"));
+                }
+                if (catalogOptions && cmd.hasOption("malformed")) {
+                    malformedPolicy = RepairPolicy.valueOf(cmd.getOptionValue("malformed"));
+                }
+                if (catalogOptions && cmd.hasOption("duplicates")) {
+                    duplicatePolicy = RepairPolicy.valueOf(cmd.getOptionValue("duplicates"));
+                }
+                if (catalogOptions && cmd.hasOption("I")) {
                     ignoreFields = Arrays.stream(cmd.getOptionValues("I")).collect(Collectors.toSet());
                     Map<String, List<String>> tokenMap = Mapping.getTokenMap();
                     for (String field: ignoreFields) {
@@ -169,10 +599,31 @@ public class NeoFinderToES {
                 System.exit(0);
             }
 
-            esService = new ESService(esAddress, esClusterName, esIndexName);
-            System.out.println("Elasticsearch cluster: " + esAddress.toString() + " [" + esClusterName + ']');
-            if (esService.isClusterAvailable()) {
-                if (cmd.hasOption("n")) {
+            if (validate) {
+                // nothing is imported, the service only provides the index name
+                esService = new OfflineESService(esIndexName, listener -> new NullSink(listener, new AtomicLong()
+                        , new AtomicLong()), null);
+            } else if (!"es".equals(output)) {
+                esService = createOfflineService();
+            } else if (http) {
+                esService = new HttpESService(esAddress, esPort, esClusterName, esIndexName, gzip);
+            } else {
+                esService = new TransportESService(esAddress, esPort, esClusterName, esIndexName);
+            }
+            if (!validate && "es".equals(output)) {
+                System.out.println("Elasticsearch cluster: " + esAddress.toString() + ':' + esPort + " [" 
+                        + esClusterName + ']');
+            }
+            if (validate) {
+                System.out.println("Validating only, nothing is imported.\n");
+            } else if (esService.isClusterAvailable()) {
+                if (exportDirectory != null) {
+                    if ("es".equals(output) && !esService.indexExists()) {
+                        System.out.println("Index '" + esIndexName + "' does not exist.");
+                        System.exit(3);
+                    }
+                    System.out.println("Exporting index '" + esIndexName + "'\n");
+                } else if (cmd.hasOption("n")) {
                     if (esService.indexExists()) {
                         esService.deleteIndex();
                     }
@@ -203,9 +654,38 @@ public class NeoFinderToES {
         } catch (UnknownHostException ex) {
             System.out.println("Host '" + address + "' not found.");
             System.exit(6);
+        } catch (IllegalArgumentException ex) {
+            System.out.println("Failed to parse command line options.\n" + ex.getMessage());
+            System.exit(2);
+        }
+
+        Metrics.register();
+        ShutdownCoordinator.install(drainSeconds);
+        final ProgressReport progressIndicator = new ProgressReport(progressInterval);
+
+        if (serverPort >= 0) {
+            serve(progressIndicator);
+            return;
+        }
+
+        if (exportDirectory != null) {
+            export();
         }
 
-        final ProgressRotating progressIndicator = new ProgressRotating();
+        if (validate) {
+            final List<File> catalogs = argList.stream().map(File::new).collect(Collectors.toList());
+            final int failed = new CatalogValidator(esService, maxThreads)
+                    .setAutoCorrect(autoCorrect)
+                    .setIgnoreFields(ignoreFields)
+                    .setMinimal(minimalImport)
+                    .setRepairPolicies(malformedPolicy, duplicatePolicy)
+                    .validate(catalogs);
+            esService.close();
+            System.exit(failed > 0 ? 13 : 0);
+        }
+
+        final List<File> scanDirectories = new ArrayList<>();
+        final List<File> dropFolders = new ArrayList<>();
         for (String filename : argList) {
             try {
                 File scanDirectory = new File(filename).getCanonicalFile();
@@ -219,31 +699,287 @@ public class NeoFinderToES {
                     progressIndicator.start();
                 }
 
+                if (reindexMode) {
+                    final SnapshotReader snapshotReader = new SnapshotReader(esService, verbose, maxThreads);
+                    if (scanDirectory.isDirectory()) {
+                        for (final String file : scanDirectory.list()) {
+                            readSnapshot(snapshotReader, scanDirectory + "/" + file);
+                        }
+                    } else {
+                        readSnapshot(snapshotReader, scanDirectory.getAbsolutePath());
+                    }
+                    continue;
+                }
+
+                if (listingMode) {
+                    final ListingReader listingReader = new ListingReader(esService, verbose, maxThreads
+                            , Math.min(mimeInfo, 1));
+                    if (scanDirectory.isDirectory()) {
+                        for (final String file : scanDirectory.list()) {
+                            readListing(listingReader, scanDirectory + "/" + file);
+                        }
+                    } else {
+                        readListing(listingReader, scanDirectory.getAbsolutePath());
+                    }
+                    continue;
+                }
+
                 if (scanDirectory.isDirectory()) {
                     if (scanMode) {
-                        new FileSystemScanner(esService).scan(scanDirectory, maxThreads, mimeInfo, verbose);
+                        scanDirectories.add(scanDirectory);
+                    } else if (watch) {
+                        dropFolders.add(scanDirectory);
                     } else {
                         String[] files = scanDirectory.list();
                         for (final String file : files) {
-                            new CsvReader(esService, verbose, progressIndicator).read(scanDirectory + "/" + file, autoCorrect, ignoreFields
-                                    , minimalImport);
+                            readCatalog(scanDirectory + "/" + file, progressIndicator);
                         }
                     }
                 } else {
                     if (!scanMode) {
-                        new CsvReader(esService, verbose, progressIndicator).read(scanDirectory.getAbsolutePath(), autoCorrect, ignoreFields
-                                , minimalImport);
+                        readCatalog(scanDirectory.getAbsolutePath(), progressIndicator);
                     }
                 }
             } catch (IOException ex) {
-                System.out.println("Could not read '" + filename + "'.");
+                System.out.println("Could not read '" + filename + "'. " + ex.getMessage());
             }
         }
+
+        if (!scanDirectories.isEmpty()) {
+            final ScanOptions scanOptions = getScanOptions();
+            new ParallelScanner(esService, scansPerDevice).setRunReport(runReport)
+                    .scan(scanDirectories, maxThreads, scanOptions.copy()
+                            .setJournalDirectory(ScanJournal.DEFAULT_DIRECTORY)
+                            .setResume(resume));
+            if (inodeTracker != null) {
+                System.out.println("\rEntries skipped as already indexed: " + inodeTracker.getDuplicates());
+                try {
+                    inodeTracker.close();
+                } catch (IOException e) {
+                    System.err.println("Could not close alternate path file. " + e.getMessage());
+                }
+            }
+            if (watch) {
+                watch(scanDirectories, scanOptions);
+            }
+        }
+
+        if (!dropFolders.isEmpty()) {
+            watchDropFolders(dropFolders, progressIndicator);
+        }
         
         esService.close();
+
+        if (runReport != null) {
+            try {
+                runReport.write(reportFile);
+                System.out.println("\rRun report written to " + reportFile);
+            } catch (IOException e) {
+                System.err.println("Could not write run report. " + e.getMessage());
+            }
+        }
+
+        if (standIn != null) {
+            System.out.println("\r" + standIn.getStatistics());
+            standIn.stop();
+        }
         
         if (progressIndicator.isAlive()) {
             progressIndicator.terminate();
         }
     }
+
+    private static void readCatalog(final String path, final ProgressReport progressIndicator) throws IOException {
+        final RunReport.Input input = runReport != null ? runReport.startInput(path, "catalog") : null;
+        final long indexedBefore = Metrics.BULK.getCount();
+        boolean success = false;
+        try {
+            success = new CsvReader(esService, verbose, progressIndicator)
+                    .setCheckpoints(ImportCheckpoint.DEFAULT_DIRECTORY, resume)
+                    .setRepairPolicies(malformedPolicy, duplicatePolicy)
+                    .setSnapshotDirectory(snapshot ? CatalogSnapshot.DEFAULT_DIRECTORY : null)
+                    .read(path, autoCorrect, ignoreFields, minimalImport);
+        } catch (ImportAbortedException e) {
+            System.err.println("\rImport aborted. " + e.getMessage());
+            esService.close();
+            if (standIn != null) {
+                standIn.stop();
+            }
+            System.exit(e.getExitCode());
+        } finally {
+            if (input != null) {
+                input.finish(Metrics.BULK.getCount() - indexedBefore, success);
+            }
+        }
+    }
+
+    private static void readListing(final ListingReader listingReader, final String path) throws IOException {
+        final RunReport.Input input = runReport != null ? runReport.startInput(path, "listing") : null;
+        final long indexedBefore = Metrics.BULK.getCount();
+        boolean success = false;
+        try {
+            success = listingReader.read(path);
+        } finally {
+            if (input != null) {
+                input.finish(Metrics.BULK.getCount() - indexedBefore, success);
+            }
+        }
+    }
+
+    private static void readSnapshot(final SnapshotReader snapshotReader, final String path) throws IOException {
+        final RunReport.Input input = runReport != null ? runReport.startInput(path, "snapshot") : null;
+        final long indexedBefore = Metrics.BULK.getCount();
+        boolean success = false;
+        try {
+            success = snapshotReader.read(path);
+        } finally {
+            if (input != null) {
+                input.finish(Metrics.BULK.getCount() - indexedBefore, success);
+            }
+        }
+    }
+
+    private static void compareReports(final String[] reports, final double thresholdPercent) {
+        try {
+            final int regressions = new ReportComparison(thresholdPercent).compare(Paths.get(reports[0])
+                    , Paths.get(reports[1]));
+            System.exit(regressions > 0 ? 12 : 0);
+        } catch (IOException e) {
+            System.out.println("Could not read run reports. " + e.getMessage());
+            System.exit(2);
+        }
+    }
+
+    private static void startStandIn(final String settings) {
+        standIn = new ESStandIn(settings);
+        try {
+            esPort = standIn.start(0);
+        } catch (IOException e) {
+            System.out.println("Could not start elasticsearch stand-in. " + e.getMessage());
+            System.exit(8);
+        }
+        http = true;
+        esAddress = InetAddress.getLoopbackAddress();
+    }
+
+    private static ESService createOfflineService() throws ParseException {
+        if ("null".equals(output)) {
+            System.out.println("Discarding all documents.");
+            final AtomicLong actions = new AtomicLong();
+            final AtomicLong bytes = new AtomicLong();
+            return new OfflineESService(esIndexName, listener -> new NullSink(listener, actions, bytes)
+                    , () -> System.out.println("\rDiscarded " + actions.get() + " documents (" + bytes.get() 
+                            + " bytes of JSON)."));
+        }
+        final File directory = new File(output);
+        if (exportDirectory != null) {
+            if (!directory.isDirectory()) {
+                throw new ParseException("Output directory '" + output + "' does not exist.");
+            }
+            if (exportDirectory.equals(directory.toPath().toAbsolutePath().normalize())) {
+                throw new ParseException("The export directory must not be the output directory.");
+            }
+            System.out.println("Reading documents from " + directory.getAbsolutePath());
+        } else if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new ParseException("Output directory '" + output + "' could not be created.");
+        } else {
+            System.out.println("Writing documents to " + directory.getAbsolutePath());
+        }
+        final AtomicInteger fileNumbers = new AtomicInteger();
+        try {
+            fileNumbers.set(NdjsonFileSink.getLastFileNumber(directory.toPath(), esIndexName));
+        } catch (IOException e) {
+            throw new ParseException("Output directory '" + output + "' could not be read. " + e.getMessage());
+        }
+        return new OfflineESService(esIndexName, listener -> new NdjsonFileSink(directory.toPath(), esIndexName, gzip
+                , listener, fileNumbers::incrementAndGet), null)
+                .setDocumentDirectory(directory.toPath());
+    }
+
+    private static void export() {
+        final long start = System.nanoTime();
+        int failed;
+        try {
+            failed = new IndexExporter(esService, maxThreads, exportFormat, gzip).export(exportDirectory);
+        } catch (IOException e) {
+            System.out.println("Could not export index '" + esIndexName + "'. " + e.getMessage());
+            failed = -1;
+        }
+        System.out.println("\rExport took " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + " s");
+        esService.close();
+        System.exit(failed != 0 ? 14 : 0);
+    }
+
+    private static void serve(final ProgressReport progressIndicator) {
+        final ImportJob defaults = new ImportJob()
+                .setAutoCorrect(autoCorrect)
+                .setIgnoreFields(ignoreFields)
+                .setMinimal(minimalImport)
+                .setMimeInfo(mimeInfo)
+                .setMalformedPolicy(malformedPolicy)
+                .setDuplicatePolicy(duplicatePolicy);
+        final ImportServer server = new ImportServer(esService, progressIndicator, defaults, getScanOptions()
+                , maxThreads, serverJobs);
+        try {
+            server.start(serverPort);
+            Thread.currentThread().join();
+        } catch (IOException e) {
+            System.out.println("Could not start server on port " + serverPort + ". " + e.getMessage());
+            esService.close();
+            System.exit(8);
+        } catch (InterruptedException e) {
+            server.stop();
+            esService.close();
+        }
+    }
+
+    private static ScanOptions getScanOptions() {
+        return new ScanOptions()
+                .setMimeInfo(mimeInfo)
+                .setVerbose(verbose)
+                .setIOBudget(ioBudget)
+                .setPathFilter(pathFilter)
+                .setMaxDepth(maxDepth)
+                .setStatMinimal(statMinimal)
+                .setFollowLinks(followLinks)
+                .setInodeTracker(inodeTracker);
+    }
+
+    private static void watchDropFolders(final List<File> folders, final ProgressReport progressIndicator) {
+        final List<Thread> watchers = new ArrayList<>();
+        for (File folder : folders) {
+            final Thread watcher = new Thread(new CatalogDropWatcher(folder.toPath(), esService, progressIndicator
+                    , verbose, autoCorrect, ignoreFields, minimalImport, debounceMillis, catalogWorkers)
+                    .setRepairPolicies(malformedPolicy, duplicatePolicy), "catalog-watcher-" + folder);
+            watcher.start();
+            watchers.add(watcher);
+        }
+        join(watchers);
+    }
+
+    private static void watch(final List<File> directories, final ScanOptions scanOptions) {
+        final List<Thread> watchers = new ArrayList<>();
+        for (File directory : directories) {
+            try {
+                final Thread watcher = new Thread(new VolumeWatcher(esService, directory, scanOptions, debounceMillis
+                        , 100000), "watcher-" + directory);
+                watcher.start();
+                watchers.add(watcher);
+            } catch (IOException e) {
+                System.err.println("Could not watch '" + directory + "'. Cause: " + e.getMessage());
+            }
+        }
+        join(watchers);
+    }
+
+    private static void join(final List<Thread> watchers) {
+        for (Thread watcher : watchers) {
+            try {
+                watcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
 }
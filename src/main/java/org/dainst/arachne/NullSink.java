@@ -0,0 +1,68 @@
+package org.dainst.arachne;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk sink discarding all documents, only counting them.
+ * 
+ * Used to measure crawling and parsing throughput without an elasticsearch cluster. The counters can be shared by 
+ * multiple sinks.
+ *
+ * @author Reimar Grabowski
+ */
+public class NullSink implements BulkSink {
+
+    private final Listener listener;
+
+    private final AtomicLong totalActions;
+    private final AtomicLong totalBytes;
+
+    private int bufferedActions = 0;
+    private long bufferedBytes = 0;
+
+    private long executionId = 0;
+
+    public NullSink(final Listener listener, final AtomicLong totalActions, final AtomicLong totalBytes) {
+        this.listener = listener;
+        this.totalActions = totalActions;
+        this.totalBytes = totalBytes;
+    }
+
+    @Override
+    public synchronized void index(final String id, final byte[] source) {
+        add(source.length);
+    }
+
+    @Override
+    public synchronized void delete(final String id) {
+        add(0);
+    }
+
+    @Override
+    public synchronized void flush() {
+        if (bufferedActions > 0) {
+            executionId++;
+            listener.beforeBulk(executionId, bufferedActions);
+            listener.afterBulk(executionId, bufferedActions, 0);
+            bufferedActions = 0;
+            bufferedBytes = 0;
+        }
+    }
+
+    @Override
+    public boolean awaitClose(final long timeout, final TimeUnit unit) {
+        flush();
+        return true;
+    }
+
+    private void add(final long bytes) {
+        totalActions.incrementAndGet();
+        totalBytes.addAndGet(bytes);
+        bufferedActions++;
+        bufferedBytes += bytes;
+        if (bufferedActions >= BULK_ACTIONS || bufferedBytes >= BULK_SIZE) {
+            flush();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package org.dainst.arachne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Elasticsearch service stand-in for runs that do not write to a cluster.
+ * 
+ * All index operations succeed without doing anything, the documents go to the bulk sinks created by the given 
+ * factory (for example <code>NdjsonFileSink</code> or <code>NullSink</code>). Documents can only be read back if a 
+ * directory of NDJSON bulk files is set, every file is a slice.
+ *
+ * @author Reimar Grabowski
+ */
+public class OfflineESService implements ESService {
+
+    private final String indexName;
+
+    private final Function<BulkSink.Listener, BulkSink> sinkFactory;
+
+    private final Runnable onClose;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private Path documentDirectory = null;
+    private List<Path> documentFiles = null;
+
+    /**
+     * @param indexName the index name written into the documents
+     * @param sinkFactory the factory creating the bulk sinks
+     * @param onClose called when the service is closed (may be <code>null</code>)
+     */
+    public OfflineESService(final String indexName, final Function<BulkSink.Listener, BulkSink> sinkFactory
+            , final Runnable onClose) {
+        this.indexName = indexName;
+        this.sinkFactory = sinkFactory;
+        this.onClose = onClose;
+    }
+
+    /**
+     * @param documentDirectory the directory of the NDJSON bulk files the documents are read from
+     * @return this
+     */
+    public OfflineESService setDocumentDirectory(final Path documentDirectory) {
+        this.documentDirectory = documentDirectory;
+        return this;
+    }
+
+    @Override
+    public boolean isClusterAvailable() {
+        return true;
+    }
+
+    @Override
+    public boolean createIndex() {
+        return true;
+    }
+
+    @Override
+    public boolean deleteIndex() {
+        return true;
+    }
+
+    @Override
+    public boolean indexExists() {
+        return true;
+    }
+
+    @Override
+    public String getIndexName() {
+        return indexName;
+    }
+
+    @Override
+    public BulkSink createBulkSink(final BulkSink.Listener listener) {
+        return sinkFactory.apply(listener);
+    }
+
+    @Override
+    public synchronized int getSlices() throws IOException {
+        if (documentFiles == null) {
+            documentFiles = new ArrayList<>();
+            if (documentDirectory != null) {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(documentDirectory, indexName 
+                        + "-*.{ndjson,ndjson.gz}")) {
+                    for (Path file : files) {
+                        documentFiles.add(file);
+                    }
+                }
+                Collections.sort(documentFiles);
+            }
+        }
+        return documentFiles.size();
+    }
+
+    @Override
+    public long readSlice(final int slice, final int batchSize, final DocumentConsumer consumer) throws IOException {
+        final Path file = documentFiles.get(slice);
+        long documents = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(CatalogSource.open(file.toString())
+                , StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                final Map.Entry<String, JsonNode> action = mapper.readTree(line).fields().next();
+                if ("delete".equals(action.getKey())) {
+                    continue;
+                }
+                final String source = reader.readLine();
+                if (source == null) {
+                    throw new IOException("Document missing at the end of '" + file + "'.");
+                }
+                consumer.accept(action.getValue().path("_id").asText(), source.getBytes(StandardCharsets.UTF_8));
+                documents++;
+            }
+        }
+        return documents;
+    }
+
+    @Override
+    public void close() {
+        if (onClose != null) {
+            onClose.run();
+        }
+    }
+}
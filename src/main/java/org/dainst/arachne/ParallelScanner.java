@@ -0,0 +1,114 @@
+package org.dainst.arachne;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Class to scan multiple root directories concurrently.
+ * 
+ * The roots are grouped by the <code>FileStore</code> (device) they reside on. Every device gets its own thread pool
+ * limited to <code>scansPerDevice</code> threads, so roots on the same disk do not compete for it, while roots on 
+ * different disks or mounts are scanned in parallel.
+ *
+ * @author Reimar Grabowski
+ */
+public class ParallelScanner {
+
+    private final ESService esService;
+
+    private final int scansPerDevice;
+
+    private RunReport runReport = null;
+
+    public ParallelScanner(final ESService esService, final int scansPerDevice) {
+        this.esService = esService;
+        this.scansPerDevice = scansPerDevice > 0 ? scansPerDevice : 1;
+    }
+
+    /**
+     * @param runReport the report to add the timings of the scanned roots to (may be <code>null</code>)
+     * @return this
+     */
+    public ParallelScanner setRunReport(final RunReport runReport) {
+        this.runReport = runReport;
+        return this;
+    }
+
+    public void scan(final List<File> roots, final int maxThreads, final ScanOptions options) {
+
+        final Map<Object, List<File>> rootsByDevice = groupByDevice(roots);
+        if (rootsByDevice.size() > 1 || roots.size() > 1) {
+            System.out.println("\rScanning " + roots.size() + " root(s) on " + rootsByDevice.size() + " device(s)...");
+        }
+
+        final List<ExecutorService> devicePools = new ArrayList<>();
+        final Map<File, Future<?>> scans = new LinkedHashMap<>();
+        for (List<File> deviceRoots : rootsByDevice.values()) {
+            final ExecutorService devicePool = Executors.newFixedThreadPool(Math.min(scansPerDevice, deviceRoots.size()));
+            devicePools.add(devicePool);
+            for (final File root : deviceRoots) {
+                scans.put(root, devicePool.submit(() -> {
+                    final RunReport.Input input = runReport != null ? runReport.startInput(root.toString(), "scan")
+                            : null;
+                    int documents = 0;
+                    boolean success = false;
+                    try {
+                        documents = new FileSystemScanner(esService).scan(root, maxThreads, options);
+                        success = true;
+                    } finally {
+                        if (input != null) {
+                            input.finish(documents, success);
+                        }
+                    }
+                    return null;
+                }));
+            }
+        }
+
+        for (Map.Entry<File, Future<?>> scan : scans.entrySet()) {
+            try {
+                scan.getValue().get();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException ex) {
+                System.err.println("Could not scan '" + scan.getKey() + "'. Cause: " + ex.getCause());
+            }
+        }
+        devicePools.stream().forEach(ExecutorService::shutdownNow);
+
+        if (options.getIOBudget().isLimited()) {
+            System.out.println("\rTotal time throttled by I/O budget: " + options.getIOBudget().getThrottledMillis() / 1000
+                    + " sec");
+        }
+    }
+
+    private Map<Object, List<File>> groupByDevice(final List<File> roots) {
+        final Map<Object, List<File>> rootsByDevice = new LinkedHashMap<>();
+        for (File root : roots) {
+            Object device;
+            try {
+                final FileStore fileStore = Files.getFileStore(root.toPath());
+                device = fileStore;
+                if (fileStore.name() != null) {
+                    device = fileStore.type() + ':' + fileStore.name();
+                }
+            } catch (IOException e) {
+                // unknown device, scan it on its own
+                device = root;
+            }
+            rootsByDevice.computeIfAbsent(device, key -> new ArrayList<>()).add(root);
+        }
+        return rootsByDevice;
+    }
+}
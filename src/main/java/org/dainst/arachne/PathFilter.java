@@ -0,0 +1,287 @@
+package org.dainst.arachne;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * Class to decide which entries a <code>DirectoryCrawler</code> visits.
+ * 
+ * Rules are globs (default, or with the prefix <code>glob:</code>) or regular expressions (prefix 
+ * <code>regex:</code>). Rules containing a '/' are matched against the path relative to the scan root, all other 
+ * rules against the entry name only. All rules of a kind are compiled into a single pattern once, so checking an 
+ * entry costs one regex match per kind. Group numbers in a combined pattern are shifted by the rules before it, so 
+ * regular expressions with backreferences or named groups are compiled into patterns of their own and cost one 
+ * extra match each.
+ * 
+ * Excluded directories are skipped including their whole subtree. Include rules only apply to files, directories 
+ * are always descended into unless excluded.
+ *
+ * @author Reimar Grabowski
+ */
+public class PathFilter {
+
+    /**
+     * A filter that accepts everything.
+     */
+    public static final PathFilter ACCEPT_ALL = new PathFilter(new ArrayList<>(), new ArrayList<>());
+
+    // the combined pattern of a kind followed by the rules that have to be matched on their own
+    private final List<Pattern> excludeNames;
+    private final List<Pattern> excludePaths;
+    private final List<Pattern> includeNames;
+    private final List<Pattern> includePaths;
+
+    /**
+     * @param excludes the exclude rules
+     * @param includes the include rules (if empty all files are included)
+     * @throws IllegalArgumentException if a rule is not a valid glob or regular expression
+     */
+    public PathFilter(final List<String> excludes, final List<String> includes) throws IllegalArgumentException {
+        excludeNames = compile(excludes, false);
+        excludePaths = compile(excludes, true);
+        includeNames = compile(includes, false);
+        includePaths = compile(includes, true);
+    }
+
+    /**
+     * @param excludes the exclude rules, every value may hold several comma separated rules
+     * @param includes the include rules, every value may hold several comma separated rules
+     * @throws IllegalArgumentException if a rule is not a valid glob or regular expression
+     * @see #split(String[])
+     */
+    public PathFilter(final String[] excludes, final String[] includes) throws IllegalArgumentException {
+        this(split(excludes), split(includes));
+    }
+
+    /**
+     * Splits comma separated rules. Commas inside '{}' or '[]' belong to the rule, so globs like 
+     * <code>*.{jpg,png}</code> and regular expressions like <code>regex:a{1,3}</code> stay intact.
+     *
+     * @param values the option values (may be <code>null</code>)
+     * @return the single rules
+     */
+    public static List<String> split(final String[] values) {
+        final List<String> rules = new ArrayList<>();
+        if (values == null) {
+            return rules;
+        }
+        for (String value : values) {
+            int depth = 0;
+            int start = 0;
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if ((c == '}' || c == ']') && depth > 0) {
+                    depth--;
+                } else if (c == ',' && depth == 0) {
+                    addRule(rules, value.substring(start, i));
+                    start = i + 1;
+                }
+            }
+            addRule(rules, value.substring(start));
+        }
+        return rules;
+    }
+
+    public boolean isAcceptingAll() {
+        return excludeNames.isEmpty() && excludePaths.isEmpty() && includeNames.isEmpty() && includePaths.isEmpty();
+    }
+
+    /**
+     * @param root the scan root
+     * @param directory the directory to check
+     * @return <code>true</code> if the directory and its subtree should be skipped
+     */
+    public boolean isExcludedDirectory(final Path root, final Path directory) {
+        if (directory.equals(root)) {
+            return false;
+        }
+        return matches(excludeNames, excludePaths, root, directory);
+    }
+
+    /**
+     * @param root the scan root
+     * @param file the file to check
+     * @return <code>true</code> if the file should be indexed
+     */
+    public boolean isIncludedFile(final Path root, final Path file) {
+        if (matches(excludeNames, excludePaths, root, file)) {
+            return false;
+        }
+        if (includeNames.isEmpty() && includePaths.isEmpty()) {
+            return true;
+        }
+        return matches(includeNames, includePaths, root, file);
+    }
+
+    private boolean matches(final List<Pattern> names, final List<Pattern> paths, final Path root, final Path path) {
+        if (!names.isEmpty()) {
+            final Path fileName = path.getFileName();
+            if (fileName != null && matchesAny(names, fileName.toString())) {
+                return true;
+            }
+        }
+        if (!paths.isEmpty()) {
+            String relativePath = root.relativize(path).toString();
+            if (path.getFileSystem().getSeparator().equals("\\")) {
+                relativePath = relativePath.replace('\\', '/');
+            }
+            return matchesAny(paths, relativePath);
+        }
+        return false;
+    }
+
+    private static boolean matchesAny(final List<Pattern> patterns, final String value) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(value).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addRule(final List<String> rules, final String rule) {
+        if (!rule.isEmpty()) {
+            rules.add(rule);
+        }
+    }
+
+    private static List<Pattern> compile(final List<String> rules, final boolean pathRules) {
+        final List<String> expressions = new ArrayList<>();
+        final List<String> separateExpressions = new ArrayList<>();
+        for (String rule : rules) {
+            final boolean regex = rule.startsWith("regex:");
+            final String expression = regex ? rule.substring(6) : rule.startsWith("glob:") ? rule.substring(5) : rule;
+            if (expression.isEmpty() || expression.contains("/") != pathRules) {
+                continue;
+            }
+            if (regex && refersToGroups(expression)) {
+                separateExpressions.add(expression);
+            } else if (regex) {
+                expressions.add(expression);
+            } else {
+                // leading slashes anchor at the scan root which is what relative paths are matched against anyway
+                expressions.add(globToRegex(pathRules ? expression.replaceFirst("^/+", "") : expression));
+            }
+        }
+        if (expressions.isEmpty() && separateExpressions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<Pattern> patterns = new ArrayList<>();
+        try {
+            if (!expressions.isEmpty()) {
+                patterns.add(Pattern.compile(expressions.stream().map(expression -> "(?:" + expression + ")")
+                        .collect(Collectors.joining("|"))));
+            }
+            for (String expression : separateExpressions) {
+                patterns.add(Pattern.compile(expression));
+            }
+        } catch (PatternSyntaxException e) {
+            throw new IllegalArgumentException("Invalid filter rule. " + e.getMessage());
+        }
+        return patterns;
+    }
+
+    /**
+     * @param expression a regular expression
+     * @return <code>true</code> if the expression contains backreferences or named groups, which would refer to the 
+     * wrong group or clash once the expression is combined with others
+     */
+    private static boolean refersToGroups(final String expression) {
+        boolean quoted = false;
+        for (int i = 0; i < expression.length() - 1; i++) {
+            final char c = expression.charAt(i);
+            final char next = expression.charAt(i + 1);
+            if (quoted) {
+                if (c == '\\' && next == 'E') {
+                    quoted = false;
+                    i++;
+                }
+            } else if (c == '\\') {
+                if (next == 'Q') {
+                    quoted = true;
+                } else if ((next >= '1' && next <= '9') || next == 'k') {
+                    return true;
+                }
+                i++;
+            } else if (c == '(' && expression.startsWith("?<", i + 1) && i + 3 < expression.length() 
+                    && Character.isLetter(expression.charAt(i + 3))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String globToRegex(final String glob) {
+        final StringBuilder regex = new StringBuilder(glob.length() * 2);
+        boolean inGroup = false;
+        for (int i = 0; i < glob.length(); i++) {
+            final char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        // '**/' also matches no directory at all
+                        if (i + 2 < glob.length() && glob.charAt(i + 2) == '/') {
+                            regex.append("(?:.*/)?");
+                            i += 2;
+                        } else {
+                            regex.append(".*");
+                            i++;
+                        }
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '{':
+                    regex.append("(?:");
+                    inGroup = true;
+                    break;
+                case '}':
+                    regex.append(inGroup ? ")" : "\\}");
+                    inGroup = false;
+                    break;
+                case ',':
+                    regex.append(inGroup ? "|" : ",");
+                    break;
+                case '[': {
+                    final int end = glob.indexOf(']', i + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Invalid glob '" + glob + "'. Missing ']'.");
+                    }
+                    String characterClass = glob.substring(i + 1, end).replace("\\", "\\\\");
+                    if (characterClass.startsWith("!")) {
+                        characterClass = "^" + characterClass.substring(1);
+                    }
+                    regex.append('[').append(characterClass).append(']');
+                    i = end;
+                    break;
+                }
+                case '\\':
+                    if (i + 1 < glob.length()) {
+                        regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                    }
+                    break;
+                default:
+                    if ("().+^$|".indexOf(c) >= 0) {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+            }
+        }
+        if (inGroup) {
+            throw new IllegalArgumentException("Invalid glob '" + glob + "'. Missing '}'.");
+        }
+        return regex.toString();
+    }
+}
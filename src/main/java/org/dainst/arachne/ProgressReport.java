@@ -0,0 +1,133 @@
+package org.dainst.arachne;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Thread printing a one line summary of the throughput of all stages in regular intervals.
+ * 
+ * Only stages that did something are shown, if the number of documents of the current import is known the progress 
+ * and estimated remaining time are shown, too.
+ *
+ * @author Reimar Grabowski
+ */
+class ProgressReport extends Thread {
+
+    private final long intervalMillis;
+
+    private volatile boolean terminate = false;
+    private volatile boolean paused = false;
+
+    private final long startTime = System.nanoTime();
+
+    private long[] lastCounts;
+    private long lastBytes;
+    private long lastTime;
+
+    /**
+     * @param intervalSeconds the number of seconds between reports (0 disables the report)
+     */
+    ProgressReport(final long intervalSeconds) {
+        super("progress-report");
+        setDaemon(true);
+        this.intervalMillis = TimeUnit.SECONDS.toMillis(intervalSeconds);
+    }
+
+    @Override
+    public void run() {
+        if (intervalMillis <= 0) {
+            return;
+        }
+        final List<Stage> stages = Metrics.getStages();
+        lastCounts = new long[stages.size()];
+        for (int i = 0; i < stages.size(); i++) {
+            lastCounts[i] = stages.get(i).getCount();
+        }
+        lastBytes = Metrics.SERIALIZE.getBytes();
+        lastTime = System.nanoTime();
+        while (!terminate) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (!paused && !terminate) {
+                System.out.println("\r" + getReport());
+            }
+        }
+    }
+
+    /**
+     * @return the throughput of the stages since the last report
+     */
+    synchronized String getReport() {
+        final long now = System.nanoTime();
+        final double seconds = Math.max(1, now - lastTime) / 1e9;
+        final StringBuilder report = new StringBuilder(formatDuration(now - startTime));
+        final List<Stage> stages = Metrics.getStages();
+        double bulkRate = 0;
+        for (int i = 0; i < stages.size(); i++) {
+            final Stage stage = stages.get(i);
+            final long count = stage.getCount();
+            final double rate = (count - lastCounts[i]) / seconds;
+            lastCounts[i] = count;
+            if (count == 0) {
+                continue;
+            }
+            report.append(" | ").append(stage.getName()).append(' ').append(formatRate(rate)).append("/s");
+            if (stage == Metrics.SERIALIZE) {
+                final long bytes = stage.getBytes();
+                report.append(' ').append(formatRate((bytes - lastBytes) / seconds / (1 << 20))).append(" MB/s");
+                lastBytes = bytes;
+            }
+            if (stage == Metrics.BULK) {
+                bulkRate = rate;
+                report.append(" p99 ").append(TimeUnit.MICROSECONDS.toMillis(stage.getLatencyP99Micros()))
+                        .append(" ms");
+                if (stage.getErrors() > 0) {
+                    report.append(", ").append(stage.getErrors()).append(" rejected");
+                }
+            }
+            final int queueDepth = stage.getQueueDepth();
+            if (queueDepth >= 0) {
+                report.append(", queue ").append(queueDepth);
+            }
+        }
+        lastTime = now;
+
+        final long expected = Metrics.getExpectedDocuments();
+        if (expected > 0) {
+            final long done = Math.min(expected, Metrics.getIndexedSinceExpect());
+            report.append(" | ").append(done * 100 / expected).append('%');
+            if (bulkRate > 0) {
+                report.append(" ETA ").append(formatDuration((long) ((expected - done) / bulkRate * 1e9)));
+            }
+        }
+        return report.toString();
+    }
+
+    public void terminate() {
+        terminate = true;
+        interrupt();
+    }
+
+    public void pause() {
+        paused = true;
+    }
+
+    public void unpause() {
+        paused = false;
+    }
+
+    private static String formatRate(final double rate) {
+        if (rate >= 10000) {
+            return String.format("%.0fk", rate / 1000);
+        }
+        return String.format(rate >= 100 ? "%.0f" : "%.1f", rate);
+    }
+
+    private static String formatDuration(final long nanos) {
+        final long seconds = TimeUnit.NANOSECONDS.toSeconds(nanos);
+        return String.format("%02d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
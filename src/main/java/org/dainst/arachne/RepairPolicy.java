@@ -0,0 +1,30 @@
+package org.dainst.arachne;
+
+/**
+ * What to do with catalog records that cannot be imported as they are (malformed lines or duplicate paths).
+ *
+ * @author Reimar Grabowski
+ */
+public enum RepairPolicy {
+
+    /**
+     * Import the record anyway (a duplicate path replaces the record imported before).
+     */
+    accept,
+
+    /**
+     * Leave the record out and import the rest of the catalog.
+     */
+    skip,
+
+    /**
+     * Do not import the catalog at all.
+     */
+    reject,
+
+    /**
+     * Leave the record out and write it to the quarantine file of the catalog, which can be corrected and imported
+     * later.
+     */
+    quarantine
+}
@@ -0,0 +1,100 @@
+package org.dainst.arachne;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares the throughput of two run reports written by <code>RunReport</code>.
+ * 
+ * Overall, per stage and per input (matched by path) throughput values are compared, a value is a regression if it 
+ * dropped by more than the threshold.
+ *
+ * @author Reimar Grabowski
+ */
+public class ReportComparison {
+
+    private final double thresholdPercent;
+
+    private int regressions = 0;
+
+    /**
+     * @param thresholdPercent the drop in throughput in percent that is considered a regression
+     */
+    public ReportComparison(final double thresholdPercent) {
+        this.thresholdPercent = thresholdPercent;
+    }
+
+    /**
+     * Prints the comparison of the two reports.
+     * 
+     * @param oldReport the baseline report
+     * @param newReport the report to check
+     * @return the number of regressions found
+     * @throws IOException if a report could not be read
+     */
+    public int compare(final Path oldReport, final Path newReport) throws IOException {
+        final ObjectMapper mapper = new ObjectMapper();
+        final JsonNode oldRoot = mapper.readTree(oldReport.toFile());
+        final JsonNode newRoot = mapper.readTree(newReport.toFile());
+        regressions = 0;
+
+        System.out.println(String.format("%-50s %14s %14s %8s", "throughput (per second)", "old", "new", "change"));
+        compare("bulk documents", oldRoot.path("bulk").path("documentsPerSecond")
+                , newRoot.path("bulk").path("documentsPerSecond"));
+
+        final Iterator<Map.Entry<String, JsonNode>> stages = oldRoot.path("stages").fields();
+        while (stages.hasNext()) {
+            final Map.Entry<String, JsonNode> stage = stages.next();
+            compare("stage " + stage.getKey(), stage.getValue().path("perSecond")
+                    , newRoot.path("stages").path(stage.getKey()).path("perSecond"));
+        }
+
+        final Map<String, JsonNode> newInputs = new LinkedHashMap<>();
+        for (JsonNode input : newRoot.path("inputs")) {
+            newInputs.put(input.path("path").asText(), input);
+        }
+        for (JsonNode input : oldRoot.path("inputs")) {
+            final String path = input.path("path").asText();
+            final JsonNode newInput = newInputs.get(path);
+            if (newInput != null) {
+                compare(path, input.path("documentsPerSecond"), newInput.path("documentsPerSecond"));
+            }
+        }
+
+        System.out.println(String.format("%-50s %14s %14s", "duration (ms)", oldRoot.path("durationMillis").asText()
+                , newRoot.path("durationMillis").asText()));
+        System.out.println(String.format("%-50s %14s %14s", "peak heap (bytes)"
+                , oldRoot.path("jvm").path("peakHeapBytes").asText(), newRoot.path("jvm").path("peakHeapBytes").asText()));
+        System.out.println(String.format("%-50s %14s %14s", "gc time (ms)"
+                , oldRoot.path("jvm").path("gcTimeMillis").asText(), newRoot.path("jvm").path("gcTimeMillis").asText()));
+
+        System.out.println();
+        System.out.println(regressions + " throughput regression(s) of more than " + thresholdPercent + "%");
+        return regressions;
+    }
+
+    private void compare(final String name, final JsonNode oldValue, final JsonNode newValue) {
+        if (!oldValue.isNumber()) {
+            return;
+        }
+        final String label = name.length() > 50 ? "..." + name.substring(name.length() - 47) : name;
+        if (!newValue.isNumber()) {
+            System.out.println(String.format("%-50s %14.1f %14s", label, oldValue.asDouble(), "missing"));
+            return;
+        }
+        final double oldRate = oldValue.asDouble();
+        final double newRate = newValue.asDouble();
+        final double change = oldRate > 0 ? (newRate - oldRate) * 100 / oldRate : 0;
+        final boolean regression = change < -thresholdPercent;
+        if (regression) {
+            regressions++;
+        }
+        System.out.println(String.format("%-50s %14.1f %14.1f %+7.1f%%%s", label, oldRate, newRate, change
+                , regression ? " REGRESSION" : ""));
+    }
+}
@@ -0,0 +1,177 @@
+package org.dainst.arachne;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Machine readable report of a run, written as JSON at the end of the run.
+ * 
+ * It contains the timings and throughput of every input and every stage, the bulk statistics and the peak heap 
+ * usage and garbage collection time of the JVM. Reports of different runs can be compared with 
+ * <code>ReportComparison</code>.
+ *
+ * @author Reimar Grabowski
+ */
+public class RunReport {
+
+    /**
+     * Version of the report format.
+     */
+    public static final int VERSION = 1;
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final String[] arguments;
+
+    private final Instant startTime = Instant.now();
+    private final long startNanos = System.nanoTime();
+
+    private final List<Input> inputs = new ArrayList<>();
+
+    /**
+     * @param arguments the command line arguments of the run
+     */
+    public RunReport(final String[] arguments) {
+        this.arguments = arguments;
+    }
+
+    /**
+     * Starts timing an input.
+     * 
+     * @param path the file or directory
+     * @param type the kind of input (scan, catalog or listing)
+     * @return the input to finish when it is processed
+     */
+    public Input startInput(final String path, final String type) {
+        final Input input = new Input(path, type);
+        synchronized (inputs) {
+            inputs.add(input);
+        }
+        return input;
+    }
+
+    /**
+     * Writes the report.
+     * 
+     * @param file the file to write to
+     * @throws IOException if the file could not be written
+     */
+    public void write(final Path file) throws IOException {
+        mapper.writeValue(file.toFile(), toJson());
+    }
+
+    ObjectNode toJson() {
+        final long durationMillis = (System.nanoTime() - startNanos) / 1000000;
+        final ObjectNode report = mapper.createObjectNode();
+        report.put("version", VERSION);
+        report.put("startTime", startTime.toString());
+        report.put("durationMillis", durationMillis);
+        final ArrayNode argumentsNode = report.putArray("arguments");
+        for (String argument : arguments) {
+            argumentsNode.add(argument);
+        }
+
+        final ArrayNode inputsNode = report.putArray("inputs");
+        synchronized (inputs) {
+            for (Input input : inputs) {
+                final ObjectNode inputNode = inputsNode.addObject();
+                inputNode.put("path", input.path);
+                inputNode.put("type", input.type);
+                inputNode.put("success", input.success);
+                inputNode.put("durationMillis", input.durationMillis);
+                inputNode.put("documents", input.documents);
+                inputNode.put("documentsPerSecond", perSecond(input.documents, input.durationMillis));
+            }
+        }
+
+        final ObjectNode stagesNode = report.putObject("stages");
+        for (Stage stage : Metrics.getStages()) {
+            if (stage.getCount() == 0 && stage.getErrors() == 0) {
+                continue;
+            }
+            final ObjectNode stageNode = stagesNode.putObject(stage.getName());
+            stageNode.put("count", stage.getCount());
+            stageNode.put("perSecond", perSecond(stage.getCount(), durationMillis));
+            stageNode.put("bytes", stage.getBytes());
+            stageNode.put("errors", stage.getErrors());
+            stageNode.put("batches", stage.getBatches());
+            stageNode.put("batchSizeMean", stage.getBatchSizeMean());
+            stageNode.put("latencyMeanMicros", stage.getLatencyMeanMicros());
+            stageNode.put("latencyP50Micros", stage.getLatencyP50Micros());
+            stageNode.put("latencyP99Micros", stage.getLatencyP99Micros());
+            stageNode.put("latencyMaxMicros", stage.getLatencyMaxMicros());
+        }
+
+        final ObjectNode bulkNode = report.putObject("bulk");
+        bulkNode.put("requests", Metrics.BULK.getBatches());
+        bulkNode.put("documents", Metrics.BULK.getCount());
+        bulkNode.put("rejected", Metrics.BULK.getErrors());
+        bulkNode.put("documentsPerSecond", perSecond(Metrics.BULK.getCount(), durationMillis));
+        bulkNode.put("jsonBytes", Metrics.SERIALIZE.getBytes());
+
+        final ObjectNode jvmNode = report.putObject("jvm");
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, collector.getCollectionCount());
+            gcMillis += Math.max(0, collector.getCollectionTime());
+        }
+        jvmNode.put("javaVersion", System.getProperty("java.version"));
+        jvmNode.put("processors", Runtime.getRuntime().availableProcessors());
+        jvmNode.put("maxHeapBytes", Runtime.getRuntime().maxMemory());
+        jvmNode.put("peakHeapBytes", peakHeap);
+        jvmNode.put("gcCount", gcCount);
+        jvmNode.put("gcTimeMillis", gcMillis);
+        return report;
+    }
+
+    private static double perSecond(final long count, final long millis) {
+        return millis > 0 ? count * 1000.0 / millis : 0;
+    }
+
+    /**
+     * Timing of one input of the run.
+     */
+    public static class Input {
+
+        private final String path;
+        private final String type;
+        private final long startNanos = System.nanoTime();
+
+        private long durationMillis = -1;
+        private long documents = 0;
+        private boolean success = false;
+
+        private Input(final String path, final String type) {
+            this.path = path;
+            this.type = type;
+        }
+
+        /**
+         * @param documents the number of documents indexed from this input
+         * @param success if the input was processed successfully
+         */
+        public void finish(final long documents, final boolean success) {
+            this.durationMillis = (System.nanoTime() - startNanos) / 1000000;
+            this.documents = documents;
+            this.success = success;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package org.dainst.arachne;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongConsumer;
+
+/**
+ * Journal of the completed subtrees of a file system scan, used to resume an interrupted scan.
+ * 
+ * A directory is completed when it was crawled without errors and the index acknowledged all documents up to and 
+ * including its subtree. The crawler reports directories after their subtree was crawled together with the number of 
+ * documents queued so far, the journal writes them once that many documents are acknowledged. Entries are appended 
+ * to a text file (one path relative to the scan root per line). Entries below a completed directory are redundant, 
+ * the journal keeps track of the entries not covered by a completed parent and rewrites the file with only these 
+ * once most of its lines are redundant, so it stays about as small as the frontier of the crawl.
+ *
+ * @author Reimar Grabowski
+ */
+public class ScanJournal implements LongConsumer {
+
+    /**
+     * The directory journals are stored in by default.
+     */
+    public static final Path DEFAULT_DIRECTORY = Paths.get(System.getProperty("user.home"), ".neofindertoes"
+            , "journals");
+
+    private static final String ROOT = ".";
+
+    // the file is rewritten when it has this many lines more than twice the live entries
+    private static final int COMPACT_THRESHOLD = 10000;
+
+    private final Path root;
+    private final Path journalFile;
+
+    private final Set<String> completed = new HashSet<>();
+
+    // directories crawled but not yet acknowledged, in crawl order
+    private final Deque<PendingDirectory> pending = new ArrayDeque<>();
+
+    // the entries in the file not covered by a completed parent, by parent ("" for the root)
+    private final Map<String, List<String>> liveEntries = new HashMap<>();
+    private int live = 0;
+    private int lines = 0;
+
+    private BufferedWriter writer = null;
+
+    private long skipped = 0;
+
+    /**
+     * @param directory the directory to store the journal in
+     * @param root the scan root
+     */
+    public ScanJournal(final Path directory, final Path root) {
+        this.root = root;
+        String name = root.getFileName() != null ? root.getFileName().toString() : "root";
+        this.journalFile = directory.resolve(name + "-" + Integer.toHexString(root.toString().hashCode()) 
+                + ".journal");
+    }
+
+    /**
+     * Opens the journal.
+     * 
+     * @param resume if the completed subtrees of an existing journal should be skipped, otherwise it is discarded
+     * @return the number of completed subtrees loaded
+     * @throws IOException if the journal could not be read or written
+     */
+    public synchronized int open(final boolean resume) throws IOException {
+        Files.createDirectories(journalFile.getParent());
+        completed.clear();
+        liveEntries.clear();
+        live = 0;
+        if (resume && Files.exists(journalFile)) {
+            try (BufferedReader reader = Files.newBufferedReader(journalFile, StandardCharsets.UTF_8)) {
+                String entry;
+                while ((entry = reader.readLine()) != null) {
+                    if (!entry.isEmpty()) {
+                        completed.add(entry);
+                    }
+                }
+            }
+            compact();
+            for (String entry : completed) {
+                addLiveEntry(entry);
+            }
+        } else {
+            Files.deleteIfExists(journalFile);
+        }
+        lines = live;
+        openWriter();
+        return completed.size();
+    }
+
+    /**
+     * @param directory a directory of the scan
+     * @return <code>true</code> if the subtree of the directory was completed by an earlier scan
+     */
+    public synchronized boolean isCompleted(final Path directory) {
+        if (completed.isEmpty()) {
+            return false;
+        }
+        final boolean isCompleted = completed.contains(relativize(directory));
+        if (isCompleted) {
+            skipped++;
+        }
+        return isCompleted;
+    }
+
+    /**
+     * @return the number of subtrees skipped because they were completed by an earlier scan
+     */
+    public synchronized long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Reports a directory whose subtree was crawled without errors.
+     * 
+     * @param directory the directory
+     * @param documents the number of documents queued for indexing so far, including the subtree
+     */
+    public synchronized void crawled(final Path directory, final long documents) {
+        pending.addLast(new PendingDirectory(relativize(directory), documents));
+    }
+
+    /**
+     * Writes the crawled directories whose documents are all acknowledged.
+     * 
+     * @param acknowledged the number of documents acknowledged by the index
+     */
+    @Override
+    public synchronized void accept(final long acknowledged) {
+        if (writer == null) {
+            return;
+        }
+        try {
+            boolean written = false;
+            while (!pending.isEmpty() && pending.peekFirst().documents <= acknowledged) {
+                final String entry = pending.pollFirst().path;
+                // directories are reported after their subtree, so the entries below are complete now
+                final List<String> children = liveEntries.remove(entry);
+                if (children != null) {
+                    live -= children.size();
+                }
+                addLiveEntry(entry);
+                writer.write(entry);
+                writer.write('\n');
+                lines++;
+                written = true;
+            }
+            if (lines > 2L * live + COMPACT_THRESHOLD) {
+                writer.close();
+                final List<String> entries = new ArrayList<>(live);
+                liveEntries.values().forEach(entries::addAll);
+                Collections.sort(entries);
+                rewrite(entries);
+                lines = live;
+                openWriter();
+            } else if (written) {
+                writer.flush();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write scan journal " + journalFile + ". " + e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * Closes the journal, it is kept to resume the scan.
+     */
+    public synchronized void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                System.err.println("Could not close scan journal " + journalFile + ". " + e.getMessage());
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * Closes and deletes the journal, after the scan has finished.
+     */
+    public synchronized void delete() {
+        close();
+        try {
+            Files.deleteIfExists(journalFile);
+        } catch (IOException e) {
+            System.err.println("Could not delete scan journal " + journalFile + ". " + e.getMessage());
+        }
+    }
+
+    public Path getJournalFile() {
+        return journalFile;
+    }
+
+    private String relativize(final Path directory) {
+        final String relative = root.relativize(directory).toString();
+        return relative.isEmpty() ? ROOT : relative;
+    }
+
+    // removes entries below completed directories and rewrites the journal
+    private void compact() throws IOException {
+        final List<String> entries = new ArrayList<>(completed);
+        final int loaded = entries.size();
+        if (completed.contains(ROOT)) {
+            entries.clear();
+            entries.add(ROOT);
+        } else {
+            entries.removeIf(entry -> {
+                Path parent = Paths.get(entry).getParent();
+                while (parent != null) {
+                    if (completed.contains(parent.toString())) {
+                        return true;
+                    }
+                    parent = parent.getParent();
+                }
+                return false;
+            });
+        }
+        completed.retainAll(entries);
+        Collections.sort(entries);
+        rewrite(entries);
+        if (loaded > entries.size()) {
+            System.out.println("\rScan journal compacted from " + loaded + " to " + entries.size() + " entries");
+        }
+    }
+
+    private void addLiveEntry(final String entry) {
+        final Path parent = ROOT.equals(entry) ? null : Paths.get(entry).getParent();
+        liveEntries.computeIfAbsent(ROOT.equals(entry) ? "" : parent != null ? parent.toString() : ROOT
+                , key -> new ArrayList<>()).add(entry);
+        live++;
+    }
+
+    private void openWriter() throws IOException {
+        writer = Files.newBufferedWriter(journalFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE
+                , StandardOpenOption.APPEND);
+    }
+
+    // replaces the journal file atomically
+    private void rewrite(final List<String> entries) throws IOException {
+        final Path tmpFile = journalFile.resolveSibling(journalFile.getFileName() + ".tmp");
+        try (BufferedWriter tmpWriter = Files.newBufferedWriter(tmpFile, StandardCharsets.UTF_8)) {
+            for (String entry : entries) {
+                tmpWriter.write(entry);
+                tmpWriter.write('\n');
+            }
+        }
+        try {
+            Files.move(tmpFile, journalFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmpFile, journalFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static class PendingDirectory {
+
+        private final String path;
+        private final long documents;
+
+        PendingDirectory(final String path, final long documents) {
+            this.path = path;
+            this.documents = documents;
+        }
+    }
+}
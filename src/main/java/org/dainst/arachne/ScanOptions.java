@@ -0,0 +1,159 @@
+package org.dainst.arachne;
+
+import java.nio.file.Path;
+
+/**
+ * Class bundling the settings of a file system scan.
+ *
+ * @author Reimar Grabowski
+ */
+public class ScanOptions {
+
+    private int mimeInfo = 0;
+
+    private boolean verbose = false;
+
+    private IOBudget ioBudget = IOBudget.UNLIMITED;
+
+    private PathFilter pathFilter = PathFilter.ACCEPT_ALL;
+
+    private int maxDepth = Integer.MAX_VALUE;
+
+    private boolean statMinimal = false;
+
+    private boolean followLinks = false;
+
+    private InodeTracker inodeTracker = null;
+
+    private Path journalDirectory = null;
+
+    private boolean resume = false;
+
+    /**
+     * @return a copy of these options
+     */
+    public ScanOptions copy() {
+        return new ScanOptions()
+                .setMimeInfo(mimeInfo)
+                .setVerbose(verbose)
+                .setIOBudget(ioBudget)
+                .setPathFilter(pathFilter)
+                .setMaxDepth(maxDepth)
+                .setStatMinimal(statMinimal)
+                .setFollowLinks(followLinks)
+                .setInodeTracker(inodeTracker)
+                .setJournalDirectory(journalDirectory)
+                .setResume(resume);
+    }
+
+    public int getMimeInfo() {
+        return mimeInfo;
+    }
+
+    public ScanOptions setMimeInfo(final int mimeInfo) {
+        this.mimeInfo = mimeInfo;
+        return this;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public ScanOptions setVerbose(final boolean verbose) {
+        this.verbose = verbose;
+        return this;
+    }
+
+    public IOBudget getIOBudget() {
+        return ioBudget;
+    }
+
+    public ScanOptions setIOBudget(final IOBudget ioBudget) {
+        this.ioBudget = ioBudget != null ? ioBudget : IOBudget.UNLIMITED;
+        return this;
+    }
+
+    public PathFilter getPathFilter() {
+        return pathFilter;
+    }
+
+    public ScanOptions setPathFilter(final PathFilter pathFilter) {
+        this.pathFilter = pathFilter != null ? pathFilter : PathFilter.ACCEPT_ALL;
+        return this;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public ScanOptions setMaxDepth(final int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    public boolean isStatMinimal() {
+        return statMinimal;
+    }
+
+    /**
+     * In stat minimal mode the crawler never touches the file system beyond the single metadata call per entry 
+     * done by the directory walk (mime types are only guessed from file names).
+     * 
+     * @param statMinimal whether to use stat minimal mode
+     * @return this
+     */
+    public ScanOptions setStatMinimal(final boolean statMinimal) {
+        this.statMinimal = statMinimal;
+        return this;
+    }
+
+    public boolean isFollowLinks() {
+        return followLinks;
+    }
+
+    public ScanOptions setFollowLinks(final boolean followLinks) {
+        this.followLinks = followLinks;
+        return this;
+    }
+
+    public InodeTracker getInodeTracker() {
+        return inodeTracker;
+    }
+
+    /**
+     * @param inodeTracker the tracker used to index every physical file only once (<code>null</code> to index every 
+     * path)
+     * @return this
+     */
+    public ScanOptions setInodeTracker(final InodeTracker inodeTracker) {
+        this.inodeTracker = inodeTracker;
+        return this;
+    }
+
+    public Path getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    /**
+     * @param journalDirectory the directory to keep the journals of completed subtrees in, so interrupted scans can 
+     * be resumed (<code>null</code> disables journals)
+     * @return this
+     */
+    public ScanOptions setJournalDirectory(final Path journalDirectory) {
+        this.journalDirectory = journalDirectory;
+        return this;
+    }
+
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * @param resume if subtrees completed by an interrupted scan should be skipped
+     * @return this
+     */
+    public ScanOptions setResume(final boolean resume) {
+        this.resume = resume;
+        return this;
+    }
+}
@@ -0,0 +1,145 @@
+package org.dainst.arachne;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Coordinates the shutdown of the running imports when the process is terminated (for example by ctrl+c).
+ *
+ * Instead of dropping everything in flight the producers (crawlers and catalog or listing readers) are stopped, the
+ * documents already produced are flushed and the outstanding bulk responses are awaited until the drain timeout is
+ * reached. Afterwards it is reported per import how many documents were persisted and how many were not.
+ *
+ * @author Reimar Grabowski
+ */
+public final class ShutdownCoordinator {
+
+    /**
+     * The default time in seconds to wait for the running imports to drain.
+     */
+    public static final long DEFAULT_DRAIN_SECONDS = 30;
+
+    private static final List<Drain> drains = new CopyOnWriteArrayList<>();
+
+    private static volatile boolean shuttingDown = false;
+
+    private static long drainMillis = TimeUnit.SECONDS.toMillis(DEFAULT_DRAIN_SECONDS);
+
+    private static Thread shutdownHook = null;
+
+    private ShutdownCoordinator() {
+    }
+
+    /**
+     * Installs the shutdown hook draining the running imports.
+     *
+     * @param drainSeconds the maximum time in seconds to wait for the running imports to drain
+     */
+    public static synchronized void install(final long drainSeconds) {
+        drainMillis = TimeUnit.SECONDS.toMillis(drainSeconds);
+        if (shutdownHook == null) {
+            shutdownHook = new Thread(ShutdownCoordinator::drainAll, "shutdown-drain");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the process is shutting down
+     */
+    public static boolean isShuttingDown() {
+        return shuttingDown;
+    }
+
+    /**
+     * Registers a running import. Imports begun during the shutdown are stopped immediately.
+     *
+     * @param name the name of the import used in the report
+     * @param bulkIndexer the bulk indexer of the import
+     * @param produced the number of documents produced by the import so far
+     * @param stopper stops the producers of the import
+     * @return the drain to finish when the import has ended
+     */
+    static Drain begin(final String name, final BulkIndexer bulkIndexer, final LongSupplier produced
+            , final Runnable stopper) {
+        final Drain drain = new Drain(name, bulkIndexer, produced, stopper);
+        drains.add(drain);
+        if (shuttingDown) {
+            stopper.run();
+        }
+        return drain;
+    }
+
+    private static void drainAll() {
+        shuttingDown = true;
+        if (drains.isEmpty()) {
+            return;
+        }
+        System.out.println("\rShutting down, waiting up to " + TimeUnit.MILLISECONDS.toSeconds(drainMillis)
+                + " seconds for " + drains.size() + " running import(s) to drain...");
+        for (Drain drain : drains) {
+            drain.stopper.run();
+        }
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainMillis);
+        boolean drained = true;
+        for (Drain drain : drains) {
+            try {
+                drained &= drain.finished.await(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                drained = false;
+                break;
+            }
+        }
+
+        long notPersisted = 0;
+        for (Drain drain : drains) {
+            final long produced = Math.max(drain.produced.getAsLong(), drain.bulkIndexer.getSubmitted());
+            final long indexed = drain.bulkIndexer.getIndexed();
+            final long failed = drain.bulkIndexer.getFailed();
+            final long unconfirmed = Math.max(0, drain.bulkIndexer.getSubmitted() - indexed - failed);
+            final long notSent = produced - drain.bulkIndexer.getSubmitted();
+            notPersisted += failed + unconfirmed + notSent;
+            System.out.println("\r" + drain.name + ": " + indexed + " documents persisted, " + failed + " failed, "
+                    + unconfirmed + " unconfirmed, " + notSent + " not sent");
+        }
+        if (!drained) {
+            System.out.println("\rDrain timeout reached before all imports finished.");
+        }
+        System.out.println("\r" + (notPersisted > 0 ? notPersisted + " documents not persisted."
+                : "All documents persisted."));
+    }
+
+    /**
+     * A running import.
+     */
+    static final class Drain {
+
+        private final String name;
+        private final BulkIndexer bulkIndexer;
+        private final LongSupplier produced;
+        private final Runnable stopper;
+
+        private final CountDownLatch finished = new CountDownLatch(1);
+
+        private Drain(final String name, final BulkIndexer bulkIndexer, final LongSupplier produced
+                , final Runnable stopper) {
+            this.name = name;
+            this.bulkIndexer = bulkIndexer;
+            this.produced = produced;
+            this.stopper = stopper;
+        }
+
+        /**
+         * Marks the import as ended, all its documents are persisted or failed.
+         */
+        void finish() {
+            // during the shutdown the drain stays registered for the report
+            if (!shuttingDown) {
+                drains.remove(this);
+            }
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.dainst.arachne;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class to import catalog snapshots (see {@link CatalogSnapshot}) into an index, for example after the mapping
+ * changed.
+ *
+ * The records were validated when the snapshot was written, so they are neither parsed nor checked again. Blocks are
+ * decoded by the reading thread and serialized and submitted to the bulk indexer by a pool of worker threads.
+ *
+ * @author Reimar Grabowski
+ */
+public class SnapshotReader {
+
+    private final ESService esService;
+
+    private final boolean verbose;
+
+    private final int threads;
+
+    // set on shutdown, stops reading the snapshot
+    private volatile boolean stopped = false;
+
+    public SnapshotReader(final ESService esService, final boolean verbose, final int threads) {
+        this.esService = esService;
+        this.verbose = verbose;
+        this.threads = threads > 0 ? threads : 1;
+    }
+
+    public boolean read(final String path) throws IOException {
+
+        final Path file = Paths.get(path);
+        if (!path.endsWith(CatalogSnapshot.SUFFIX)) {
+            System.out.println("\rSkipping " + path + " (no snapshot)");
+            return false;
+        }
+        if (!Files.isReadable(file)) {
+            System.err.println("Unable to read file: " + path);
+            return false;
+        }
+        System.out.println("\rSnapshot file: " + path);
+
+        final BulkIndexer bulkIndexer = new BulkIndexer(esService, verbose);
+        final ShutdownCoordinator.Drain drain = ShutdownCoordinator.begin(path, bulkIndexer
+                , bulkIndexer::getSubmitted, () -> stopped = true);
+        try (CatalogSnapshot.Reader reader = CatalogSnapshot.open(file)) {
+            System.out.println("\rCatalog: " + reader.getSource());
+            final AtomicInteger records = new AtomicInteger();
+
+            // bounded queue with caller runs policy, so the reading thread helps out instead of decoding the whole
+            // snapshot ahead
+            final ThreadPoolExecutor workers = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS
+                    , new ArrayBlockingQueue<>(threads * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+            Metrics.PARSE.addQueue(workers.getQueue());
+            try {
+                List<ArchivedFileInfo> block;
+                while (!stopped && (block = readBlock(reader)) != null) {
+                    final List<ArchivedFileInfo> fileInfos = block;
+                    workers.execute(() -> {
+                        for (ArchivedFileInfo fileInfo : fileInfos) {
+                            bulkIndexer.add(fileInfo);
+                            records.incrementAndGet();
+                        }
+                    });
+                }
+            } finally {
+                workers.shutdown();
+                try {
+                    workers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                Metrics.PARSE.removeQueue(workers.getQueue());
+            }
+
+            bulkIndexer.close(records.get());
+            if (stopped) {
+                System.out.println("\rImport stopped, " + bulkIndexer.getIndexed() + " records imported.");
+                return false;
+            }
+            System.out.println("\r" + records.get() + " records imported.");
+            return true;
+        } finally {
+            drain.finish();
+        }
+    }
+
+    private List<ArchivedFileInfo> readBlock(final CatalogSnapshot.Reader reader) throws IOException {
+        final long start = System.nanoTime();
+        final List<ArchivedFileInfo> block = reader.readBlock(esService.getIndexName());
+        if (block != null) {
+            Metrics.PARSE.record(block.size(), 0, System.nanoTime() - start);
+        }
+        return block;
+    }
+}
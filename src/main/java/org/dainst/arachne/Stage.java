@@ -0,0 +1,134 @@
+package org.dainst.arachne;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histogram of one processing stage (for example parsing or bulk indexing).
+ * 
+ * All methods are thread safe and cheap enough to be called per record.
+ *
+ * @author Reimar Grabowski
+ */
+public class Stage implements StageMXBean {
+
+    private final String name;
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+
+    private final Histogram latency = new Histogram();
+    private final Histogram batchSize = new Histogram();
+
+    private final List<Collection<?>> queues = new CopyOnWriteArrayList<>();
+
+    Stage(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records processed items.
+     * 
+     * @param items the number of items processed together
+     * @param bytes the number of bytes processed (0 if not applicable)
+     * @param nanos the time it took in nanoseconds (negative if not measured)
+     */
+    public void record(final int items, final long bytes, final long nanos) {
+        count.add(items);
+        if (bytes > 0) {
+            this.bytes.add(bytes);
+        }
+        if (nanos >= 0) {
+            latency.record(nanos);
+        }
+        batchSize.record(items);
+    }
+
+    public void recordErrors(final long errors) {
+        this.errors.add(errors);
+    }
+
+    /**
+     * Adds a queue feeding this stage, the queue depth is the sum of the sizes of all added queues.
+     * 
+     * @param queue the queue
+     */
+    public void addQueue(final Collection<?> queue) {
+        queues.add(queue);
+    }
+
+    public void removeQueue(final Collection<?> queue) {
+        queues.remove(queue);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public int getQueueDepth() {
+        if (queues.isEmpty()) {
+            return -1;
+        }
+        int depth = 0;
+        for (Collection<?> queue : queues) {
+            depth += queue.size();
+        }
+        return depth;
+    }
+
+    @Override
+    public double getLatencyMeanMicros() {
+        return latency.getMean() / 1000;
+    }
+
+    @Override
+    public long getLatencyP50Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getPercentile(50));
+    }
+
+    @Override
+    public long getLatencyP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getPercentile(99));
+    }
+
+    @Override
+    public long getLatencyMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getMax());
+    }
+
+    @Override
+    public long getBatches() {
+        return batchSize.getCount();
+    }
+
+    @Override
+    public double getBatchSizeMean() {
+        return batchSize.getMean();
+    }
+
+    @Override
+    public long getBatchSizeMax() {
+        return batchSize.getMax();
+    }
+}
@@ -0,0 +1,39 @@
+package org.dainst.arachne;
+
+/**
+ * JMX view of the metrics of a processing stage.
+ *
+ * @author Reimar Grabowski
+ */
+public interface StageMXBean {
+
+    String getName();
+
+    long getCount();
+
+    long getBytes();
+
+    long getErrors();
+
+    /**
+     * @return the number of items waiting to be processed by this stage (-1 if it has no queue)
+     */
+    int getQueueDepth();
+
+    double getLatencyMeanMicros();
+
+    long getLatencyP50Micros();
+
+    long getLatencyP99Micros();
+
+    long getLatencyMaxMicros();
+
+    /**
+     * @return the number of times items were recorded (for example the number of bulk requests)
+     */
+    long getBatches();
+
+    double getBatchSizeMean();
+
+    long getBatchSizeMax();
+}
@@ -0,0 +1,77 @@
+package org.dainst.arachne;
+
+import java.util.concurrent.TimeUnit;
+import org.elasticsearch.action.bulk.BulkItemResponse;
+import org.elasticsearch.action.bulk.BulkProcessor;
+import org.elasticsearch.action.bulk.BulkRequest;
+import org.elasticsearch.action.bulk.BulkResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+/**
+ * Bulk sink using the <code>BulkProcessor</code> of the elasticsearch transport client.
+ *
+ * @author Reimar Grabowski
+ */
+public class TransportBulkSink implements BulkSink {
+
+    private final Client client;
+
+    private final String indexName;
+
+    private final BulkProcessor bulkProcessor;
+
+    public TransportBulkSink(final Client client, final String indexName, final Listener listener) {
+        this.client = client;
+        this.indexName = indexName;
+
+        bulkProcessor = BulkProcessor.builder(client, new BulkProcessor.Listener() {
+            @Override
+            public void beforeBulk(long executionId, BulkRequest request) {
+                listener.beforeBulk(executionId, request.numberOfActions());
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, BulkResponse response) {
+                int failedActions = 0;
+                if (response.hasFailures()) {
+                    for (BulkItemResponse item : response.getItems()) {
+                        if (item.isFailed()) {
+                            failedActions++;
+                        }
+                    }
+                }
+                listener.afterBulk(executionId, request.numberOfActions(), failedActions);
+            }
+
+            @Override
+            public void afterBulk(long executionId, BulkRequest request, Throwable failure) {
+                listener.afterBulk(executionId, request.numberOfActions(), failure);
+            }
+        })
+                .setBulkActions(BULK_ACTIONS)
+                .setBulkSize(new ByteSizeValue(BULK_SIZE, ByteSizeUnit.BYTES))
+                .build();
+    }
+
+    @Override
+    public void index(final String id, final byte[] source) {
+        bulkProcessor.add(client.prepareIndex(indexName, ESService.DOCUMENT_TYPE, id).setSource(source).request());
+    }
+
+    @Override
+    public void delete(final String id) {
+        bulkProcessor.add(client.prepareDelete(indexName, ESService.DOCUMENT_TYPE, id).request());
+    }
+
+    @Override
+    public void flush() {
+        bulkProcessor.flush();
+    }
+
+    @Override
+    public boolean awaitClose(final long timeout, final TimeUnit unit) throws InterruptedException {
+        return bulkProcessor.awaitClose(timeout, unit);
+    }
+}
@@ -0,0 +1,210 @@
+package org.dainst.arachne;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ElasticsearchTimeoutException;
+import org.elasticsearch.action.admin.cluster.stats.ClusterStatsResponse;
+import org.elasticsearch.action.admin.indices.create.CreateIndexResponse;
+import org.elasticsearch.action.admin.indices.delete.DeleteIndexResponse;
+import org.elasticsearch.action.admin.indices.exists.indices.IndicesExistsResponse;
+import org.elasticsearch.action.admin.indices.mapping.put.PutMappingResponse;
+import org.elasticsearch.action.index.IndexResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.client.transport.NoNodeAvailableException;
+import org.elasticsearch.client.transport.TransportClient;
+import org.elasticsearch.cluster.metadata.IndexMetaData;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.transport.InetSocketTransportAddress;
+import org.elasticsearch.common.unit.TimeValue;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.sort.SortOrder;
+
+/**
+ * Elasticsearch service using the native transport protocol (port 9300).
+ *
+ * @author Reimar Grabowski
+ */
+public class TransportESService implements ESService {
+    private static final String ES_MAPPING_SUCCESS = "Elasticsearch mapping set.";
+    private static final String ES_MAPPING_FAILURE = "Failed to set elasticsearch mapping.";
+
+    private static final TimeValue SCROLL_KEEP_ALIVE = TimeValue.timeValueMinutes(5);
+
+    private final TransportClient client;
+
+    private boolean clusterAvailable;
+    
+    private final String indexName;
+
+    public TransportESService(final InetAddress address, final int port, final String clusterName
+            , final String indexName) {
+        final InetSocketAddress esAddress = new InetSocketAddress(address, port);
+        client = TransportClient.builder()
+                .settings(Settings.builder()
+                        .put("cluster.name", clusterName)
+                        .build()).build()
+                .addTransportAddress(new InetSocketTransportAddress(esAddress));
+
+        // test if we are connected to an es cluster
+        try {
+            ClusterStatsResponse stats = client.admin().cluster().prepareClusterStats().get("10s");
+            clusterAvailable = true;
+        } catch (NoNodeAvailableException | ElasticsearchTimeoutException e) {
+            System.out.println("Could not connect to elasticsearch cluster");
+            clusterAvailable = false;
+        }
+        
+        this.indexName = indexName;
+    }
+
+    @Override
+    public void close() {
+        client.close();
+    }
+
+    @Override
+    public boolean createIndex() {
+        try {
+            final CreateIndexResponse createResponse = client.admin().indices().prepareCreate(indexName).execute().actionGet();
+            if (!createResponse.isAcknowledged()) {
+                Logger.getLogger(TransportESService.class.getName()).log(Level.SEVERE, "Failed to create index ''{0}''", indexName);
+                return false;
+            }
+            setMapping();
+        } catch (ElasticsearchException e) {
+            Logger.getLogger(TransportESService.class.getName()).log(Level.SEVERE, "Failed to create index ''{0}''. Cause: {1} "
+                    , new Object[]{indexName, e.getDetailedMessage()});
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean deleteIndex() {
+        try {
+            final DeleteIndexResponse delete = client.admin().indices().prepareDelete(indexName).execute().actionGet();
+            if (!delete.isAcknowledged()) {
+                Logger.getLogger(TransportESService.class.getName()).log(Level.SEVERE, "Index {0} was not deleted.", indexName);
+                return false;
+            }
+        } catch (ElasticsearchException e) {
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean indexExists() {
+        try {
+            final IndicesExistsResponse existsResponse = client.admin().indices().prepareExists(indexName).execute().actionGet();
+            return existsResponse.isExists();
+        } catch (ElasticsearchException e) {
+            return false;
+        }
+    }
+
+    public String addToIndex(final byte[] source, final String id) {
+        final IndexResponse index = client.prepareIndex(indexName, "entry", id).setSource(source).get();
+        return index.getId();
+    }
+
+    @Override
+    public boolean isClusterAvailable() {
+        return clusterAvailable;
+    }
+    
+    @Override
+    public String getIndexName() {
+        return indexName;
+    }
+
+    private String setMapping() {
+        String message = ES_MAPPING_FAILURE;
+
+        final String mapping = Mapping.getIndexMapping();
+
+        if ("undefined".equals(mapping)) {
+            return message;
+        }
+
+        final PutMappingResponse putResponse = client.admin().indices()
+                .preparePutMapping(indexName)
+                .setType("entry")
+                .setSource(mapping)
+                .execute().actionGet();
+
+        if (putResponse.isAcknowledged()) {
+            message = ES_MAPPING_SUCCESS;
+            System.out.println(ES_MAPPING_SUCCESS);
+        } else {
+            System.out.println(ES_MAPPING_FAILURE);
+        }
+
+        return message;
+    }
+
+    @Override
+    public BulkSink createBulkSink(final BulkSink.Listener listener) {
+        return new TransportBulkSink(client, indexName, listener);
+    }
+
+    @Override
+    public int getSlices() throws IOException {
+        try {
+            final IndexMetaData metaData = client.admin().cluster().prepareState().setIndices(indexName).get()
+                    .getState().getMetaData().index(indexName);
+            if (metaData == null) {
+                throw new IOException("Index '" + indexName + "' does not exist.");
+            }
+            return metaData.getNumberOfShards();
+        } catch (ElasticsearchException e) {
+            throw new IOException("Could not read the shards of index '" + indexName + "'. Cause: " 
+                    + e.getDetailedMessage(), e);
+        }
+    }
+
+    @Override
+    public long readSlice(final int slice, final int batchSize, final DocumentConsumer consumer) throws IOException {
+        long documents = 0;
+        String scrollId = null;
+        try {
+            // elasticsearch 2.x has no sliced scroll, every shard is scrolled on its own
+            SearchResponse response = client.prepareSearch(indexName)
+                    .setPreference("_shards:" + slice)
+                    .setScroll(SCROLL_KEEP_ALIVE)
+                    .addSort("_doc", SortOrder.ASC)
+                    .setSize(batchSize)
+                    .get();
+            while (response.getHits().getHits().length > 0) {
+                scrollId = response.getScrollId();
+                for (SearchHit hit : response.getHits().getHits()) {
+                    consumer.accept(hit.getId(), hit.source());
+                    documents++;
+                }
+                response = client.prepareSearchScroll(scrollId).setScroll(SCROLL_KEEP_ALIVE).get();
+            }
+            scrollId = response.getScrollId();
+        } catch (ElasticsearchException e) {
+            throw new IOException("Could not read shard " + slice + " of index '" + indexName + "'. Cause: " 
+                    + e.getDetailedMessage(), e);
+        } finally {
+            if (scrollId != null) {
+                try {
+                    client.prepareClearScroll().addScrollId(scrollId).get();
+                } catch (ElasticsearchException e) {
+                    // expires anyway
+                }
+            }
+        }
+        return documents;
+    }
+
+    public Client getClient() {
+        return client;
+    }
+}
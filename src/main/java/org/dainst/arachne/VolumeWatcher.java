@@ -0,0 +1,293 @@
+package org.dainst.arachne;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class to keep the index of a volume up to date by watching it for changes.
+ * 
+ * All directories of the volume are registered with a <code>WatchService</code>. Create, modify and delete events are
+ * coalesced per path and flushed as one small bulk once no new events arrived for the debounce interval. Created or 
+ * modified entries are crawled (new directories including their subtree and registered for watching), deleted 
+ * entries are removed from the index.
+ * 
+ * If the watch service overflows, or more than <code>maxPendingEvents</code> paths are pending, the pending events
+ * are dropped and the affected directories are rescanned instead, so memory stays bounded. Rescans are crawled by a 
+ * thread of their own into a bounded queue that is indexed while the crawl runs.
+ *
+ * @author Reimar Grabowski
+ */
+public class VolumeWatcher implements Runnable {
+
+    private static final int QUEUE_CAPACITY = 10000;
+
+    private final Path root;
+
+    private final File volume;
+
+    private final ScanOptions options;
+
+    private final BulkIndexer bulkIndexer;
+
+    private final long debounceMillis;
+
+    private final int maxPendingEvents;
+
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<>();
+
+    // path -> coalesced event kind
+    private final Map<Path, WatchEvent.Kind<?>> pendingEvents = new LinkedHashMap<>();
+
+    private final Set<Path> pendingRescans = new LinkedHashSet<>();
+
+    private final BlockingQueue<ArchivedFileInfo> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private final ExecutorService crawlExecutor;
+
+    private String hostname;
+
+    private boolean watchLimitReached = false;
+
+    public VolumeWatcher(final ESService esService, final File volume, final ScanOptions options
+            , final long debounceMillis, final int maxPendingEvents) throws IOException {
+        this.volume = volume;
+        this.root = volume.toPath().toRealPath(LinkOption.NOFOLLOW_LINKS);
+        // a watcher sees the same files again and again, so it must not skip them as duplicates
+        this.options = options.copy().setInodeTracker(null).setFollowLinks(false);
+        this.debounceMillis = debounceMillis;
+        this.maxPendingEvents = maxPendingEvents;
+        this.bulkIndexer = new BulkIndexer(esService, options.isVerbose());
+        this.crawlExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "watch-crawl-" + root);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            this.hostname = InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException ex) {
+            this.hostname = "unknown";
+        }
+    }
+
+    @Override
+    public void run() {
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            System.out.println("\rRegistering " + root + " for watching...");
+            final int registered = registerTree(watchService, root);
+            System.out.println("\rWatching " + registered + " directories in " + root);
+
+            long lastEvent = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                final WatchKey key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    collectEvents(key);
+                    lastEvent = System.currentTimeMillis();
+                }
+                if ((!pendingEvents.isEmpty() || !pendingRescans.isEmpty())
+                        && System.currentTimeMillis() - lastEvent >= debounceMillis) {
+                    flush(watchService);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Could not watch '" + root + "'. Cause: " + e.getMessage());
+        } finally {
+            crawlExecutor.shutdownNow();
+        }
+    }
+
+    private void collectEvents(final WatchKey key) {
+        final Path directory = watchedDirectories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                System.out.println("\rToo many changes in " + (directory != null ? directory : root) + ", rescanning.");
+                pendingRescans.add(directory != null ? directory : root);
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+            final Path path = directory.resolve((Path) event.context());
+            final WatchEvent.Kind<?> pendingKind = pendingEvents.remove(path);
+            // a modification does not make a new entry old
+            if (pendingKind == StandardWatchEventKinds.ENTRY_CREATE
+                    && event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                pendingEvents.put(path, pendingKind);
+            } else {
+                pendingEvents.put(path, event.kind());
+            }
+        }
+        if (!key.reset()) {
+            watchedDirectories.remove(key);
+        }
+
+        // bound memory: replace single events by rescans of their directories
+        if (pendingEvents.size() > maxPendingEvents) {
+            for (Map.Entry<Path, WatchEvent.Kind<?>> pendingEvent : pendingEvents.entrySet()) {
+                if (pendingEvent.getValue() == StandardWatchEventKinds.ENTRY_DELETE) {
+                    bulkIndexer.delete(pendingEvent.getKey().toString());
+                } else {
+                    pendingRescans.add(pendingEvent.getKey().getParent());
+                }
+            }
+            pendingEvents.clear();
+            if (pendingRescans.size() > maxPendingEvents) {
+                pendingRescans.clear();
+                pendingRescans.add(root);
+            }
+        }
+    }
+
+    private void flush(final WatchService watchService) throws InterruptedException {
+        int indexed = 0;
+        int deleted = 0;
+
+        final List<Path> rescans = new ArrayList<>(pendingRescans);
+        pendingRescans.clear();
+        for (Path directory : rescans) {
+            if (Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+                registerTree(watchService, directory);
+                indexed += crawl(directory, true);
+            }
+        }
+
+        final Map<Path, WatchEvent.Kind<?>> events = new LinkedHashMap<>(pendingEvents);
+        pendingEvents.clear();
+        for (Map.Entry<Path, WatchEvent.Kind<?>> event : events.entrySet()) {
+            final Path path = event.getKey();
+            if (isCovered(path, rescans)) {
+                continue;
+            }
+            if (event.getValue() == StandardWatchEventKinds.ENTRY_DELETE 
+                    || !Files.exists(path, LinkOption.NOFOLLOW_LINKS)) {
+                // documents below a deleted directory are not removed as the index has no read path
+                bulkIndexer.delete(path.toString());
+                deleted++;
+            } else if (event.getValue() == StandardWatchEventKinds.ENTRY_CREATE
+                    && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                // entries created before the directory was registered would otherwise be missed
+                registerTree(watchService, path);
+                indexed += crawl(path, true);
+            } else {
+                indexed += crawl(path, false);
+            }
+        }
+
+        bulkIndexer.flush();
+        System.out.println("\rChanges in " + root + ": " + indexed + " indexed, " + deleted + " deleted");
+    }
+
+    private int crawl(final Path start, final boolean subtree) throws InterruptedException {
+        ScanOptions crawlOptions = options;
+        if (!subtree) {
+            crawlOptions = options.copy().setMaxDepth(root.relativize(start).getNameCount());
+        }
+        final DirectoryCrawler crawler = new DirectoryCrawler(root, start, crawlOptions, queue);
+        final Future<Integer> crawl = crawlExecutor.submit(crawler);
+        int indexed = 0;
+        try {
+            // index while crawling, a rescan of the whole volume never holds more than the queue in memory
+            while (!crawl.isDone() || !queue.isEmpty()) {
+                final ArchivedFileInfo fileInfo = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (fileInfo != null) {
+                    fileInfo.setVolume(volume.toString());
+                    fileInfo.setCatalog(hostname);
+                    bulkIndexer.add(fileInfo);
+                    indexed++;
+                }
+            }
+        } finally {
+            if (!crawl.isDone()) {
+                crawler.stop();
+                crawl.cancel(true);
+            }
+        }
+        return indexed;
+    }
+
+    private boolean isCovered(final Path path, final List<Path> rescannedDirectories) {
+        for (Path directory : rescannedDirectories) {
+            if (path.startsWith(directory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int registerTree(final WatchService watchService, final Path start) {
+        final PathFilter pathFilter = options.getPathFilter();
+        final int[] registered = {0};
+        // only directories whose children are indexed need watching
+        int maxDepth = options.getMaxDepth();
+        if (maxDepth != Integer.MAX_VALUE && !root.equals(start)) {
+            maxDepth -= root.relativize(start).getNameCount();
+        }
+        if (maxDepth <= 0) {
+            return 0;
+        }
+        try {
+            Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), maxDepth, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attrs) throws IOException {
+                    if (pathFilter.isExcludedDirectory(root, directory)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    if (watchLimitReached) {
+                        return FileVisitResult.TERMINATE;
+                    }
+                    try {
+                        watchedDirectories.put(directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE
+                                , StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY), directory);
+                        registered[0]++;
+                    } catch (IOException e) {
+                        // most likely the inotify watch limit (fs.inotify.max_user_watches)
+                        System.err.println("\rCould not watch '" + directory + "': " + e.getMessage());
+                        System.err.println("Changes below further directories will not be detected.");
+                        watchLimitReached = true;
+                        return FileVisitResult.TERMINATE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) throws IOException {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Could not register '" + start + "' for watching. Cause: " + e.getMessage());
+        }
+        return registered[0];
+    }
+}